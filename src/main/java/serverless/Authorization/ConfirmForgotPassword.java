@@ -7,7 +7,6 @@ import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 import java.util.Map;
@@ -23,6 +22,7 @@ public class ConfirmForgotPassword implements RequestHandler<Map<String, Object>
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -31,9 +31,7 @@ public class ConfirmForgotPassword implements RequestHandler<Map<String, Object>
         }
         if (cognitoClient == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            cognitoClient = ClientRegistry.cognito(REGION);
         }
     }
 
@@ -1,14 +1,11 @@
 package serverless.Authorization;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.interfaces.DecodedJWT;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 import java.util.Map;
@@ -27,6 +24,7 @@ public class DeleteUser implements RequestHandler<Map<String, Object>, Map<Strin
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -35,9 +33,7 @@ public class DeleteUser implements RequestHandler<Map<String, Object>, Map<Strin
         }
         if (cognitoClient == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            cognitoClient = ClientRegistry.cognito(REGION);
         }
     }
 
@@ -70,7 +66,6 @@ public class DeleteUser implements RequestHandler<Map<String, Object>, Map<Strin
 
             Subsegment configSubsegment = AWSXRay.beginSubsegment("CollectConfigParams");
             String USER_POOL_ID = (String) configManager.get("USER_POOL_ID");
-            String REGION = (String) configManager.get("DYNAMO_REGION");
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
@@ -80,17 +75,16 @@ public class DeleteUser implements RequestHandler<Map<String, Object>, Map<Strin
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 idToken = authHeader.substring("Bearer ".length());
             }
-            DecodedJWT decodedJWT = JWT.decode(idToken);
-            String userId;
+            VerifiedPrincipal principal;
             try {
-                userId = TokenVerifier.verifyToken(idToken, ISSUER);
+                principal = TokenVerifier.verify(idToken, ISSUER);
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user", e);
                 return ResponseGenerator.generateResponse(401, "Invalid token.");
             }
 
             // Correctly get the email claim from the token
-            String email = decodedJWT.getClaim("email").asString();
+            String email = principal.getEmail();
 
             // Extract email from path parameters using proxy method
             Subsegment extractParamsSubsegment = AWSXRay.beginSubsegment("ExtractingParameters");
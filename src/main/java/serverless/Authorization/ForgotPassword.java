@@ -7,7 +7,6 @@ import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 import java.util.HashMap;
@@ -24,6 +23,7 @@ public class ForgotPassword implements RequestHandler<Map<String, Object>, Map<S
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -32,9 +32,7 @@ public class ForgotPassword implements RequestHandler<Map<String, Object>, Map<S
         }
         if (cognitoClient == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            cognitoClient = ClientRegistry.cognito(REGION);
         }
     }
 
@@ -6,7 +6,6 @@ import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 import com.amazonaws.xray.AWSXRay;
@@ -24,6 +23,7 @@ public class RegisterUser implements RequestHandler<Map<String, Object>, Map<Str
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -32,9 +32,7 @@ public class RegisterUser implements RequestHandler<Map<String, Object>, Map<Str
         }
         if (cognitoClient == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            cognitoClient = ClientRegistry.cognito(REGION);
         }
     }
 
@@ -6,7 +6,6 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.*;
 
@@ -25,6 +24,10 @@ public class SignIn implements RequestHandler<Map<String, Object>, Map<String, O
     private static ConfigManager configManager;
     private static CognitoIdentityProviderClient cognitoClient;
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @LambdaDocumentationAnnotations.LambdaOperation(
             summary = "Login an existing user",
             description = "This operation logs an existing user into the system.",
@@ -57,9 +60,7 @@ public class SignIn implements RequestHandler<Map<String, Object>, Map<String, O
         }
         if (cognitoClient == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            cognitoClient = ClientRegistry.cognito(REGION);
         }
     }
 
@@ -70,7 +71,6 @@ public class SignIn implements RequestHandler<Map<String, Object>, Map<String, O
             Subsegment configSubsegment = AWSXRay.beginSubsegment("collectConfigParams");
             String USER_POOL_ID = (String) configManager.get("USER_POOL_ID");
             String CLIENT_ID = (String) configManager.get("CLIENT_APP_ID");
-            String REGION = (String) configManager.get("DYNAMO_REGION");
             AWSXRay.endSubsegment();
 
             // Extract email and password from the event body
@@ -86,10 +86,7 @@ public class SignIn implements RequestHandler<Map<String, Object>, Map<String, O
             Subsegment signInUserSubsegment = AWSXRay.beginSubsegment("Signing in the user and obtaining role");
             signInUserSubsegment.putMetadata("email", email);
 
-            // Build the Cognito client and initiate authentication request
-            CognitoIdentityProviderClient cognitoClient = CognitoIdentityProviderClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            // Initiate authentication request
             Map<String, String> authParams = new HashMap<>();
             authParams.put("USERNAME", email);
             authParams.put("PASSWORD", password);
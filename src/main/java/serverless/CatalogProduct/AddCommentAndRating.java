@@ -8,10 +8,9 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
-import java.util.Collections;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +27,7 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -36,9 +36,7 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
     @LambdaOperation(
@@ -61,7 +59,10 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
     })
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Comment and rating added successfully."),
+            @LambdaAPIResponse(responseCode = 400, description = "Rating must be between 1 and 5."),
             @LambdaAPIResponse(responseCode = 401, description = "Invalid token."),
+            @LambdaAPIResponse(responseCode = 404, description = "Product not found."),
+            @LambdaAPIResponse(responseCode = 409, description = "You have already reviewed this product."),
             @LambdaAPIResponse(responseCode = 500, description = "Failed to add comment and rating.")
     })
     @LambdaSecurityRequirement(name = "BearerAuth")
@@ -80,7 +81,7 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 token = authHeader.substring("Bearer ".length());
             }
-            String userId = TokenVerifier.verifyToken(token, ISSUER);
+            String userId = TokenVerifier.verify(token, ISSUER).getSubject();
             AWSXRay.endSubsegment();
 
             Subsegment extractParametersSubsegment = AWSXRay.beginSubsegment("ExtractParameters");
@@ -89,6 +90,9 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
             String comment = body.get("comment");
             int rating = Integer.parseInt(body.get("rating"));
             AWSXRay.endSubsegment();
+            if (!RatingAggregates.isValidRating(rating)) {
+                return ResponseGenerator.generateResponse(400, gson.toJson("Rating must be between " + RatingAggregates.MIN_RATING + " and " + RatingAggregates.MAX_RATING + "."));
+            }
 
             Subsegment putNewCommentSubsegment = AWSXRay.beginSubsegment("PutNewComment");
             Map<String, AttributeValue> item = new HashMap<>();
@@ -96,21 +100,38 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
             item.put("productId", AttributeValue.builder().s(productId).build());
             item.put("Comment", AttributeValue.builder().s(comment).build());
             item.put("Rating", AttributeValue.builder().n(String.valueOf(rating)).build());
+            item.put("CreatedAt", AttributeValue.builder().s(Instant.now().toString()).build());
 
-            QueryRequest checkExistingCommentRequest = QueryRequest.builder()
-                    .tableName(COMMENT_TABLE)
-                    .keyConditionExpression("productId = :v_product AND UserId = :v_user")
-                    .expressionAttributeValues(Map.of(
-                            ":v_product", AttributeValue.builder().s(productId).build(),
-                            ":v_user", AttributeValue.builder().s(userId).build()))
+            // The comment and the product's rating aggregates are written together or not at all; the comment
+            // condition rejects a second review by the same user without reading first
+            RatingAggregates aggregates = RatingAggregates.fromConfig(dynamoDB, configManager, PRODUCT_TABLE, COMMENT_TABLE);
+            TransactWriteItem putComment = TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName(COMMENT_TABLE)
+                            .item(item)
+                            .conditionExpression("attribute_not_exists(UserId)")
+                            .build())
                     .build();
-            QueryResponse checkExistingCommentResponse = dynamoDB.query(checkExistingCommentRequest);
-            if (checkExistingCommentResponse.items().isEmpty()) {
-                dynamoDB.putItem(PutItemRequest.builder().tableName(COMMENT_TABLE).item(item).build());
+            try {
+                if (!aggregates.write(putComment, productId, rating, 1)) {
+                    AWSXRay.endSubsegment();
+                    return ResponseGenerator.generateResponse(404, gson.toJson("Product not found."));
+                }
+            } catch (TransactionCanceledException e) {
+                if (!conditionFailed(e.cancellationReasons(), 0)) {
+                    throw e;
+                }
+                AWSXRay.endSubsegment();
+                logger.info("User " + userId + " already reviewed product " + productId);
+                return ResponseGenerator.generateResponse(409, gson.toJson("You have already reviewed this product."));
             }
             AWSXRay.endSubsegment();
 
-            updateProductCatalog(productId, rating, PRODUCT_TABLE, COMMENT_TABLE);
+            Subsegment updateCatalogSubsegment = AWSXRay.beginSubsegment("UpdateProductCatalog");
+            Double averageRating = aggregates.refreshAverage(productId);
+            updateCatalogSubsegment.putMetadata("averageRating", String.valueOf(averageRating));
+            AWSXRay.endSubsegment();
+            CatalogVersion.recordChange(dynamoDB, configManager, PRODUCT_TABLE, productId);
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Comment and rating added successfully");
@@ -125,39 +146,7 @@ public class AddCommentAndRating implements RequestHandler<Map<String, Object>,
         }
     }
 
-    private void updateProductCatalog(String productId, int newRating, String PRODUCT_TABLE, String COMMENT_TABLE) {
-        Subsegment updateCatalogSubsegment = AWSXRay.beginSubsegment("UpdateProductCatalog");
-        try {
-            QueryRequest queryRequest = QueryRequest.builder()
-                    .tableName(COMMENT_TABLE)
-                    .keyConditionExpression("productId = :v_id")
-                    .expressionAttributeValues(Collections.singletonMap(":v_id", AttributeValue.builder().s(productId).build()))
-                    .projectionExpression("Rating")
-                    .build();
-            QueryResponse queryResponse = dynamoDB.query(queryRequest);
-            List<Map<String, AttributeValue>> comments = queryResponse.items();
-            int totalRating = comments.stream().mapToInt(comment -> Integer.parseInt(comment.get("Rating").n())).sum();
-            double avgRating = comments.size() > 0 ? Math.round((double) totalRating / comments.size()) : 0;
-
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("productId", AttributeValue.builder().s(productId).build());
-            Map<String, AttributeValueUpdate> attributeUpdates = new HashMap<>();
-            attributeUpdates.put("AverageRating", AttributeValueUpdate.builder()
-                    .value(AttributeValue.builder().n(String.valueOf(avgRating)).build())
-                    .action(AttributeAction.PUT)
-                    .build());
-            attributeUpdates.put("commentsCount", AttributeValueUpdate.builder()
-                    .value(AttributeValue.builder().n("1").build())
-                    .action(AttributeAction.ADD)
-                    .build());
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName(PRODUCT_TABLE)
-                    .key(key)
-                    .attributeUpdates(attributeUpdates)
-                    .build();
-            dynamoDB.updateItem(updateItemRequest);
-        } finally {
-            AWSXRay.endSubsegment();
-        }
+    private static boolean conditionFailed(List<CancellationReason> reasons, int index) {
+        return reasons != null && reasons.size() > index && "ConditionalCheckFailed".equals(reasons.get(index).code());
     }
 }
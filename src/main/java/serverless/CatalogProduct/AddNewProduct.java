@@ -9,7 +9,6 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
@@ -25,6 +24,12 @@ public class AddNewProduct implements RequestHandler<Map<String, Object>, Map<St
     private static final Logger logger = Logger.getLogger(AddNewProduct.class.getName());
     private static DynamoDbClient dynamoDB;
     private static ConfigManager configManager;
+    // Attributes maintained by AddCommentAndRating and DeleteCommentAndRating
+    private static final List<String> RATING_ATTRIBUTES = List.of("AverageRating", "commentsCount");
+
+    static {
+        ColdStartPriming.prime(gson);
+    }
 
     @LambdaOperation(
             summary = "Add a new product",
@@ -65,9 +70,7 @@ public class AddNewProduct implements RequestHandler<Map<String, Object>, Map<St
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -85,11 +88,9 @@ public class AddNewProduct implements RequestHandler<Map<String, Object>, Map<St
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             token = authHeader.substring("Bearer ".length());
         }
-        System.out.println("OVE E TOKENOT" + token);
         try {
-            TokenVerifier.verifyToken(token, ISSUER);
-            List<String> groups = TokenVerifier.getGroups(token, ISSUER);
-            if (groups == null || !groups.contains("Admins")) {
+            VerifiedPrincipal principal = TokenVerifier.verify(token, ISSUER);
+            if (!principal.isInGroup("Admins")) {
                 logger.log(Level.SEVERE, "No token provided or user is not admin");
                 return ResponseGenerator.generateResponse(403, gson.toJson("Unauthorized: only admin users can add new products."));
             }
@@ -127,14 +128,59 @@ public class AddNewProduct implements RequestHandler<Map<String, Object>, Map<St
         item.put("beautifulComment", AttributeValue.builder().s(beautifulComment).build());
         item.put("commentsCount", AttributeValue.builder().n(Integer.toString(commentsCount)).build());
         item.put("discountPrice", AttributeValue.builder().n(Double.toString(discountPrice)).build());
+        for (String attribute : RatingAggregates.ATTRIBUTES) {
+            item.put(attribute, AttributeValue.builder().n("0").build());
+        }
         item.forEach((key, value) -> addNewProductSubSegment.putMetadata(key, value.toString()));
-        PutItemRequest putItemRequest = PutItemRequest.builder()
-                .tableName(PRODUCT_TABLE)
-                .item(item)
-                .build();
-        dynamoDB.putItem(putItemRequest);
+        // Replacing an existing product keeps the rating state owned by the comment handlers; the put is
+        // conditioned on the Version that was read, so a rating written in between is never overwritten
+        PutItemResponse putItemResponse = OptimisticRetry.run("Saving product " + productId, () -> {
+            GetItemResponse existing = dynamoDB.getItem(GetItemRequest.builder()
+                    .tableName(PRODUCT_TABLE)
+                    .key(Map.of("productId", AttributeValue.builder().s(productId).build()))
+                    .consistentRead(true)
+                    .build());
+            Map<String, AttributeValue> existingItem = existing.hasItem() && !existing.item().isEmpty() ? existing.item() : null;
+            Map<String, AttributeValue> newItem = new HashMap<>(item);
+            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+            String condition = "attribute_not_exists(productId)";
+            if (existingItem != null) {
+                for (String attribute : RATING_ATTRIBUTES) {
+                    if (existingItem.containsKey(attribute)) {
+                        newItem.put(attribute, existingItem.get(attribute));
+                    }
+                }
+                // A product rated before the aggregates existed keeps none, so they are rebuilt from its comments
+                for (String attribute : RatingAggregates.ATTRIBUTES) {
+                    if (existingItem.containsKey(attribute)) {
+                        newItem.put(attribute, existingItem.get(attribute));
+                    } else {
+                        newItem.remove(attribute);
+                    }
+                }
+                condition = OptimisticRetry.expectVersion(existingItem, expressionAttributeValues);
+            }
+            newItem.put("Version", AttributeValue.builder().n(String.valueOf(OptimisticRetry.version(existingItem) + 1)).build());
+            PutItemRequest.Builder putItemRequest = PutItemRequest.builder()
+                    .tableName(PRODUCT_TABLE)
+                    .item(newItem)
+                    .conditionExpression(condition)
+                    .returnValues(ReturnValue.ALL_OLD);
+            if (!expressionAttributeValues.isEmpty()) {
+                putItemRequest.expressionAttributeValues(expressionAttributeValues);
+            }
+            return dynamoDB.putItem(putItemRequest.build());
+        });
+        AWSXRay.endSubsegment();
+
+        // Keep the product name index in step with the catalog, replacing the terms of a renamed product
+        Subsegment searchIndexSubsegment = AWSXRay.beginSubsegment("updateSearchIndex");
+        AttributeValue oldProductName = putItemResponse.hasAttributes() ? putItemResponse.attributes().get("productName") : null;
+        ProductSearchIndex.recordChange(dynamoDB, configManager, productId, oldProductName != null ? oldProductName.s() : null, productName);
         AWSXRay.endSubsegment();
 
+        CatalogVersion.recordChange(dynamoDB, configManager, PRODUCT_TABLE, productId);
+
         Logger.getLogger(AddNewProduct.class.getName()).info("Product added successfully.");
         return ResponseGenerator.generateResponse(200, gson.toJson("Product added successfully"));
     }
@@ -0,0 +1,115 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.MetricsHandler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Serialized catalog listing responses keyed by the normalized query. Entries carry the catalog version they were
+// built from, so any product write makes them unreachable; besides that they expire after a TTL and the least
+// recently used ones are evicted once the bodies exceed the byte budget.
+public class CatalogResponseCache {
+
+    private static final Logger logger = Logger.getLogger(CatalogResponseCache.class.getName());
+    private static final String SEPARATOR = "\u0000";
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long sizeBytes;
+    private long latestVersion = -1;
+    private volatile long lastPublished = System.currentTimeMillis();
+
+    public static String key(String searchTerm, String category, String sortBy, String sortOrder,
+                             int page, int pageSize, String cursor) {
+        return String.join(SEPARATOR,
+                searchTerm == null ? "" : searchTerm.trim().toLowerCase(Locale.ROOT),
+                category == null ? "" : category,
+                sortBy == null ? "" : sortBy,
+                "DSC".equalsIgnoreCase(sortOrder) ? "DSC" : "ASC",
+                cursor == null || cursor.isEmpty() ? "p" + page : "c" + cursor,
+                String.valueOf(pageSize));
+    }
+
+    // Cached body for the key at the given catalog version, or null
+    public synchronized String get(String key, long version, long ttlMillis) {
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.version != version || System.currentTimeMillis() - entry.createdAt >= ttlMillis)) {
+            remove(key);
+            entry = null;
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry != null ? entry.body : null;
+    }
+
+    public synchronized void put(String key, long version, String body, long maxBytes) {
+        if (version < latestVersion) {
+            // Built from an older catalog than entries already cached, it could only ever be served stale
+            return;
+        }
+        if (version > latestVersion) {
+            // Everything cached so far belongs to an older catalog version
+            entries.clear();
+            sizeBytes = 0;
+            latestVersion = version;
+        }
+        long entryBytes = 2L * (key.length() + body.length());
+        if (entryBytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(body, version, System.currentTimeMillis(), entryBytes));
+        sizeBytes += entryBytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (sizeBytes > maxBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().sizeBytes;
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            sizeBytes -= removed.sizeBytes;
+        }
+    }
+
+    // Hands the hit and miss counts since the last report to the background publisher, at most once per interval
+    public void publishMetrics(MetricsHandler metricsHandler, long intervalMillis) {
+        long now = System.currentTimeMillis();
+        if (now - lastPublished < intervalMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - lastPublished < intervalMillis) {
+                return;
+            }
+            lastPublished = now;
+        }
+        long hitCount = hits.getAndSet(0);
+        long missCount = misses.getAndSet(0);
+        try {
+            metricsHandler.publishCacheStatisticsAsync("catalogResponseCache", hitCount, missCount);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to queue catalog cache metrics", e);
+        }
+    }
+
+    private static final class Entry {
+        private final String body;
+        private final long version;
+        private final long createdAt;
+        private final long sizeBytes;
+
+        private Entry(String body, long version, long createdAt, long sizeBytes) {
+            this.body = body;
+            this.version = version;
+            this.createdAt = createdAt;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.BatchReader;
+import serverless.lib.ConfigManager;
+import serverless.lib.ScanExecutor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Container-resident copy of the product catalog that answers list and detail reads without touching DynamoDB.
+// Loaded once with a full scan, then kept current from the CatalogVersion change feed: at most once per refresh
+// interval it asks for changes after its version and reloads only the products that changed.
+public class CatalogSnapshot {
+
+    private static final Logger logger = Logger.getLogger(CatalogSnapshot.class.getName());
+    private static final Map<String, CatalogSnapshot> snapshots = new ConcurrentHashMap<>();
+    // The list-view attributes, stored as columns
+    private static final String[] COLUMNS = ProductQueryPlanner.LIST_VIEW_PROJECTION.split(",\\s*");
+    private static final boolean[] NUMERIC = new boolean[COLUMNS.length];
+    private static final Map<String, Integer> COLUMN_INDEX = new HashMap<>();
+    private static final int PRODUCT_ID;
+    private static final int NAME;
+    private static final int CATEGORY;
+
+    static {
+        Set<String> numeric = Set.of("Price", "discountPrice", "AverageRating", "commentsCount");
+        for (int column = 0; column < COLUMNS.length; column++) {
+            COLUMN_INDEX.put(COLUMNS[column], column);
+            NUMERIC[column] = numeric.contains(COLUMNS[column]);
+        }
+        PRODUCT_ID = COLUMN_INDEX.get("productId");
+        NAME = COLUMN_INDEX.get("productName");
+        CATEGORY = COLUMN_INDEX.get("categoryName");
+    }
+
+    private final DynamoDbClient dynamoDB;
+    private final String productTable;
+    private final CatalogVersion catalogVersion;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile State state;
+    private volatile long lastCheck;
+    private volatile long refreshIntervalMillis;
+    private volatile long maxAgeMillis;
+    private volatile int scanSegments;
+
+    private CatalogSnapshot(DynamoDbClient dynamoDB, String productTable, CatalogVersion catalogVersion) {
+        this.dynamoDB = dynamoDB;
+        this.productTable = productTable;
+        this.catalogVersion = catalogVersion;
+    }
+
+    CatalogSnapshot(DynamoDbClient dynamoDB, String productTable, CatalogVersion catalogVersion,
+                    long refreshIntervalMillis, long maxAgeMillis) {
+        this(dynamoDB, productTable, catalogVersion);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.scanSegments = 1;
+    }
+
+    // Returns null when the catalog has no change feed (CATALOG_VERSION_TABLE), since a snapshot could not be kept current
+    public static CatalogSnapshot forTable(DynamoDbClient dynamoDB, String productTable, ConfigManager configManager) {
+        CatalogVersion catalogVersion = CatalogVersion.fromConfig(dynamoDB, configManager, productTable);
+        if (catalogVersion == null) {
+            return null;
+        }
+        CatalogSnapshot snapshot = snapshots.computeIfAbsent(productTable, table -> new CatalogSnapshot(dynamoDB, table, catalogVersion));
+        snapshot.refreshIntervalMillis = configManager.getLong("CATALOG_SNAPSHOT_REFRESH_SECONDS", 5) * 1000;
+        snapshot.maxAgeMillis = configManager.getLong("CATALOG_SNAPSHOT_MAX_AGE_SECONDS", 3600) * 1000;
+        snapshot.scanSegments = (int) configManager.getLong("CATALOG_SCAN_SEGMENTS", 1);
+        return snapshot;
+    }
+
+    // Product from the snapshot of the table, or null when there is no snapshot, it cannot be loaded or it does
+    // not hold the product (yet), in which case the caller reads DynamoDB
+    public static Map<String, AttributeValue> getProduct(DynamoDbClient dynamoDB, String productTable,
+                                                         ConfigManager configManager, String productId) {
+        CatalogSnapshot snapshot = forTable(dynamoDB, productTable, configManager);
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return snapshot.get(productId);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Catalog snapshot unavailable, reading from DynamoDB", e);
+            return null;
+        }
+    }
+
+    // List-view rows of the products in the category whose name has a word starting with every word of the search term
+    public List<Map<String, AttributeValue>> list(String searchTerm, String category) {
+        State current = current();
+        List<String> queryTokens = ProductSearchIndex.tokenize(searchTerm);
+        String rawSearch = searchTerm == null ? "" : searchTerm.trim().toLowerCase(Locale.ROOT);
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = 0; i < current.size; i++) {
+            if (category != null && !category.isEmpty() && !category.equals(current.columns[CATEGORY][i])) {
+                continue;
+            }
+            if (!rawSearch.isEmpty() && !matches(current, i, queryTokens, rawSearch)) {
+                continue;
+            }
+            items.add(new Row(current, i));
+        }
+        return items;
+    }
+
+    private static boolean matches(State current, int index, List<String> queryTokens, String rawSearch) {
+        String name = current.columns[NAME][index];
+        if (queryTokens.isEmpty()) {
+            // Single letters are not tokens, match them anywhere in the name
+            return name != null && name.toLowerCase(Locale.ROOT).contains(rawSearch);
+        }
+        for (String queryToken : queryTokens) {
+            boolean found = false;
+            for (String nameToken : current.nameTokens[index]) {
+                if (nameToken.startsWith(queryToken)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Full product item, or null when the product is not in the snapshot
+    public Map<String, AttributeValue> get(String productId) {
+        State current = current();
+        Integer index = current.positions.get(productId);
+        return index != null ? current.item(index) : null;
+    }
+
+    // Catalog change feed version the snapshot reflects
+    public long version() {
+        return current().version;
+    }
+
+    private State current() {
+        long now = System.currentTimeMillis();
+        State current = state;
+        if (current == null) {
+            refreshLock.lock();
+        } else if (now - lastCheck < refreshIntervalMillis || !refreshLock.tryLock()) {
+            // Fresh enough, or another thread is refreshing: serve what we have
+            return current;
+        }
+        try {
+            current = state;
+            if (current == null || now - lastCheck >= refreshIntervalMillis) {
+                lastCheck = now;
+                current = current == null || now - current.loadedAt >= maxAgeMillis ? load() : refresh(current);
+                state = current;
+            }
+            return current;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private State load() {
+        long start = System.currentTimeMillis();
+        // Read the version first, changes made during the scan are then picked up by the next refresh
+        long version = catalogVersion.currentVersion();
+        ScanRequest scanRequest = ScanRequest.builder().tableName(productTable).build();
+        State loaded = new State(version, start, null, Set.of(), ScanExecutor.scanAll(dynamoDB, scanRequest, scanSegments));
+        logger.info("Loaded catalog snapshot of " + loaded.size + " products at version " + version
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+        return loaded;
+    }
+
+    private State refresh(State current) {
+        List<CatalogVersion.Change> changes = catalogVersion.changesSince(current.version);
+        if (changes.isEmpty()) {
+            return current;
+        }
+        // A gap means change rows expired or a writer has not finished yet, so reload everything
+        if (changes.get(0).getVersion() != current.version + 1) {
+            return load();
+        }
+        // Apply the contiguous run of changes only, a later gap is a write in flight that the next refresh will see
+        Set<String> changedIds = new LinkedHashSet<>();
+        long version = current.version;
+        for (CatalogVersion.Change change : changes) {
+            if (change.getVersion() != version + 1) {
+                break;
+            }
+            changedIds.add(change.getProductId());
+            version = change.getVersion();
+        }
+        // Deleted products are simply not returned by the read
+        List<Map<String, AttributeValue>> changed = BatchReader.getItems(dynamoDB, productTable, "productId", changedIds);
+        logger.info("Refreshed " + changedIds.size() + " products of catalog snapshot to version " + version);
+        return new State(version, current.loadedAt, current, changedIds, changed);
+    }
+
+    // Immutable view of the catalog. The list-view attributes are held column by column, one array per attribute
+    // holding the S or N text of every product, so the catalog costs a few arrays rather than a map of attribute
+    // objects per product. Number columns keep DynamoDB's text so responses read exactly as they do from the table.
+    // Only the attributes the list view does not show (description, ...) are kept per product, for detail reads.
+    private static final class State {
+        private final long version;
+        private final long loadedAt;
+        private final int size;
+        private final Map<String, Integer> positions;
+        private final String[][] columns;
+        private final String[][] nameTokens;
+        private final List<Map<String, AttributeValue>> details;
+
+        // The rows of the previous state that did not change, followed by the added items
+        private State(long version, long loadedAt, State previous, Set<String> dropped, List<Map<String, AttributeValue>> added) {
+            this.version = version;
+            this.loadedAt = loadedAt;
+            int capacity = (previous != null ? previous.size : 0) + added.size();
+            positions = new HashMap<>(capacity * 4 / 3 + 1);
+            columns = new String[COLUMNS.length][capacity];
+            nameTokens = new String[capacity][];
+            details = new ArrayList<>(capacity);
+            int row = 0;
+            if (previous != null) {
+                for (int i = 0; i < previous.size; i++) {
+                    if (dropped.contains(previous.columns[PRODUCT_ID][i])) {
+                        continue;
+                    }
+                    for (int column = 0; column < COLUMNS.length; column++) {
+                        columns[column][row] = previous.columns[column][i];
+                    }
+                    nameTokens[row] = previous.nameTokens[i];
+                    details.add(previous.details.get(i));
+                    positions.put(columns[PRODUCT_ID][row], row);
+                    row++;
+                }
+            }
+            for (Map<String, AttributeValue> item : added) {
+                AttributeValue productId = item.get("productId");
+                if (productId == null || productId.s() == null || positions.containsKey(productId.s())) {
+                    continue;
+                }
+                Map<String, AttributeValue> rest = new HashMap<>(item);
+                for (int column = 0; column < COLUMNS.length; column++) {
+                    AttributeValue value = item.get(COLUMNS[column]);
+                    String text = value == null ? null : NUMERIC[column] ? value.n() : value.s();
+                    if (text != null) {
+                        // Values of an unexpected type stay with the other attributes
+                        columns[column][row] = text;
+                        rest.remove(COLUMNS[column]);
+                    }
+                }
+                nameTokens[row] = ProductSearchIndex.tokenize(columns[NAME][row]).toArray(new String[0]);
+                details.add(rest.isEmpty() ? Map.of() : rest);
+                positions.put(productId.s(), row);
+                row++;
+            }
+            size = row;
+        }
+
+        private AttributeValue cell(int column, int row) {
+            String text = columns[column][row];
+            if (text == null) {
+                return null;
+            }
+            return NUMERIC[column] ? AttributeValue.builder().n(text).build() : AttributeValue.builder().s(text).build();
+        }
+
+        private Map<String, AttributeValue> item(int row) {
+            Map<String, AttributeValue> item = new HashMap<>(details.get(row));
+            for (int column = 0; column < COLUMNS.length; column++) {
+                AttributeValue value = cell(column, row);
+                if (value != null) {
+                    item.put(COLUMNS[column], value);
+                }
+            }
+            return item;
+        }
+    }
+
+    // List-view row of one product, read from the columns when an attribute is asked for
+    private static final class Row extends AbstractMap<String, AttributeValue> {
+        private final State state;
+        private final int row;
+
+        private Row(State state, int row) {
+            this.state = state;
+            this.row = row;
+        }
+
+        @Override
+        public AttributeValue get(Object attribute) {
+            Integer column = COLUMN_INDEX.get(attribute);
+            return column != null ? state.cell(column, row) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object attribute) {
+            Integer column = COLUMN_INDEX.get(attribute);
+            return column != null && state.columns[column][row] != null;
+        }
+
+        @Override
+        public Set<Entry<String, AttributeValue>> entrySet() {
+            Map<String, AttributeValue> values = new LinkedHashMap<>();
+            for (int column = 0; column < COLUMNS.length; column++) {
+                AttributeValue value = state.cell(column, row);
+                if (value != null) {
+                    values.put(COLUMNS[column], value);
+                }
+            }
+            return values.entrySet();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.ConfigManager;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Change feed of a product table. A marker item (Stream = table name, Seq 0) holds a Version counter that every
+// product write bumps, and each bump leaves a change row (Seq = new version, productId) that expires after a week.
+// Readers holding a copy of the catalog query the rows after their version to learn which products to reload.
+public class CatalogVersion {
+
+    private static final Logger logger = Logger.getLogger(CatalogVersion.class.getName());
+    private static final long CHANGE_RETENTION_SECONDS = 7 * 24 * 3600;
+
+    private final DynamoDbClient dynamoDB;
+    private final String versionTable;
+    private final String stream;
+
+    public CatalogVersion(DynamoDbClient dynamoDB, String versionTable, String productTable) {
+        this.dynamoDB = dynamoDB;
+        this.versionTable = versionTable;
+        this.stream = productTable;
+    }
+
+    // Returns null when no CATALOG_VERSION_TABLE is configured
+    public static CatalogVersion fromConfig(DynamoDbClient dynamoDB, ConfigManager configManager, String productTable) {
+        Object versionTable = configManager.get("CATALOG_VERSION_TABLE");
+        if (!(versionTable instanceof String) || ((String) versionTable).isEmpty()) {
+            return null;
+        }
+        return new CatalogVersion(dynamoDB, (String) versionTable, productTable);
+    }
+
+    // Called after a product write has succeeded; a failure only delays snapshot refreshes, so it is logged, not thrown
+    public static void recordChange(DynamoDbClient dynamoDB, ConfigManager configManager, String productTable, String productId) {
+        CatalogVersion catalogVersion = fromConfig(dynamoDB, configManager, productTable);
+        if (catalogVersion == null) {
+            return;
+        }
+        try {
+            catalogVersion.recordChange(productId);
+        } catch (DynamoDbException e) {
+            logger.log(Level.WARNING, "Failed to record catalog change for product " + productId, e);
+        }
+    }
+
+    public long recordChange(String productId) {
+        UpdateItemResponse updateItemResponse = dynamoDB.updateItem(UpdateItemRequest.builder()
+                .tableName(versionTable)
+                .key(key(0))
+                .updateExpression("ADD Version :one")
+                .expressionAttributeValues(Map.of(":one", AttributeValue.builder().n("1").build()))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .build());
+        long version = Long.parseLong(updateItemResponse.attributes().get("Version").n());
+
+        Map<String, AttributeValue> change = key(version);
+        change.put("productId", AttributeValue.builder().s(productId).build());
+        change.put("TTL", AttributeValue.builder().n(String.valueOf(System.currentTimeMillis() / 1000 + CHANGE_RETENTION_SECONDS)).build());
+        dynamoDB.putItem(PutItemRequest.builder()
+                .tableName(versionTable)
+                .item(change)
+                .build());
+        return version;
+    }
+
+    public long currentVersion() {
+        GetItemResponse getItemResponse = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(versionTable)
+                .key(key(0))
+                .consistentRead(true)
+                .build());
+        AttributeValue version = getItemResponse.hasItem() ? getItemResponse.item().get("Version") : null;
+        return version != null ? Long.parseLong(version.n()) : 0;
+    }
+
+    // Change rows with a sequence number above the given version, oldest first
+    public List<Change> changesSince(long version) {
+        List<Change> changes = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResponse queryResponse = dynamoDB.query(QueryRequest.builder()
+                    .tableName(versionTable)
+                    .keyConditionExpression("#stream = :stream AND Seq > :version")
+                    .expressionAttributeNames(Map.of("#stream", "Stream"))
+                    .expressionAttributeValues(Map.of(
+                            ":stream", AttributeValue.builder().s(stream).build(),
+                            ":version", AttributeValue.builder().n(String.valueOf(version)).build()))
+                    .consistentRead(true)
+                    .exclusiveStartKey(lastEvaluatedKey)
+                    .build());
+            for (Map<String, AttributeValue> item : queryResponse.items()) {
+                changes.add(new Change(Long.parseLong(item.get("Seq").n()), item.get("productId").s()));
+            }
+            lastEvaluatedKey = queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()
+                    ? queryResponse.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return changes;
+    }
+
+    private Map<String, AttributeValue> key(long seq) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("Stream", AttributeValue.builder().s(stream).build());
+        key.put("Seq", AttributeValue.builder().n(String.valueOf(seq)).build());
+        return key;
+    }
+
+    public static final class Change {
+        private final long version;
+        private final String productId;
+
+        private Change(long version, String productId) {
+            this.version = version;
+            this.productId = productId;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getProductId() {
+            return productId;
+        }
+    }
+}
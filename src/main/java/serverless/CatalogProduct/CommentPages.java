@@ -0,0 +1,141 @@
+package serverless.CatalogProduct;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads one page of a product's comments with Query Limit and ExclusiveStartKey instead of loading them all.
+// With a time index (productId + CreatedAt) comments come newest first; otherwise in the table's UserId order.
+// A cursor resumes right after the previous page; a page number skips the comments before it with a key-only
+// projection and is kept for older clients. Every page that totalPages counts can be read by number, but deep pages
+// cost a read of every key before them, so clients paging far should follow the cursor.
+public class CommentPages {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String KEY_PROJECTION = "productId, UserId, CreatedAt";
+
+    private final DynamoDbClient dynamoDB;
+    private final String commentTable;
+    private final String timeIndex;
+
+    public CommentPages(DynamoDbClient dynamoDB, String commentTable, Object timeIndex) {
+        this.dynamoDB = dynamoDB;
+        this.commentTable = commentTable;
+        this.timeIndex = timeIndex instanceof String && !((String) timeIndex).isEmpty() ? (String) timeIndex : null;
+    }
+
+    // The cursor, when readable, takes precedence over the page number. Throws IllegalArgumentException for a
+    // page size outside 1..MAX_PAGE_SIZE, or a page number below 1 without a readable cursor.
+    public Page page(String productId, int page, int pageSize, String cursor) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        Map<String, AttributeValue> startKey = decode(productId, cursor);
+        if (startKey == null) {
+            if (page < 1) {
+                throw new IllegalArgumentException("page must be 1 or more.");
+            }
+            int toSkip = (page - 1) * pageSize;
+            while (toSkip > 0) {
+                QueryResponse skipped = query(productId, toSkip, startKey, KEY_PROJECTION);
+                toSkip -= skipped.count();
+                startKey = lastEvaluatedKey(skipped);
+                if (startKey == null) {
+                    return new Page(new ArrayList<>(), null);
+                }
+            }
+        }
+
+        List<Map<String, AttributeValue>> comments = new ArrayList<>();
+        do {
+            // A response can stop short of the limit at 1 MB, so keep reading until the page is full
+            QueryResponse response = query(productId, pageSize - comments.size(), startKey, null);
+            comments.addAll(response.items());
+            startKey = lastEvaluatedKey(response);
+        } while (startKey != null && comments.size() < pageSize);
+        return new Page(comments, startKey != null ? encode(startKey) : null);
+    }
+
+    private QueryResponse query(String productId, int limit, Map<String, AttributeValue> startKey, String projectionExpression) {
+        QueryRequest.Builder queryRequest = QueryRequest.builder()
+                .tableName(commentTable)
+                .keyConditionExpression("productId = :pid")
+                .expressionAttributeValues(Map.of(":pid", AttributeValue.builder().s(productId).build()))
+                .limit(limit);
+        if (timeIndex != null) {
+            queryRequest.indexName(timeIndex).scanIndexForward(false);
+        }
+        if (startKey != null) {
+            queryRequest.exclusiveStartKey(startKey);
+        }
+        if (projectionExpression != null) {
+            queryRequest.projectionExpression(projectionExpression);
+        }
+        return dynamoDB.query(queryRequest.build());
+    }
+
+    private static Map<String, AttributeValue> lastEvaluatedKey(QueryResponse response) {
+        return response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty() ? response.lastEvaluatedKey() : null;
+    }
+
+    // "t|CreatedAt|UserId" on the time index, "u|UserId" on the table; the productId always comes from the request
+    private String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+        String cursor = timeIndex != null
+                ? "t|" + lastEvaluatedKey.get("CreatedAt").s() + "|" + lastEvaluatedKey.get("UserId").s()
+                : "u|" + lastEvaluatedKey.get("UserId").s();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Unreadable cursors, or ones from the other ordering, are ignored and the page number is used instead
+    private Map<String, AttributeValue> decode(String productId, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        startKey.put("productId", AttributeValue.builder().s(productId).build());
+        if (timeIndex != null && parts.length == 3 && "t".equals(parts[0])) {
+            startKey.put("CreatedAt", AttributeValue.builder().s(parts[1]).build());
+            startKey.put("UserId", AttributeValue.builder().s(parts[2]).build());
+            return startKey;
+        }
+        if (timeIndex == null && parts.length == 2 && "u".equals(parts[0])) {
+            startKey.put("UserId", AttributeValue.builder().s(parts[1]).build());
+            return startKey;
+        }
+        return null;
+    }
+
+    public static final class Page {
+        private final List<Map<String, AttributeValue>> items;
+        private final String nextCursor;
+
+        Page(List<Map<String, AttributeValue>> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Map<String, AttributeValue>> getItems() {
+            return items;
+        }
+
+        // null on the last page
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -21,6 +20,11 @@ public class ConcreteProduct implements RequestHandler<Map<String, Object>, Map<
     private static final Gson gson = new Gson();
     private static ConfigManager configManager;
     private static DynamoDbClient dynamoDB;
+
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @Override
     public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
         initializeResources();
@@ -33,9 +37,7 @@ public class ConcreteProduct implements RequestHandler<Map<String, Object>, Map<
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -46,14 +48,19 @@ public class ConcreteProduct implements RequestHandler<Map<String, Object>, Map<
             AWSXRay.endSubsegment();
 
             Map<String, String> pathParameters = (Map<String, String>) event.get("pathParameters");
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("productId", AttributeValue.builder().s(pathParameters.get("productId")).build());
-            GetItemRequest request = GetItemRequest.builder()
-                    .key(key)
-                    .tableName(PRODUCT_TABLE)
-                    .build();
-            GetItemResponse getItemResponse = dynamoDB.getItem(request);
-            Map<String, String> itemString = ResponseTransformer.transformItem(getItemResponse.item());
+            String productId = pathParameters.get("productId");
+            Map<String, AttributeValue> product = CatalogSnapshot.getProduct(dynamoDB, PRODUCT_TABLE, configManager, productId);
+            if (product == null) {
+                Map<String, AttributeValue> key = new HashMap<>();
+                key.put("productId", AttributeValue.builder().s(productId).build());
+                GetItemRequest request = GetItemRequest.builder()
+                        .key(key)
+                        .tableName(PRODUCT_TABLE)
+                        .build();
+                GetItemResponse getItemResponse = dynamoDB.getItem(request);
+                product = getItemResponse.item();
+            }
+            Map<String, String> itemString = ResponseTransformer.transformItem(product);
 
             Logger.getLogger(GetProduct.class.getName()).info("Successfully obtained product details");
             return ResponseGenerator.generateResponse(200, gson.toJson(itemString));
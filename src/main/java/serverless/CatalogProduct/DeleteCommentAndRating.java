@@ -7,11 +7,9 @@ import com.amazonaws.xray.entities.Subsegment;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.net.MalformedURLException;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +26,7 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -36,9 +35,7 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -67,10 +64,6 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             Subsegment tokenVerificationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
@@ -79,7 +72,7 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (JWTVerificationException | MalformedURLException e) {
                 logger.log(Level.SEVERE, "Token verification failed", e);
                 return ResponseGenerator.generateResponse(401, gson.toJson("Invalid token."));
@@ -93,72 +86,56 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
             String[] parts = proxyValue.split("/");
             String productId = parts[parts.length - 1];
 
-            // Retrieve the rating of the comment before deletion
-            Subsegment retrieveRatingSubsegment = AWSXRay.beginSubsegment("retrieveRating");
-            GetItemRequest getItemRequest = GetItemRequest.builder()
-                    .tableName(COMMENT_TABLE)
-                    .key(Map.of("UserId", AttributeValue.builder().s(userId).build(),
-                            "productId", AttributeValue.builder().s(productId).build()))
-                    .projectionExpression("Rating")
-                    .build();
-            GetItemResponse getItemResponse = dynamoDB.getItem(getItemRequest);
-
-            if (getItemResponse.item() == null || getItemResponse.item().isEmpty()) {
-                logger.info("Comment with given userId and productId does not exist in the database.");
-                return ResponseGenerator.generateResponse(404, gson.toJson("Comment cannot be deleted because it is not present in the database."));
-            }
-            int deletedRating = Integer.parseInt(getItemResponse.item().get("Rating").n());
-            retrieveRatingSubsegment.putMetadata("deletedRating", deletedRating);
-            AWSXRay.endSubsegment();
-
-            // Delete the comment
+            // Read the comment for its rating, then delete it and take the rating out of the product's aggregates
+            // in one transaction, on the condition that the comment still has that rating
             Subsegment deleteCommentSubsegment = AWSXRay.beginSubsegment("deleteComment");
             Map<String, AttributeValue> key = new HashMap<>();
             key.put("UserId", AttributeValue.builder().s(userId).build());
             key.put("productId", AttributeValue.builder().s(productId).build());
-            DeleteItemRequest deleteItemRequest = DeleteItemRequest.builder()
+            GetItemResponse commentResponse = dynamoDB.getItem(GetItemRequest.builder()
                     .tableName(COMMENT_TABLE)
                     .key(key)
-                    .build();
-            dynamoDB.deleteItem(deleteItemRequest);
-            AWSXRay.endSubsegment();
+                    .projectionExpression("Rating")
+                    .consistentRead(true)
+                    .build());
+            if (!commentResponse.hasItem() || commentResponse.item().isEmpty()) {
+                AWSXRay.endSubsegment();
+                logger.info("Comment with given userId and productId does not exist in the database.");
+                return ResponseGenerator.generateResponse(404, gson.toJson("Comment cannot be deleted because it is not present in the database."));
+            }
+            AttributeValue deletedRatingValue = commentResponse.item().get("Rating");
+            int deletedRating = Integer.parseInt(deletedRatingValue.n());
+            deleteCommentSubsegment.putMetadata("deletedRating", deletedRating);
 
-            // Calculate the new average rating
-            Subsegment calculateRatingSubsegment = AWSXRay.beginSubsegment("calculateNewRating");
-            QueryRequest queryRequest = QueryRequest.builder()
+            RatingAggregates aggregates = RatingAggregates.fromConfig(dynamoDB, configManager, PRODUCT_TABLE, COMMENT_TABLE);
+            Delete deleteComment = Delete.builder()
                     .tableName(COMMENT_TABLE)
-                    .keyConditionExpression("productId = :v_id")
-                    .expressionAttributeValues(Collections.singletonMap(":v_id", AttributeValue.builder().s(productId).build()))
-                    .projectionExpression("Rating")
+                    .key(key)
+                    .conditionExpression("Rating = :rating")
+                    .expressionAttributeValues(Map.of(":rating", deletedRatingValue))
                     .build();
-            QueryResponse queryResponse = dynamoDB.query(queryRequest);
-            List<Map<String, AttributeValue>> comments = queryResponse.items();
-            int totalRating = 0;
-            for (Map<String, AttributeValue> commentItem : comments) {
-                totalRating += Integer.parseInt(commentItem.get("Rating").n());
+            boolean deleted;
+            try {
+                deleted = aggregates.write(TransactWriteItem.builder().delete(deleteComment).build(), productId, deletedRating, -1)
+                        || deleteWithoutProduct(key, deletedRatingValue, COMMENT_TABLE);
+            } catch (TransactionCanceledException e) {
+                if (!conditionFailed(e.cancellationReasons(), 0)) {
+                    throw e;
+                }
+                deleted = false;
+            }
+            if (!deleted) {
+                AWSXRay.endSubsegment();
+                logger.info("Comment of user " + userId + " on product " + productId + " was deleted concurrently");
+                return ResponseGenerator.generateResponse(404, gson.toJson("Comment cannot be deleted because it is not present in the database."));
             }
-            double avgRating = comments.size() > 0 ? (double) totalRating / comments.size() : 0;
-            calculateRatingSubsegment.putMetadata("averageRating", avgRating);
             AWSXRay.endSubsegment();
 
-            // Update the product catalog with the new average rating and decrement the commentsCount
             Subsegment updateProductSubsegment = AWSXRay.beginSubsegment("updateProductDetails");
-            Map<String, AttributeValueUpdate> attributeUpdates = new HashMap<>();
-            attributeUpdates.put("AverageRating", AttributeValueUpdate.builder()
-                    .value(AttributeValue.builder().n(String.valueOf(avgRating)).build())
-                    .action(AttributeAction.PUT)
-                    .build());
-            attributeUpdates.put("commentsCount", AttributeValueUpdate.builder()
-                    .value(AttributeValue.builder().n("-1").build())
-                    .action(AttributeAction.ADD)
-                    .build());
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName(PRODUCT_TABLE)
-                    .key(Collections.singletonMap("productId", AttributeValue.builder().s(productId).build()))
-                    .attributeUpdates(attributeUpdates)
-                    .build();
-            dynamoDB.updateItem(updateItemRequest);
+            Double avgRating = aggregates.refreshAverage(productId);
+            updateProductSubsegment.putMetadata("averageRating", String.valueOf(avgRating));
             AWSXRay.endSubsegment();
+            CatalogVersion.recordChange(dynamoDB, configManager, PRODUCT_TABLE, productId);
 
             // Create a response object that includes the success message and the new average rating
             Map<String, Object> response = new HashMap<>();
@@ -174,4 +151,23 @@ public class DeleteCommentAndRating implements RequestHandler<Map<String, Object
             throw new RuntimeException("Failed to delete comment and rating", e);
         }
     }
+
+    // The product is gone, so there are no aggregates left to keep in step with the comment
+    private static boolean deleteWithoutProduct(Map<String, AttributeValue> key, AttributeValue rating, String commentTable) {
+        try {
+            dynamoDB.deleteItem(DeleteItemRequest.builder()
+                    .tableName(commentTable)
+                    .key(key)
+                    .conditionExpression("Rating = :rating")
+                    .expressionAttributeValues(Map.of(":rating", rating))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private static boolean conditionFailed(List<CancellationReason> reasons, int index) {
+        return reasons != null && reasons.size() > index && "ConditionalCheckFailed".equals(reasons.get(index).code());
+    }
 }
@@ -6,11 +6,9 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,6 +23,7 @@ public class DeleteProduct implements RequestHandler<Map<String, Object>, Map<St
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -33,9 +32,7 @@ public class DeleteProduct implements RequestHandler<Map<String, Object>, Map<St
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -64,20 +61,15 @@ public class DeleteProduct implements RequestHandler<Map<String, Object>, Map<St
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             Subsegment tokenVerificationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 token = authHeader.substring("Bearer ".length());
             }
-            List<String> groups;
             try {
-                groups = TokenVerifier.getGroups(token, ISSUER);
-                if (groups == null || !groups.contains("Admins")) {
+                VerifiedPrincipal principal = TokenVerifier.verify(token, ISSUER);
+                if (!principal.isInGroup("Admins")) {
                     return ResponseGenerator.generateResponse(401, gson.toJson("Unauthorized: only admin users can delete products."));
                 }
             } catch (Exception e) {
@@ -116,6 +108,15 @@ public class DeleteProduct implements RequestHandler<Map<String, Object>, Map<St
             dynamoDB.deleteItem(deleteItemRequest);
             AWSXRay.endSubsegment();
 
+            AttributeValue productName = getItemResponse.item().get("productName");
+            if (productName != null) {
+                Subsegment searchIndexSubsegment = AWSXRay.beginSubsegment("updateSearchIndex");
+                ProductSearchIndex.recordChange(dynamoDB, configManager, productId, productName.s(), null);
+                AWSXRay.endSubsegment();
+            }
+
+            CatalogVersion.recordChange(dynamoDB, configManager, PRODUCT_TABLE, productId);
+
             logger.info("Product deleted successfully.");
             return ResponseGenerator.generateResponse(200, gson.toJson("Product deleted successfully."));
         } catch (Exception e) {
@@ -5,10 +5,12 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
+import serverless.lib.ClientRegistry;
+import serverless.lib.ColdStartPriming;
 import serverless.lib.ConfigManager;
+import serverless.lib.MetricsHandler;
 import serverless.lib.ResponseGenerator;
 import serverless.lib.ResponseTransformer;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -23,7 +25,12 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
     private static final Gson gson = new Gson();
     private static DynamoDbClient dynamoDB;
     private static ConfigManager configManager;
+    private static MetricsHandler metricsHandler;
+    private static final CatalogResponseCache responseCache = new CatalogResponseCache();
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
 
     @LambdaOperation(
             summary = "Get Products", description = "This endpoint allows users to get a list of products.", path = "/catalog", method = "get")
@@ -33,7 +40,8 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
             @LambdaParameter(name = "sortOrder", description = "Sort order", in = ParameterIn.QUERY, example = "ASC", schema = @LambdaSchema(enumeration = {"ASC", "DSC"})),
             @LambdaParameter(name = "category", description = "Category for filtering products", in = ParameterIn.QUERY, example = "Timepiece", schema = @LambdaSchema(enumeration = {"All", "Jewelry", "Timepiece", "Games"})),
             @LambdaParameter(name = "page", description = "Page number", in = ParameterIn.QUERY, example = "1"),
-            @LambdaParameter(name = "pageSize", description = "Page size", in = ParameterIn.QUERY, example = "4")
+            @LambdaParameter(name = "pageSize", description = "Page size", in = ParameterIn.QUERY, example = "4"),
+            @LambdaParameter(name = "cursor", description = "Opaque nextCursor from the previous page, takes precedence over page", in = ParameterIn.QUERY)
     })
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Successfully obtained products list."),
@@ -51,9 +59,11 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
+        }
+        if (metricsHandler == null) {
+            metricsHandler = new MetricsHandler();
+            metricsHandler.setLambdaFunctionName(System.getenv("AWS_LAMBDA_FUNCTION_NAME"));
         }
     }
 
@@ -72,12 +82,13 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
 
             // Extract the search term, sorting option, and category from the query string parameters
             // If no value is provided, default to an empty string or null
-            String searchTerm = queryStringParameters.getOrDefault("searchTerm", "").toString().toLowerCase();
+            String searchTerm = queryStringParameters.getOrDefault("searchTerm", "").toString().toLowerCase().trim();
             String sortBy = queryStringParameters.getOrDefault("sortBy", "").toString();
             String sortOrder = queryStringParameters.getOrDefault("sortOrder", "").toString();
             String category = queryStringParameters.getOrDefault("category", "").toString();
             int page = Integer.parseInt(queryStringParameters.getOrDefault("page", "1").toString());
             int pageSize = Integer.parseInt(queryStringParameters.getOrDefault("pageSize", "4").toString());
+            String cursor = queryStringParameters.getOrDefault("cursor", "").toString();
             AWSXRay.endSubsegment();
 
             Subsegment filteringSortingSubsegment = AWSXRay.beginSubsegment("performFilteringSorting");
@@ -88,76 +99,49 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
             queryParams.put("category", category);
             queryParams.put("page", page);
             queryParams.put("pageSize", pageSize);
+            queryParams.put("cursor", cursor);
             queryParams.forEach((key, value) -> filteringSortingSubsegment.putMetadata(key, value));
-            ScanRequest.Builder scanRequestBuilder = ScanRequest.builder().tableName(PRODUCT_TABLE);
-            // Initi  alize the filter expression and attribute values
-            String filterExpression = "";
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            // Capitalize first letter of each word in searchTerm
-            if (searchTerm != null && !searchTerm.isEmpty()) {
-                String[] words = searchTerm.split(" ");
-                StringBuilder filterExpressionBuilder = new StringBuilder();
-                int index = 0;
-                for (String word : words) {
-                    if (word != null && !word.isEmpty()) {
-                        String capitalizedWord = word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase();
-                        if (index > 0) {
-                            filterExpressionBuilder.append(" AND ");
-                        }
-                        filterExpressionBuilder.append("contains(productName, :val").append(index).append(")");
-                        expressionAttributeValues.put(":val" + index, AttributeValue.builder().s(capitalizedWord).build());
-                        index++;
-                    }
+            List<Map<String, AttributeValue>> items = null;
+            boolean sortedByIndex = false;
+            // Serve from the in-memory catalog when it is enabled, DynamoDB remains the fallback
+            CatalogSnapshot snapshot = CatalogSnapshot.forTable(dynamoDB, PRODUCT_TABLE, configManager);
+            long catalogVersion = catalogVersion(snapshot, PRODUCT_TABLE);
+            String cacheKey = CatalogResponseCache.key(searchTerm, category, sortBy, sortOrder, page, pageSize, cursor);
+            long cacheTtlMillis = configManager.getLong("CATALOG_CACHE_TTL_SECONDS", 60) * 1000;
+            if (catalogVersion >= 0) {
+                responseCache.publishMetrics(metricsHandler, configManager.getLong("CATALOG_CACHE_METRICS_SECONDS", 60) * 1000);
+                String cachedBody = responseCache.get(cacheKey, catalogVersion, cacheTtlMillis);
+                if (cachedBody != null) {
+                    filteringSortingSubsegment.putMetadata("accessPath", "CACHE");
+                    AWSXRay.endSubsegment();
+                    return ResponseGenerator.generateResponse(200, cachedBody);
                 }
-                filterExpression += filterExpressionBuilder.toString();
             }
-
-            // Apply the category filter if a category is provided
-            if (!category.isEmpty()) {
-                // Add an AND operator if there's already a condition in the filter expression
-                if (!filterExpression.isEmpty()) {
-                    filterExpression += " AND ";
+            if (snapshot != null) {
+                try {
+                    items = snapshot.list(searchTerm, category);
+                    filteringSortingSubsegment.putMetadata("accessPath", "SNAPSHOT");
+                } catch (RuntimeException e) {
+                    Logger.getLogger(GetAndSearchProducts.class.getName()).log(Level.WARNING, "Catalog snapshot unavailable, reading from DynamoDB", e);
                 }
-                filterExpression += "categoryName = :cat";
-                expressionAttributeValues.put(":cat", AttributeValue.builder().s(category).build());
             }
-            // Set the filter expression and attribute values in the scan request
-            if (!filterExpression.isEmpty()) {
-                scanRequestBuilder.filterExpression(filterExpression)
-                        .expressionAttributeValues(expressionAttributeValues);
+            if (items == null) {
+                ProductQueryPlanner planner = ProductQueryPlanner.fromConfig(dynamoDB, PRODUCT_TABLE, configManager);
+                ProductQueryPlanner.Plan plan = planner.plan(searchTerm, category, sortBy, sortOrder);
+                ProductQueryPlanner.Result result = planner.execute(plan);
+                filteringSortingSubsegment.putMetadata("accessPath", result.getAccessPath().name());
+                items = result.getItems();
+                sortedByIndex = result.isSortedByIndex();
             }
-            // Perform the scan
-            ScanRequest scanRequest = scanRequestBuilder.build();
-            ScanResponse scanResponse = dynamoDB.scan(scanRequest);
-            List<Map<String, AttributeValue>> items = scanResponse.items();
-            List<Map<String, AttributeValue>> sortedItems = new ArrayList<>(items);
-            // Sort the items if a sorting option is provided
-            if (!sortBy.isEmpty()) {
-                switch (sortBy) {
-                    case "AverageRating":
-                        sortedItems.sort(Comparator.comparing(item -> Double.parseDouble(item.get("AverageRating").n())));
-                        if (sortOrder.equalsIgnoreCase("DSC")) Collections.reverse(sortedItems);
-                        items = sortedItems;
-                        break;
-                    case "Price":
-                        sortedItems.sort(Comparator.comparing(item -> Double.parseDouble(item.get("Price").n())));
-                        if (sortOrder.equalsIgnoreCase("DSC")) Collections.reverse(sortedItems);
-                        items = sortedItems;
-                        break;
-                    default:
-                        break;
-                }
-            }
-
             AWSXRay.endSubsegment();
 
             Subsegment pagingAndSegmentingSubsegment = AWSXRay.beginSubsegment("processingResults");
             // Calculate the total number of pages
             int totalPages = (int) Math.ceil((double) items.size() / pageSize);
-            // Get the  items for the current page
-            int start = (page - 1) * pageSize;
-            int end = Math.min(start + pageSize, items.size());
-            List<Map<String, AttributeValue>> pagedItems = items.subList(start, end);
+            // Select the items for the current page, only fully ordering the ones that can land on it
+            TopKSelector.Page selectedPage = TopKSelector.select(items, sortBy, sortOrder.equalsIgnoreCase("DSC"),
+                    sortedByIndex, page, pageSize, cursor);
+            List<Map<String, AttributeValue>> pagedItems = selectedPage.getItems();
             List<Map<String, String>> itemsString = ResponseTransformer.transformItems(pagedItems);
             AWSXRay.endSubsegment();
 
@@ -165,17 +149,37 @@ public class GetAndSearchProducts implements RequestHandler<Map<String, Object>,
             responseBody.put("products", itemsString);
             responseBody.put("totalPages", totalPages);
             responseBody.put("totalProducts", items.size());
-            responseBody.put("currentRangeStart", start + 1);
-            responseBody.put("currentRangeEnd", end);
+            responseBody.put("currentRangeStart", selectedPage.getStart() + 1);
+            responseBody.put("currentRangeEnd", selectedPage.getEnd());
+            responseBody.put("nextCursor", selectedPage.getNextCursor());
+
+            String body = gson.toJson(responseBody);
+            if (catalogVersion >= 0) {
+                responseCache.put(cacheKey, catalogVersion, body, configManager.getLong("CATALOG_CACHE_MAX_BYTES", 8L * 1024 * 1024));
+            }
 
             Logger.getLogger(GetAndSearchProducts.class.getName()).info("Successfully obtained product list");
-            return ResponseGenerator.generateResponse(200, gson.toJson(responseBody));
+            return ResponseGenerator.generateResponse(200, body);
 
         } catch (Exception e) {
             Logger.getLogger(GetAndSearchProducts.class.getName()).log(Level.SEVERE, "Failed to obtain product list", e);
             throw new RuntimeException("Failed to obtain product list", e);
         }
     }
+
+    // Version the cached responses are checked against, -1 disables the cache when there is no change feed to follow
+    private long catalogVersion(CatalogSnapshot snapshot, String productTable) {
+        try {
+            if (snapshot != null) {
+                return snapshot.version();
+            }
+            CatalogVersion version = CatalogVersion.fromConfig(dynamoDB, configManager, productTable);
+            return version != null ? version.currentVersion() : -1;
+        } catch (RuntimeException e) {
+            Logger.getLogger(GetAndSearchProducts.class.getName()).log(Level.WARNING, "Catalog version unavailable, bypassing response cache", e);
+            return -1;
+        }
+    }
 }
 
 
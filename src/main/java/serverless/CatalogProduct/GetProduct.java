@@ -6,7 +6,6 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -22,6 +21,10 @@ public class GetProduct implements RequestHandler<Map<String, Object>, Map<Strin
     private static ConfigManager configManager;
     private static DynamoDbClient dynamoDB;
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @LambdaOperation(
             summary = "Get Product Details",
             description = "This endpoint allows users to get details of a specific product in the catalog by its productId.",
@@ -48,9 +51,7 @@ public class GetProduct implements RequestHandler<Map<String, Object>, Map<Strin
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -64,20 +65,25 @@ public class GetProduct implements RequestHandler<Map<String, Object>, Map<Strin
             String proxyValue = pathParameters.get("proxy");
             String[] parts = proxyValue.split("/");
             String productId = parts[parts.length - 1];
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("productId", AttributeValue.builder().s(productId).build());
-            GetItemRequest request = GetItemRequest.builder()
-                    .key(key)
-                    .tableName(PRODUCT_TABLE)
-                    .build();
-            GetItemResponse getItemResponse = dynamoDB.getItem(request);
+            Map<String, AttributeValue> product = CatalogSnapshot.getProduct(dynamoDB, PRODUCT_TABLE, configManager, productId);
+            if (product == null) {
+                // Not in the snapshot (or no snapshot), the product may have been added since the last refresh
+                Map<String, AttributeValue> key = new HashMap<>();
+                key.put("productId", AttributeValue.builder().s(productId).build());
+                GetItemRequest request = GetItemRequest.builder()
+                        .key(key)
+                        .tableName(PRODUCT_TABLE)
+                        .build();
+                GetItemResponse getItemResponse = dynamoDB.getItem(request);
 
-            if (getItemResponse.item().isEmpty()) {
-                Logger.getLogger(GetProduct.class.getName()).info("Product not found");
-                return ResponseGenerator.generateResponse(404, gson.toJson("Product not found."));
+                if (getItemResponse.item().isEmpty()) {
+                    Logger.getLogger(GetProduct.class.getName()).info("Product not found");
+                    return ResponseGenerator.generateResponse(404, gson.toJson("Product not found."));
+                }
+                product = getItemResponse.item();
             }
 
-            Map<String, String> itemString = ResponseTransformer.transformItem(getItemResponse.item());
+            Map<String, String> itemString = ResponseTransformer.transformItem(product);
             Logger.getLogger(GetProduct.class.getName()).info("Successfully obtained product details");
             return ResponseGenerator.generateResponse(200, gson.toJson(itemString));
 
@@ -6,7 +6,6 @@ import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import com.amazonaws.xray.AWSXRay;
@@ -26,6 +25,7 @@ public class GetProductComments implements RequestHandler<Map<String, Object>, M
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -34,26 +34,26 @@ public class GetProductComments implements RequestHandler<Map<String, Object>, M
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
     @LambdaOperation(
             summary = "Retrieve comments of a product by its ID",
-            description = "Get paginated comments of a product along with associated rating counts.",
+            description = "Get paginated comments of a product along with associated rating counts. Comments come newest first when COMMENT_TIME_INDEX is configured, otherwise in UserId order. Follow nextCursor to read the next page.",
             path = "/comments/{productId}",
             method = "GET"
     )
     @LambdaParameters({
             @LambdaParameter(name = "productId", description = "ID of the product to get comments for", in = LambdaDocumentationAnnotations.ParameterIn.PATH, example = "69c52025-fcd6-4fc3-a3c0-5a2a915607c4"),
-            @LambdaParameter(name = "page", description = "Page number for pagination", in = LambdaDocumentationAnnotations.ParameterIn.QUERY, example = "1"),
-            @LambdaParameter(name = "pageSize", description = "Number of comments per page", in = LambdaDocumentationAnnotations.ParameterIn.QUERY, example = "4")
+            @LambdaParameter(name = "page", description = "Page number for pagination, from 1 to totalPages; following nextCursor reads deep pages more cheaply", in = LambdaDocumentationAnnotations.ParameterIn.QUERY, example = "1"),
+            @LambdaParameter(name = "pageSize", description = "Number of comments per page, between 1 and 100", in = LambdaDocumentationAnnotations.ParameterIn.QUERY, example = "4"),
+            @LambdaParameter(name = "cursor", description = "Opaque nextCursor from the previous page, takes precedence over page", in = LambdaDocumentationAnnotations.ParameterIn.QUERY)
     })
 
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Successfully obtained product comments."),
+            @LambdaAPIResponse(responseCode = 400, description = "Invalid page or pageSize."),
             @LambdaAPIResponse(responseCode = 500, description = "Unable to get product comments. Please try again")
     })
     @Override
@@ -64,14 +64,10 @@ public class GetProductComments implements RequestHandler<Map<String, Object>, M
     public Map<String, Object> getProductComments(Map<String, Object> event) {
         try {
             Subsegment configSubsegment = AWSXRay.beginSubsegment("collectConfigParams");
-            String REGION = (String) configManager.get("DYNAMO_REGION");
             String COMMENT_TABLE = (String) configManager.get("COMMENT_TABLE");
+            String PRODUCT_TABLE = (String) configManager.get("PRODUCT_TABLE");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
-
             Subsegment extractParamsSubsegment = AWSXRay.beginSubsegment("extractingParameters");
             Map<String, String> pathParameters = (Map<String, String>) event.get("pathParameters");
             String proxyValue = pathParameters.get("proxy");
@@ -81,40 +77,50 @@ public class GetProductComments implements RequestHandler<Map<String, Object>, M
             if (event.containsKey("queryStringParameters") && event.get("queryStringParameters") != null) {
                 queryStringParameters = (Map<String, Object>) event.get("queryStringParameters");
             }
-            int page = Integer.parseInt(queryStringParameters.getOrDefault("page", "1").toString());
-            int pageSize = Integer.parseInt(queryStringParameters.getOrDefault("pageSize", "4").toString());
+            int page;
+            int pageSize;
+            try {
+                page = Integer.parseInt(queryStringParameters.getOrDefault("page", "1").toString());
+                pageSize = Integer.parseInt(queryStringParameters.getOrDefault("pageSize", "4").toString());
+            } catch (NumberFormatException e) {
+                AWSXRay.endSubsegment();
+                return ResponseGenerator.generateResponse(400, gson.toJson("page and pageSize must be whole numbers."));
+            }
+            String cursor = queryStringParameters.getOrDefault("cursor", "").toString();
 
             extractParamsSubsegment.putMetadata("productId", productId);
             extractParamsSubsegment.putMetadata("page", String.valueOf(page));
             extractParamsSubsegment.putMetadata("pageSize", String.valueOf(pageSize));
+            extractParamsSubsegment.putMetadata("cursor", cursor);
             AWSXRay.endSubsegment();
 
-            Subsegment querySubsegment = AWSXRay.beginSubsegment("queryingComments");
-            QueryRequest queryRequest = QueryRequest.builder()
-                    .tableName(COMMENT_TABLE)
-                    .keyConditionExpression("productId = :pid")
-                    .expressionAttributeValues(Map.of(":pid", AttributeValue.builder().s(productId).build()))
-                    .build();
-            QueryResponse queryResponse = dynamoDB.query(queryRequest);
+            // Totals and the histogram come from the product's rating aggregates, so only the requested page of
+            // comments is read
+            Subsegment aggregatesSubsegment = AWSXRay.beginSubsegment("readingRatingAggregates");
+            RatingAggregates.Summary summary = RatingAggregates.fromConfig(dynamoDB, configManager, PRODUCT_TABLE, COMMENT_TABLE).summary(productId);
             AWSXRay.endSubsegment();
 
-            Subsegment processingSubsegment = AWSXRay.beginSubsegment("processingResults");
-            int totalPages = (int) Math.ceil((double) queryResponse.items().size() / pageSize);
-            int start = (page - 1) * pageSize;
-            int end = Math.min(start + pageSize, queryResponse.items().size());
-            List<Map<String, AttributeValue>> pagedItems = queryResponse.items().subList(start, end);
-            List<Map<String, String>> itemsString = ResponseTransformer.transformItems(pagedItems);
-            int totalComments = queryResponse.items().size();
-            Map<String, Integer> ratingCounts = new HashMap<>();
-            for (Map<String, AttributeValue> item : queryResponse.items()) {
-                String rating = item.get("Rating").n();
-                ratingCounts.put(rating, ratingCounts.getOrDefault(rating, 0) + 1);
+            Subsegment querySubsegment = AWSXRay.beginSubsegment("queryingComments");
+            CommentPages.Page commentPage;
+            try {
+                commentPage = new CommentPages(dynamoDB, COMMENT_TABLE, configManager.get("COMMENT_TIME_INDEX"))
+                        .page(productId, page, pageSize, cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseGenerator.generateResponse(400, gson.toJson(e.getMessage()));
+            } finally {
+                AWSXRay.endSubsegment();
             }
+
+            Subsegment processingSubsegment = AWSXRay.beginSubsegment("processingResults");
+            long totalComments = summary.getRatingCount();
+            int totalPages = (int) Math.ceil((double) totalComments / pageSize);
+            List<Map<String, String>> itemsString = ResponseTransformer.transformItems(commentPage.getItems());
             Map<String, Object> responseBody = new HashMap<>();
             responseBody.put("comments", itemsString);
             responseBody.put("totalPages", totalPages);
             responseBody.put("totalComments", totalComments);
-            responseBody.put("ratingCounts", ratingCounts);
+            responseBody.put("ratingCounts", summary.getRatingCounts());
+            responseBody.put("nextCursor", commentPage.getNextCursor());
             AWSXRay.endSubsegment();
 
             Logger.getLogger(GetProductComments.class.getName()).info("Successfully obtained product comments");
@@ -0,0 +1,306 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.BatchReader;
+import serverless.lib.ConfigManager;
+import serverless.lib.ScanExecutor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Picks the access path for a catalog listing: the product name index when there is a search term, a Query
+// on a category GSI (categoryName partition key, Price or AverageRating sort key) when a category is given,
+// a Scan of the whole table otherwise.
+// The client is passed in so the planner can run against DynamoDB Local as well as the real service.
+public class ProductQueryPlanner {
+
+    private static final Logger logger = Logger.getLogger(ProductQueryPlanner.class.getName());
+
+    public enum AccessPath { SEARCH_INDEX, QUERY, SCAN }
+
+    // Indexes found missing are planned around for this long before they are tried again
+    private static final long MISSING_INDEX_RETRY_MILLIS = 5 * 60 * 1000;
+    // "table/index" (or "table/search index table") -> when it was found missing
+    private static final Map<String, Long> missingIndexes = new ConcurrentHashMap<>();
+
+    // Attributes shown in the catalog list view; descriptions and comments are only needed on the product page
+    static final String LIST_VIEW_PROJECTION =
+            "productId, productName, categoryName, imageURL, Price, discountPrice, AverageRating, commentsCount";
+
+    private final DynamoDbClient dynamoDB;
+    private final String productTable;
+    // sortBy attribute -> name of the category GSI sorted by that attribute
+    private final Map<String, String> categoryIndexes;
+    private final ProductSearchIndex searchIndex;
+    private final int scanSegments;
+
+    public ProductQueryPlanner(DynamoDbClient dynamoDB, String productTable, Map<String, String> categoryIndexes) {
+        this(dynamoDB, productTable, categoryIndexes, null, 1);
+    }
+
+    public ProductQueryPlanner(DynamoDbClient dynamoDB, String productTable, Map<String, String> categoryIndexes,
+                               ProductSearchIndex searchIndex, int scanSegments) {
+        this.dynamoDB = dynamoDB;
+        this.productTable = productTable;
+        this.categoryIndexes = categoryIndexes;
+        this.searchIndex = searchIndex;
+        this.scanSegments = scanSegments;
+    }
+
+    public static ProductQueryPlanner fromConfig(DynamoDbClient dynamoDB, String productTable, ConfigManager configManager) {
+        Map<String, String> categoryIndexes = new HashMap<>();
+        putIndex(categoryIndexes, "Price", configManager.get("CATEGORY_PRICE_INDEX"));
+        putIndex(categoryIndexes, "AverageRating", configManager.get("CATEGORY_RATING_INDEX"));
+        return new ProductQueryPlanner(dynamoDB, productTable, categoryIndexes,
+                ProductSearchIndex.fromConfig(dynamoDB, configManager), (int) configManager.getLong("CATALOG_SCAN_SEGMENTS", 1));
+    }
+
+    private static void putIndex(Map<String, String> categoryIndexes, String sortBy, Object indexName) {
+        if (indexName instanceof String && !((String) indexName).isEmpty()) {
+            categoryIndexes.put(sortBy, (String) indexName);
+        }
+    }
+
+    public Plan plan(String searchTerm, String category, String sortBy, String sortOrder) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        String searchFilter = searchFilter(searchTerm, expressionAttributeValues);
+        boolean descending = "DSC".equalsIgnoreCase(sortOrder);
+
+        Plan tablePlan = tablePlan(searchFilter, category, sortBy, expressionAttributeValues, descending);
+        if (searchFilter != null && searchIndex != null && isAvailable(searchIndex.getIndexTable()) && searchIndex.canSearch(searchTerm)) {
+            // The filtered table read finds the same products when the index table cannot be read
+            return new Plan(AccessPath.SEARCH_INDEX, null, null, null, null, false, descending, tablePlan, searchTerm, category);
+        }
+        return tablePlan;
+    }
+
+    private Plan tablePlan(String searchFilter, String category, String sortBy,
+                           Map<String, AttributeValue> expressionAttributeValues, boolean descending) {
+        if (category != null && !category.isEmpty()) {
+            String indexName = isAvailable(categoryIndexes.get(sortBy)) ? categoryIndexes.get(sortBy) : null;
+            boolean sortedByIndex = indexName != null;
+            if (indexName == null) {
+                // Any category index narrows the read to the category, ordering is then done by the caller
+                indexName = categoryIndexes.values().stream().filter(this::isAvailable).findFirst().orElse(null);
+            }
+            if (indexName != null) {
+                Map<String, AttributeValue> queryValues = new HashMap<>(expressionAttributeValues);
+                queryValues.put(":cat", AttributeValue.builder().s(category).build());
+                return new Plan(AccessPath.QUERY, indexName, "categoryName = :cat", searchFilter, queryValues,
+                        sortedByIndex, descending, scanPlan(searchFilter, category, expressionAttributeValues, descending), null, category);
+            }
+        }
+        return scanPlan(searchFilter, category, expressionAttributeValues, descending);
+    }
+
+    private Plan scanPlan(String searchFilter, String category, Map<String, AttributeValue> expressionAttributeValues, boolean descending) {
+        Map<String, AttributeValue> scanValues = new HashMap<>(expressionAttributeValues);
+        String filterExpression = searchFilter;
+        // Apply the category filter if a category is provided
+        if (category != null && !category.isEmpty()) {
+            filterExpression = filterExpression == null ? "categoryName = :cat" : filterExpression + " AND categoryName = :cat";
+            scanValues.put(":cat", AttributeValue.builder().s(category).build());
+        }
+        return new Plan(AccessPath.SCAN, null, null, filterExpression, scanValues, false, descending, null, null, category);
+    }
+
+    // Matches every word of the search term against productName, with the first letter of each word capitalized
+    private static String searchFilter(String searchTerm, Map<String, AttributeValue> expressionAttributeValues) {
+        if (searchTerm == null || searchTerm.isEmpty()) {
+            return null;
+        }
+        StringBuilder filterExpressionBuilder = new StringBuilder();
+        int index = 0;
+        for (String word : searchTerm.split(" ")) {
+            if (word != null && !word.isEmpty()) {
+                String capitalizedWord = word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase();
+                if (index > 0) {
+                    filterExpressionBuilder.append(" AND ");
+                }
+                filterExpressionBuilder.append("contains(productName, :val").append(index).append(")");
+                expressionAttributeValues.put(":val" + index, AttributeValue.builder().s(capitalizedWord).build());
+                index++;
+            }
+        }
+        return index == 0 ? null : filterExpressionBuilder.toString();
+    }
+
+    // Runs the plan, or its fallback when the index it relies on turns out to be missing
+    public Result execute(Plan plan) {
+        if (plan.accessPath == AccessPath.SEARCH_INDEX) {
+            try {
+                return new Result(searchByName(plan), AccessPath.SEARCH_INDEX, false);
+            } catch (DynamoDbException e) {
+                logger.log(Level.WARNING, "Search index " + searchIndex.getIndexTable() + " is not available, falling back to "
+                        + plan.fallback.accessPath, e);
+                if (isMissingIndex(e)) {
+                    missingIndexes.put(indexKey(searchIndex.getIndexTable()), System.currentTimeMillis());
+                }
+                return execute(plan.fallback);
+            }
+        }
+        if (plan.accessPath == AccessPath.QUERY) {
+            try {
+                return new Result(query(plan), AccessPath.QUERY, plan.sortedByIndex);
+            } catch (DynamoDbException e) {
+                if (!isMissingIndex(e)) {
+                    throw e;
+                }
+                logger.log(Level.WARNING, "Index " + plan.indexName + " is not available on " + productTable + ", falling back to scan", e);
+                missingIndexes.put(indexKey(plan.indexName), System.currentTimeMillis());
+                return execute(plan.fallback);
+            }
+        }
+        return new Result(scan(plan), AccessPath.SCAN, false);
+    }
+
+    private boolean isAvailable(String indexName) {
+        if (indexName == null) {
+            return false;
+        }
+        Long missingSince = missingIndexes.get(indexKey(indexName));
+        if (missingSince == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() - missingSince >= MISSING_INDEX_RETRY_MILLIS) {
+            // It may have been created since, the next query finds out
+            missingIndexes.remove(indexKey(indexName), missingSince);
+            return true;
+        }
+        return false;
+    }
+
+    private String indexKey(String indexName) {
+        return productTable + "/" + indexName;
+    }
+
+    // Reads only the matching products, so the cost follows the number of matches instead of the catalog size
+    private List<Map<String, AttributeValue>> searchByName(Plan plan) {
+        Set<String> productIds = searchIndex.search(plan.searchTerm);
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (Map<String, AttributeValue> item : BatchReader.getItems(dynamoDB, productTable, "productId", productIds, LIST_VIEW_PROJECTION)) {
+            AttributeValue categoryName = item.get("categoryName");
+            if (plan.category == null || plan.category.isEmpty()
+                    || (categoryName != null && plan.category.equals(categoryName.s()))) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private List<Map<String, AttributeValue>> query(Plan plan) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryRequest.Builder queryRequestBuilder = QueryRequest.builder()
+                    .tableName(productTable)
+                    .indexName(plan.indexName)
+                    .keyConditionExpression(plan.keyConditionExpression)
+                    .expressionAttributeValues(plan.expressionAttributeValues)
+                    .scanIndexForward(!plan.descending)
+                    .projectionExpression(LIST_VIEW_PROJECTION)
+                    .exclusiveStartKey(lastEvaluatedKey);
+            if (plan.filterExpression != null) {
+                queryRequestBuilder.filterExpression(plan.filterExpression);
+            }
+            QueryResponse queryResponse = dynamoDB.query(queryRequestBuilder.build());
+            items.addAll(queryResponse.items());
+            lastEvaluatedKey = queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()
+                    ? queryResponse.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return items;
+    }
+
+    private List<Map<String, AttributeValue>> scan(Plan plan) {
+        ScanRequest.Builder scanRequestBuilder = ScanRequest.builder()
+                .tableName(productTable)
+                .projectionExpression(LIST_VIEW_PROJECTION);
+        if (plan.filterExpression != null) {
+            scanRequestBuilder.filterExpression(plan.filterExpression)
+                    .expressionAttributeValues(plan.expressionAttributeValues);
+        }
+        return ScanExecutor.scanAll(dynamoDB, scanRequestBuilder.build(), scanSegments);
+    }
+
+    private static boolean isMissingIndex(DynamoDbException e) {
+        if (e instanceof ResourceNotFoundException) {
+            return true;
+        }
+        String message = e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage();
+        return e.statusCode() == 400 && message != null && message.contains("specified index");
+    }
+
+    public static final class Plan {
+        private final AccessPath accessPath;
+        private final String indexName;
+        private final String keyConditionExpression;
+        private final String filterExpression;
+        private final Map<String, AttributeValue> expressionAttributeValues;
+        private final boolean sortedByIndex;
+        private final boolean descending;
+        private final Plan fallback;
+        private final String searchTerm;
+        private final String category;
+
+        private Plan(AccessPath accessPath, String indexName, String keyConditionExpression, String filterExpression,
+                     Map<String, AttributeValue> expressionAttributeValues, boolean sortedByIndex, boolean descending, Plan fallback,
+                     String searchTerm, String category) {
+            this.accessPath = accessPath;
+            this.indexName = indexName;
+            this.keyConditionExpression = keyConditionExpression;
+            this.filterExpression = filterExpression;
+            this.expressionAttributeValues = expressionAttributeValues;
+            this.sortedByIndex = sortedByIndex;
+            this.descending = descending;
+            this.fallback = fallback;
+            this.searchTerm = searchTerm;
+            this.category = category;
+        }
+
+        public AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        public String getIndexName() {
+            return indexName;
+        }
+
+        // True when the items come back already ordered by the requested sortBy attribute
+        public boolean isSortedByIndex() {
+            return sortedByIndex;
+        }
+    }
+
+    // The items a plan produced and how they were actually read, which differs from the plan after a fallback
+    public static final class Result {
+        private final List<Map<String, AttributeValue>> items;
+        private final AccessPath accessPath;
+        private final boolean sortedByIndex;
+
+        private Result(List<Map<String, AttributeValue>> items, AccessPath accessPath, boolean sortedByIndex) {
+            this.items = items;
+            this.accessPath = accessPath;
+            this.sortedByIndex = sortedByIndex;
+        }
+
+        public List<Map<String, AttributeValue>> getItems() {
+            return items;
+        }
+
+        public AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        // True when the items are already ordered by the requested sortBy attribute
+        public boolean isSortedByIndex() {
+            return sortedByIndex;
+        }
+    }
+}
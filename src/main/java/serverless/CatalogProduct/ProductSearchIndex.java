@@ -0,0 +1,169 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.BatchWriter;
+import serverless.lib.ConfigManager;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Inverted index over product names, kept in its own table: one item per (term, productId) pair.
+// Terms are case-folded, accent-stripped name tokens plus their prefixes, so "clo" and "CLOCK" both find
+// "Aberdeen Clock". A search reads one posting list per query word, so its cost follows the number of matches.
+public class ProductSearchIndex {
+
+    private static final Logger logger = Logger.getLogger(ProductSearchIndex.class.getName());
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 20;
+
+    private final DynamoDbClient dynamoDB;
+    private final String indexTable;
+
+    public ProductSearchIndex(DynamoDbClient dynamoDB, String indexTable) {
+        this.dynamoDB = dynamoDB;
+        this.indexTable = indexTable;
+    }
+
+    // Returns null when no SEARCH_INDEX_TABLE is configured
+    public static ProductSearchIndex fromConfig(DynamoDbClient dynamoDB, ConfigManager configManager) {
+        Object indexTable = configManager.get("SEARCH_INDEX_TABLE");
+        if (!(indexTable instanceof String) || ((String) indexTable).isEmpty()) {
+            return null;
+        }
+        return new ProductSearchIndex(dynamoDB, (String) indexTable);
+    }
+
+    // Called after a product write has succeeded; a failure leaves the product unsearchable (or findable under its
+    // old name) until it is written again, which is no reason to report the write itself as failed
+    public static void recordChange(DynamoDbClient dynamoDB, ConfigManager configManager, String productId,
+                                    String oldProductName, String newProductName) {
+        ProductSearchIndex searchIndex = fromConfig(dynamoDB, configManager);
+        if (searchIndex == null) {
+            return;
+        }
+        try {
+            searchIndex.update(productId, oldProductName, newProductName);
+        } catch (DynamoDbException e) {
+            logger.log(Level.WARNING, "Failed to update search index for product " + productId, e);
+        }
+    }
+
+    public String getIndexTable() {
+        return indexTable;
+    }
+
+    // Lowercased, accent-free words of the text, in order of appearance
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_TERM_LENGTH) {
+                tokens.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+            }
+        }
+        return tokens;
+    }
+
+    static Set<String> indexTerms(String productName) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String token : tokenize(productName)) {
+            for (int length = MIN_TERM_LENGTH; length <= token.length(); length++) {
+                terms.add(token.substring(0, length));
+            }
+        }
+        return terms;
+    }
+
+    public boolean canSearch(String searchTerm) {
+        return !tokenize(searchTerm).isEmpty();
+    }
+
+    // Writes only the difference between the terms of the old and the new name
+    public void update(String productId, String oldProductName, String newProductName) {
+        Set<String> oldTerms = indexTerms(oldProductName);
+        Set<String> newTerms = indexTerms(newProductName);
+        List<WriteRequest> writeRequests = new ArrayList<>();
+        for (String term : oldTerms) {
+            if (!newTerms.contains(term)) {
+                writeRequests.add(WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(posting(term, productId)).build())
+                        .build());
+            }
+        }
+        for (String term : newTerms) {
+            if (!oldTerms.contains(term)) {
+                writeRequests.add(WriteRequest.builder()
+                        .putRequest(PutRequest.builder().item(posting(term, productId)).build())
+                        .build());
+            }
+        }
+        BatchWriter.writeAll(dynamoDB, indexTable, writeRequests);
+    }
+
+    public void remove(String productId, String productName) {
+        update(productId, productName, null);
+    }
+
+    // Product ids whose name has a word starting with every word of the search term
+    public Set<String> search(String searchTerm) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(searchTerm)));
+        // Longer terms have shorter posting lists, reading them first lets the intersection shrink early
+        queryTerms.sort(Comparator.comparingInt(String::length).reversed());
+        Set<String> matches = null;
+        for (String term : queryTerms) {
+            Set<String> postings = postings(term);
+            if (matches == null) {
+                matches = postings;
+            } else {
+                matches.retainAll(postings);
+            }
+            if (matches.isEmpty()) {
+                break;
+            }
+        }
+        return matches == null ? new LinkedHashSet<>() : matches;
+    }
+
+    private Set<String> postings(String term) {
+        Set<String> productIds = new LinkedHashSet<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResponse queryResponse = dynamoDB.query(QueryRequest.builder()
+                    .tableName(indexTable)
+                    .keyConditionExpression("#term = :term")
+                    .expressionAttributeNames(Map.of("#term", "term"))
+                    .expressionAttributeValues(Map.of(":term", AttributeValue.builder().s(term).build()))
+                    .projectionExpression("productId")
+                    .exclusiveStartKey(lastEvaluatedKey)
+                    .build());
+            for (Map<String, AttributeValue> item : queryResponse.items()) {
+                productIds.add(item.get("productId").s());
+            }
+            lastEvaluatedKey = queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()
+                    ? queryResponse.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return productIds;
+    }
+
+    private static Map<String, AttributeValue> posting(String term, String productId) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("term", AttributeValue.builder().s(term).build());
+        item.put("productId", AttributeValue.builder().s(productId).build());
+        return item;
+    }
+}
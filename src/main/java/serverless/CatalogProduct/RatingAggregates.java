@@ -0,0 +1,455 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.BatchReader;
+import serverless.lib.ConfigManager;
+import serverless.lib.OptimisticRetry;
+import serverless.lib.ShardedCounter;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+// Rating state kept on the product item: RatingSum, RatingCount and a Stars1..Stars5 histogram, changed with ADD
+// in the same transaction that writes or removes a comment, so the cost does not grow with the number of comments.
+// AverageRating is derived from the sum and count afterwards.
+// With a COUNTER_TABLE the changes go to a ShardedCounter instead, so a product under heavy review traffic does not
+// concentrate writes on its own item; every minute RollUpRatingCounters copies the merged totals of the counters
+// that changed onto their product items, so reviews never write the product item themselves.
+public class RatingAggregates {
+
+    private static final Logger logger = Logger.getLogger(RatingAggregates.class.getName());
+
+    public static final int MIN_RATING = 1;
+    public static final int MAX_RATING = 5;
+    public static final List<String> ATTRIBUTES = List.of("RatingSum", "RatingCount", "Stars1", "Stars2", "Stars3", "Stars4", "Stars5");
+    private static final String COUNTER_PREFIX = "product#";
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final DynamoDbClient dynamoDB;
+    private final String productTable;
+    private final String commentTable;
+    private final ShardedCounter counter;
+
+    // counter may be null, in which case the aggregates are kept on the product item itself
+    public RatingAggregates(DynamoDbClient dynamoDB, String productTable, String commentTable, ShardedCounter counter) {
+        this.dynamoDB = dynamoDB;
+        this.productTable = productTable;
+        this.commentTable = commentTable;
+        this.counter = counter;
+    }
+
+    public static RatingAggregates fromConfig(DynamoDbClient dynamoDB, ConfigManager configManager, String productTable, String commentTable) {
+        return new RatingAggregates(dynamoDB, productTable, commentTable, ShardedCounter.fromConfig(dynamoDB, configManager));
+    }
+
+    public static boolean isValidRating(int rating) {
+        return rating >= MIN_RATING && rating <= MAX_RATING;
+    }
+
+    public static String starsAttribute(int rating) {
+        return "Stars" + rating;
+    }
+
+    // Writes the comment change (the first transaction item, whose condition stays the caller's to interpret) together
+    // with the matching change to the aggregates, as one transaction. Products without aggregates yet (or an unseeded
+    // counter) get them rebuilt from a consistent count of the comments plus this change, on the condition that
+    // nobody created them in the meantime; the loser of that race applies its delta to the winner's totals instead.
+    // The comment is never written on its own, so a count can never already include it.
+    // Returns false, writing nothing, when the product does not exist; a TransactionCanceledException whose first
+    // reason is ConditionalCheckFailed means the comment write's own condition failed.
+    public boolean write(TransactWriteItem commentWrite, String productId, int rating, int direction) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                OptimisticRetry.transactWrite(dynamoDB, transaction(commentWrite, deltaUpdate(productId, rating, direction)));
+                return true;
+            } catch (TransactionCanceledException e) {
+                if (conditionFailed(e, 0) || !aggregateConditionFailed(e)) {
+                    throw e;
+                }
+            }
+            Summary summary = countComments(productId, true);
+            summary.add(rating, direction);
+            try {
+                OptimisticRetry.transactWrite(dynamoDB, transaction(commentWrite, rebuildUpdate(productId, summary)));
+                logger.info("Rebuilt rating aggregates of product " + productId + " from " + summary.ratingCount + " comments");
+                return true;
+            } catch (TransactionCanceledException e) {
+                if (conditionFailed(e, 0) || !aggregateConditionFailed(e)) {
+                    throw e;
+                }
+                if (!productExists(productId)) {
+                    return false;
+                }
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    throw e;
+                }
+                logger.fine("Rating aggregates of product " + productId + " were created concurrently, applying the delta instead");
+            }
+        }
+    }
+
+    public static double average(long ratingSum, long ratingCount) {
+        return ratingCount > 0 ? (double) ratingSum / ratingCount : 0;
+    }
+
+    // The change of one comment as transaction items to follow the comment write. The first item carries the
+    // condition, which fails for products that are missing or still without aggregates (or an unseeded counter).
+    // A counter known to be seeded is not checked again, so the transaction touches a single counter shard.
+    public List<TransactWriteItem> deltaUpdate(String productId, int rating, int direction) {
+        if (counter != null) {
+            String counterId = counterId(productId);
+            if (counter.isSeeded(counterId)) {
+                return List.of(counter.increment(counterId, deltas(rating, direction)));
+            }
+            return List.of(counter.requireSeeded(counterId), counter.increment(counterId, deltas(rating, direction)));
+        }
+        return List.of(TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(productTable)
+                        .key(productKey(productId))
+                        .updateExpression(deltaExpression(rating))
+                        .conditionExpression("attribute_exists(RatingCount)")
+                        .expressionAttributeValues(deltaValues(rating, direction))
+                        .build())
+                .build());
+    }
+
+    // Derives AverageRating from the aggregates as they are now; null when the product has none. With a counter the
+    // average comes from its merged totals, which may be up to COUNTER_CACHE_SECONDS old, and the product item is
+    // left to the rollup.
+    public Double refreshAverage(String productId) {
+        if (counter != null) {
+            return counterAverage(productId);
+        }
+        Map<String, AttributeValue> key = productKey(productId);
+        GetItemResponse product = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(productTable)
+                .key(key)
+                .projectionExpression("RatingSum, RatingCount")
+                .consistentRead(true)
+                .build());
+        if (!product.hasItem() || !product.item().containsKey("RatingCount")) {
+            return null;
+        }
+        long ratingSum = Long.parseLong(product.item().get("RatingSum").n());
+        long ratingCount = Long.parseLong(product.item().get("RatingCount").n());
+        double averageRating = average(ratingSum, ratingCount);
+        setAverage(key, ratingSum, ratingCount, averageRating);
+        return averageRating;
+    }
+
+    // Transaction items setting the aggregates to the given totals, on the condition that the product exists and
+    // has none yet (or that its counter was never seeded)
+    private List<TransactWriteItem> rebuildUpdate(String productId, Summary summary) {
+        if (counter != null) {
+            return List.of(
+                    TransactWriteItem.builder()
+                            .conditionCheck(ConditionCheck.builder()
+                                    .tableName(productTable)
+                                    .key(productKey(productId))
+                                    .conditionExpression("attribute_exists(productId)")
+                                    .build())
+                            .build(),
+                    counter.seedOnce(counterId(productId), summary.toTotals()));
+        }
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        return List.of(TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(productTable)
+                        .key(productKey(productId))
+                        .updateExpression(totalsExpression(summary, expressionAttributeValues))
+                        .conditionExpression("attribute_exists(productId) AND attribute_not_exists(RatingCount)")
+                        .expressionAttributeValues(expressionAttributeValues)
+                        .build())
+                .build());
+    }
+
+    private static List<TransactWriteItem> transaction(TransactWriteItem commentWrite, List<TransactWriteItem> aggregateUpdate) {
+        List<TransactWriteItem> transactItems = new ArrayList<>();
+        transactItems.add(commentWrite);
+        transactItems.addAll(aggregateUpdate);
+        return transactItems;
+    }
+
+    private static boolean conditionFailed(TransactionCanceledException e, int index) {
+        List<CancellationReason> reasons = e.cancellationReasons();
+        return reasons != null && reasons.size() > index && "ConditionalCheckFailed".equals(reasons.get(index).code());
+    }
+
+    private static boolean aggregateConditionFailed(TransactionCanceledException e) {
+        List<CancellationReason> reasons = e.cancellationReasons();
+        for (int index = 1; reasons != null && index < reasons.size(); index++) {
+            if (conditionFailed(e, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean productExists(String productId) {
+        GetItemResponse product = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(productTable)
+                .key(productKey(productId))
+                .projectionExpression("productId")
+                .consistentRead(true)
+                .build());
+        return product.hasItem() && !product.item().isEmpty();
+    }
+
+    private static String deltaExpression(int rating) {
+        return "ADD RatingSum :rating, RatingCount :count, commentsCount :count, Version :one"
+                + (isValidRating(rating) ? ", " + starsAttribute(rating) + " :count" : "");
+    }
+
+    private static Map<String, AttributeValue> deltaValues(int rating, int direction) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":rating", number(direction * rating));
+        expressionAttributeValues.put(":count", number(direction));
+        expressionAttributeValues.put(":one", number(1));
+        return expressionAttributeValues;
+    }
+
+    // Written only while the aggregates are still the ones it was derived from; a writer that changed them in
+    // the meantime sets its own, newer average
+    private void setAverage(Map<String, AttributeValue> key, long ratingSum, long ratingCount, double averageRating) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":avg", AttributeValue.builder().n(String.valueOf(averageRating)).build());
+        expressionAttributeValues.put(":sum", number(ratingSum));
+        expressionAttributeValues.put(":count", number(ratingCount));
+        expressionAttributeValues.put(":one", number(1));
+        try {
+            dynamoDB.updateItem(UpdateItemRequest.builder()
+                    .tableName(productTable)
+                    .key(key)
+                    .updateExpression("SET AverageRating = :avg ADD Version :one")
+                    .conditionExpression("RatingSum = :sum AND RatingCount = :count")
+                    .expressionAttributeValues(expressionAttributeValues)
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            logger.fine("Rating of product " + key.get("productId").s() + " changed again, leaving AverageRating to the newer writer");
+        }
+    }
+
+    // Comment total and per-star counts of a product, read from its aggregates; products without aggregates are
+    // counted from their comments, without writing anything
+    public Summary summary(String productId) {
+        if (counter != null) {
+            Map<String, Long> totals = counter.read(counterId(productId));
+            if (totals != null) {
+                return Summary.fromTotals(totals);
+            }
+        }
+        GetItemResponse product = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(productTable)
+                .key(productKey(productId))
+                .projectionExpression("RatingSum, RatingCount, Stars1, Stars2, Stars3, Stars4, Stars5")
+                .build());
+        if (!product.hasItem() || !product.item().containsKey("RatingCount")) {
+            return countComments(productId, false);
+        }
+        return Summary.fromItem(product.item());
+    }
+
+    private Summary countComments(String productId, boolean consistentRead) {
+        Summary summary = new Summary();
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        do {
+            QueryRequest.Builder queryRequest = QueryRequest.builder()
+                    .tableName(commentTable)
+                    .keyConditionExpression("productId = :v_id")
+                    .expressionAttributeValues(Map.of(":v_id", AttributeValue.builder().s(productId).build()))
+                    .projectionExpression("Rating")
+                    .consistentRead(consistentRead);
+            if (exclusiveStartKey != null) {
+                queryRequest.exclusiveStartKey(exclusiveStartKey);
+            }
+            QueryResponse queryResponse = dynamoDB.query(queryRequest.build());
+            for (Map<String, AttributeValue> comment : queryResponse.items()) {
+                summary.add(Integer.parseInt(comment.get("Rating").n()), 1);
+            }
+            exclusiveStartKey = queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()
+                    ? queryResponse.lastEvaluatedKey() : null;
+        } while (exclusiveStartKey != null);
+        return summary;
+    }
+
+    // Copies the merged totals of the product counters that changed since the last rollup onto their product items,
+    // so listings and the AverageRating index see them. Only products whose stored aggregates differ are written;
+    // returns their ids. A counter is marked clean only after its product was handled, so a failed rollup is
+    // picked up again by the next one.
+    public List<String> rollUpCounters(int scanSegments) {
+        List<String> rolledUp = new ArrayList<>();
+        if (counter == null) {
+            return rolledUp;
+        }
+        Map<String, ShardedCounter.DirtyCounter> dirty = new HashMap<>();
+        for (ShardedCounter.DirtyCounter dirtyCounter : counter.readDirty(COUNTER_PREFIX, scanSegments)) {
+            dirty.put(dirtyCounter.getCounterId().substring(COUNTER_PREFIX.length()), dirtyCounter);
+        }
+        Map<String, Map<String, AttributeValue>> products = new HashMap<>();
+        for (Map<String, AttributeValue> product : BatchReader.getItems(dynamoDB, productTable, "productId", dirty.keySet(),
+                "productId, " + String.join(", ", ATTRIBUTES))) {
+            products.put(product.get("productId").s(), product);
+        }
+        for (Map.Entry<String, ShardedCounter.DirtyCounter> entry : dirty.entrySet()) {
+            String productId = entry.getKey();
+            Summary summary = Summary.fromTotals(entry.getValue().getTotals());
+            Map<String, AttributeValue> product = products.get(productId);
+            if (product != null && !(product.containsKey("RatingCount") && summary.equals(Summary.fromItem(product)))) {
+                try {
+                    writeTotals(productKey(productId), summary, "attribute_exists(productId)");
+                    rolledUp.add(productId);
+                } catch (ConditionalCheckFailedException e) {
+                    logger.fine("Product " + productId + " was deleted before its rating aggregates were rolled up");
+                }
+            }
+            counter.markClean(entry.getValue());
+        }
+        return rolledUp;
+    }
+
+    private Double counterAverage(String productId) {
+        Map<String, Long> totals = counter.read(counterId(productId));
+        return totals != null ? Summary.fromTotals(totals).getAverageRating() : null;
+    }
+
+    private void writeTotals(Map<String, AttributeValue> key, Summary summary, String condition) {
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        dynamoDB.updateItem(UpdateItemRequest.builder()
+                .tableName(productTable)
+                .key(key)
+                .updateExpression(totalsExpression(summary, expressionAttributeValues))
+                .conditionExpression(condition)
+                .expressionAttributeValues(expressionAttributeValues)
+                .build());
+    }
+
+    private static String totalsExpression(Summary summary, Map<String, AttributeValue> expressionAttributeValues) {
+        List<String> assignments = new ArrayList<>();
+        assignments.add("RatingSum = :sum");
+        assignments.add("RatingCount = :count");
+        assignments.add("commentsCount = :count");
+        assignments.add("AverageRating = :avg");
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+            assignments.add(starsAttribute(rating) + " = :stars" + rating);
+            expressionAttributeValues.put(":stars" + rating, number(summary.stars[rating]));
+        }
+        expressionAttributeValues.put(":sum", number(summary.ratingSum));
+        expressionAttributeValues.put(":count", number(summary.ratingCount));
+        expressionAttributeValues.put(":avg", AttributeValue.builder().n(String.valueOf(summary.getAverageRating())).build());
+        expressionAttributeValues.put(":one", number(1));
+        return "SET " + String.join(", ", assignments) + " ADD Version :one";
+    }
+
+    private static String counterId(String productId) {
+        return "product#" + productId;
+    }
+
+    private static Map<String, Long> deltas(int rating, int direction) {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put("RatingSum", (long) direction * rating);
+        deltas.put("RatingCount", (long) direction);
+        if (isValidRating(rating)) {
+            deltas.put(starsAttribute(rating), (long) direction);
+        }
+        return deltas;
+    }
+
+    private static Map<String, AttributeValue> productKey(String productId) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put("productId", AttributeValue.builder().s(productId).build());
+        return key;
+    }
+
+    private static AttributeValue number(long value) {
+        return AttributeValue.builder().n(Long.toString(value)).build();
+    }
+
+    public static class Summary {
+        private long ratingSum;
+        private long ratingCount;
+        private final long[] stars = new long[MAX_RATING + 1];
+
+        static Summary fromItem(Map<String, AttributeValue> item) {
+            Summary summary = new Summary();
+            summary.ratingSum = number(item, "RatingSum");
+            summary.ratingCount = number(item, "RatingCount");
+            for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+                summary.stars[rating] = number(item, starsAttribute(rating));
+            }
+            return summary;
+        }
+
+        private void add(int rating, int direction) {
+            ratingSum += (long) direction * rating;
+            ratingCount += direction;
+            if (isValidRating(rating)) {
+                stars[rating] += direction;
+            }
+        }
+
+        private static long number(Map<String, AttributeValue> item, String attribute) {
+            AttributeValue value = item.get(attribute);
+            return value != null ? Long.parseLong(value.n()) : 0;
+        }
+
+        static Summary fromTotals(Map<String, Long> totals) {
+            Summary summary = new Summary();
+            summary.ratingSum = totals.getOrDefault("RatingSum", 0L);
+            summary.ratingCount = totals.getOrDefault("RatingCount", 0L);
+            for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+                summary.stars[rating] = totals.getOrDefault(starsAttribute(rating), 0L);
+            }
+            return summary;
+        }
+
+        Map<String, Long> toTotals() {
+            Map<String, Long> totals = new HashMap<>();
+            totals.put("RatingSum", ratingSum);
+            totals.put("RatingCount", ratingCount);
+            for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+                totals.put(starsAttribute(rating), stars[rating]);
+            }
+            return totals;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Summary)) {
+                return false;
+            }
+            Summary summary = (Summary) other;
+            return ratingSum == summary.ratingSum && ratingCount == summary.ratingCount && Arrays.equals(stars, summary.stars);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ratingSum, ratingCount, Arrays.hashCode(stars));
+        }
+
+        public long getRatingCount() {
+            return ratingCount;
+        }
+
+        public double getAverageRating() {
+            return average(ratingSum, ratingCount);
+        }
+
+        // Rating ("1".."5") -> number of comments with it, leaving out ratings nobody gave
+        public Map<String, Long> getRatingCounts() {
+            Map<String, Long> ratingCounts = new HashMap<>();
+            for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+                if (stars[rating] > 0) {
+                    ratingCounts.put(String.valueOf(rating), stars[rating]);
+                }
+            }
+            return ratingCounts;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package serverless.CatalogProduct;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Subsegment;
+import com.google.gson.Gson;
+import serverless.lib.*;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Copies the sharded rating counters that changed since the last run onto the product items, run every minute by the
+// stack's schedule. Reviews only write counter shards, so this is what keeps the product's aggregates, AverageRating
+// and its index current.
+public class RollUpRatingCounters implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    private static final Gson gson = new Gson();
+    private static final Logger logger = Logger.getLogger(RollUpRatingCounters.class.getName());
+    private static ConfigManager configManager;
+    private static DynamoDbClient dynamoDB;
+
+    static {
+        initializeResources();
+        ColdStartPriming.prime(gson);
+    }
+
+    private static synchronized void initializeResources() {
+        if (configManager == null) {
+            configManager = new ConfigManager();
+        }
+        if (dynamoDB == null) {
+            String REGION = (String) configManager.get("DYNAMO_REGION");
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
+        }
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
+        String PRODUCT_TABLE = (String) configManager.get("PRODUCT_TABLE");
+        String COMMENT_TABLE = (String) configManager.get("COMMENT_TABLE");
+
+        Subsegment rollUpSubsegment = AWSXRay.beginSubsegment("RollUpCounters");
+        List<String> rolledUp;
+        try {
+            rolledUp = RatingAggregates.fromConfig(dynamoDB, configManager, PRODUCT_TABLE, COMMENT_TABLE)
+                    .rollUpCounters((int) configManager.getLong("CATALOG_SCAN_SEGMENTS", 4));
+            rollUpSubsegment.putMetadata("rolledUp", rolledUp.size());
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+        for (String productId : rolledUp) {
+            CatalogVersion.recordChange(dynamoDB, configManager, PRODUCT_TABLE, productId);
+        }
+        logger.info("Rolled up rating counters of " + rolledUp.size() + " products");
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("rolledUp", rolledUp.size());
+        return response;
+    }
+}
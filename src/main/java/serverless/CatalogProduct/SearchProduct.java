@@ -4,10 +4,11 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
+import serverless.lib.ClientRegistry;
+import serverless.lib.ColdStartPriming;
 import serverless.lib.ConfigManager;
 import serverless.lib.ResponseGenerator;
 import serverless.lib.ResponseTransformer;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -22,6 +23,10 @@ public class SearchProduct implements RequestHandler<Map<String, Object>, Map<St
     private static DynamoDbClient dynamoDB;
     private static ConfigManager configManager;
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @Override
     public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
         initializeResources();
@@ -34,9 +39,7 @@ public class SearchProduct implements RequestHandler<Map<String, Object>, Map<St
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -61,6 +64,7 @@ public class SearchProduct implements RequestHandler<Map<String, Object>, Map<St
             String category = queryStringParameters.getOrDefault("category", "").toString();
             int page = Integer.parseInt(queryStringParameters.getOrDefault("page", "1").toString());
             int pageSize = Integer.parseInt(queryStringParameters.getOrDefault("pageSize", "4").toString());
+            String cursor = queryStringParameters.getOrDefault("cursor", "").toString();
             AWSXRay.endSubsegment();
 
             Subsegment filteringSortingSubsegment = AWSXRay.beginSubsegment("performFilteringSorting");
@@ -71,76 +75,37 @@ public class SearchProduct implements RequestHandler<Map<String, Object>, Map<St
             queryParams.put("category", category);
             queryParams.put("page", page);
             queryParams.put("pageSize", pageSize);
+            queryParams.put("cursor", cursor);
             queryParams.forEach((key, value) -> filteringSortingSubsegment.putMetadata(key, value));
-            ScanRequest.Builder scanRequestBuilder = ScanRequest.builder().tableName(PRODUCT_TABLE);
-            // Initi  alize the filter expression and attribute values
-            String filterExpression = "";
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            // Capitalize first letter of each word in searchTerm
-            if (searchTerm != null && !searchTerm.isEmpty()) {
-                String[] words = searchTerm.split(" ");
-                StringBuilder filterExpressionBuilder = new StringBuilder();
-                int index = 0;
-                for (String word : words) {
-                    if (word != null && !word.isEmpty()) {
-                        String capitalizedWord = word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase();
-                        if (index > 0) {
-                            filterExpressionBuilder.append(" AND ");
-                        }
-                        filterExpressionBuilder.append("contains(productName, :val").append(index).append(")");
-                        expressionAttributeValues.put(":val" + index, AttributeValue.builder().s(capitalizedWord).build());
-                        index++;
-                    }
-                }
-                filterExpression += filterExpressionBuilder.toString();
-            }
-
-            // Apply the category filter if a category is provided
-            if (!category.isEmpty()) {
-                // Add an AND operator if there's already a condition in the filter expression
-                if (!filterExpression.isEmpty()) {
-                    filterExpression += " AND ";
+            List<Map<String, AttributeValue>> items = null;
+            boolean sortedByIndex = false;
+            // Serve from the in-memory catalog when it is enabled, DynamoDB remains the fallback
+            CatalogSnapshot snapshot = CatalogSnapshot.forTable(dynamoDB, PRODUCT_TABLE, configManager);
+            if (snapshot != null) {
+                try {
+                    items = snapshot.list(searchTerm, category);
+                    filteringSortingSubsegment.putMetadata("accessPath", "SNAPSHOT");
+                } catch (RuntimeException e) {
+                    Logger.getLogger(GetAndSearchProducts.class.getName()).log(Level.WARNING, "Catalog snapshot unavailable, reading from DynamoDB", e);
                 }
-                filterExpression += "categoryName = :cat";
-                expressionAttributeValues.put(":cat", AttributeValue.builder().s(category).build());
-            }
-            // Set the filter expression and attribute values in the scan request
-            if (!filterExpression.isEmpty()) {
-                scanRequestBuilder.filterExpression(filterExpression)
-                        .expressionAttributeValues(expressionAttributeValues);
             }
-            // Perform the scan
-            ScanRequest scanRequest = scanRequestBuilder.build();
-            ScanResponse scanResponse = dynamoDB.scan(scanRequest);
-            List<Map<String, AttributeValue>> items = scanResponse.items();
-            List<Map<String, AttributeValue>> sortedItems = new ArrayList<>(items);
-            // Sort the items if a sorting option is provided
-            if (!sortBy.isEmpty()) {
-                switch (sortBy) {
-                    case "AverageRating":
-                        sortedItems.sort(Comparator.comparing(item -> Double.parseDouble(item.get("AverageRating").n())));
-                        if (sortOrder.equalsIgnoreCase("DSC")) Collections.reverse(sortedItems);
-                        items = sortedItems;
-                        break;
-                    case "Price":
-                        sortedItems.sort(Comparator.comparing(item -> Double.parseDouble(item.get("Price").n())));
-                        if (sortOrder.equalsIgnoreCase("DSC")) Collections.reverse(sortedItems);
-                        items = sortedItems;
-                        break;
-                    default:
-                        break;
-                }
+            if (items == null) {
+                ProductQueryPlanner planner = ProductQueryPlanner.fromConfig(dynamoDB, PRODUCT_TABLE, configManager);
+                ProductQueryPlanner.Plan plan = planner.plan(searchTerm, category, sortBy, sortOrder);
+                ProductQueryPlanner.Result result = planner.execute(plan);
+                filteringSortingSubsegment.putMetadata("accessPath", result.getAccessPath().name());
+                items = result.getItems();
+                sortedByIndex = result.isSortedByIndex();
             }
-
             AWSXRay.endSubsegment();
 
             Subsegment pagingAndSegmentingSubsegment = AWSXRay.beginSubsegment("processingResults");
             // Calculate the total number of pages
             int totalPages = (int) Math.ceil((double) items.size() / pageSize);
-            // Get the  items for the current page
-            int start = (page - 1) * pageSize;
-            int end = Math.min(start + pageSize, items.size());
-            List<Map<String, AttributeValue>> pagedItems = items.subList(start, end);
+            // Select the items for the current page, only fully ordering the ones that can land on it
+            TopKSelector.Page selectedPage = TopKSelector.select(items, sortBy, sortOrder.equalsIgnoreCase("DSC"),
+                    sortedByIndex, page, pageSize, cursor);
+            List<Map<String, AttributeValue>> pagedItems = selectedPage.getItems();
             List<Map<String, String>> itemsString = ResponseTransformer.transformItems(pagedItems);
             AWSXRay.endSubsegment();
 
@@ -148,8 +113,9 @@ public class SearchProduct implements RequestHandler<Map<String, Object>, Map<St
             responseBody.put("products", itemsString);
             responseBody.put("totalPages", totalPages);
             responseBody.put("totalProducts", items.size());
-            responseBody.put("currentRangeStart", start + 1);
-            responseBody.put("currentRangeEnd", end);
+            responseBody.put("currentRangeStart", selectedPage.getStart() + 1);
+            responseBody.put("currentRangeEnd", selectedPage.getEnd());
+            responseBody.put("nextCursor", selectedPage.getNextCursor());
 
             Logger.getLogger(GetAndSearchProducts.class.getName()).info("Successfully obtained product list");
             return ResponseGenerator.generateResponse(200, gson.toJson(responseBody));
@@ -0,0 +1,231 @@
+package serverless.CatalogProduct;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+// Picks one page of a catalog listing without sorting the whole result set. Sort keys are parsed once into a
+// primitive array and a bounded heap keeps only the candidates that can still land on the requested page.
+// Pages are addressed by number or by an opaque cursor that remembers where the previous page ended.
+public class TopKSelector {
+
+    private final double[] keys;
+    private final String[] productIds;
+    private final boolean descending;
+
+    private TopKSelector(List<Map<String, AttributeValue>> items, String sortBy, boolean descending) {
+        this.keys = new double[items.size()];
+        this.productIds = new String[items.size()];
+        this.descending = descending;
+        for (int i = 0; i < items.size(); i++) {
+            AttributeValue key = items.get(i).get(sortBy);
+            AttributeValue productId = items.get(i).get("productId");
+            keys[i] = key != null && key.n() != null ? Double.parseDouble(key.n()) : Double.NaN;
+            productIds[i] = productId != null && productId.s() != null ? productId.s() : "";
+        }
+    }
+
+    public static Page select(List<Map<String, AttributeValue>> items, String sortBy, boolean descending,
+                              boolean alreadyOrdered, int page, int pageSize, String cursor) {
+        int size = items.size();
+        boolean sortable = !alreadyOrdered && ("Price".equals(sortBy) || "AverageRating".equals(sortBy));
+        String[] cursorParts = decode(cursor);
+
+        if (!sortable) {
+            // Items are already in their final order, so the cursor is just an offset
+            int start = cursorParts != null && cursorParts.length == 2 && "o".equals(cursorParts[0])
+                    ? parseOffset(cursorParts[1], size)
+                    : Math.min(Math.max(page - 1, 0) * pageSize, size);
+            int end = Math.min(start + pageSize, size);
+            String nextCursor = end < size ? encode("o|" + end) : null;
+            return new Page(items.subList(start, end), start, end, nextCursor);
+        }
+
+        TopKSelector selector = new TopKSelector(items, sortBy, descending);
+        String order = descending ? "DSC" : "ASC";
+        int start;
+        int[] selected;
+        if (cursorParts != null && cursorParts.length == 5 && "k".equals(cursorParts[0])
+                && sortBy.equals(cursorParts[1]) && order.equals(cursorParts[2])) {
+            double afterKey = Double.parseDouble(cursorParts[3]);
+            String afterId = cursorParts[4];
+            start = selector.countUpTo(afterKey, afterId);
+            selected = selector.topK(pageSize, afterKey, afterId);
+        } else {
+            start = Math.min(Math.max(page - 1, 0) * pageSize, size);
+            int[] top = selector.topK(start + pageSize, Double.NaN, null);
+            selected = new int[Math.max(top.length - start, 0)];
+            System.arraycopy(top, Math.min(start, top.length), selected, 0, selected.length);
+        }
+
+        List<Map<String, AttributeValue>> pageItems = new ArrayList<>(selected.length);
+        for (int index : selected) {
+            pageItems.add(items.get(index));
+        }
+        int end = start + pageItems.size();
+        String nextCursor = null;
+        if (end < size && !pageItems.isEmpty()) {
+            int last = selected[selected.length - 1];
+            nextCursor = encode("k|" + sortBy + "|" + order + "|" + selector.keys[last] + "|" + selector.productIds[last]);
+        }
+        return new Page(pageItems, start, end, nextCursor);
+    }
+
+    // Indexes of the k first items in sort order that come after the cursor (all items when afterId is null)
+    private int[] topK(int k, double afterKey, String afterId) {
+        int[] heap = new int[Math.max(Math.min(k, keys.length), 0)];
+        int heapSize = 0;
+        if (heap.length == 0) {
+            return heap;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (afterId != null && compare(keys[i], productIds[i], afterKey, afterId) <= 0) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+            } else if (compare(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, heapSize);
+            }
+        }
+        // The root is always the last of the kept items, so popping fills the result from the back
+        int[] sorted = new int[heapSize];
+        for (int remaining = heapSize; remaining > 0; remaining--) {
+            sorted[remaining - 1] = heap[0];
+            heap[0] = heap[remaining - 1];
+            siftDown(heap, remaining - 1);
+        }
+        return sorted;
+    }
+
+    private int countUpTo(double key, String productId) {
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (compare(keys[i], productIds[i], key, productId) <= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Max-heap on sort order: the item that would come last sits at the root
+    private void siftUp(int[] heap, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (compare(heap[position], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int position = 0;
+        while (true) {
+            int largest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && compare(heap[left], heap[largest]) > 0) {
+                largest = left;
+            }
+            if (right < size && compare(heap[right], heap[largest]) > 0) {
+                largest = right;
+            }
+            if (largest == position) {
+                return;
+            }
+            swap(heap, position, largest);
+            position = largest;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int tmp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = tmp;
+    }
+
+    private int compare(int a, int b) {
+        return compare(keys[a], productIds[a], keys[b], productIds[b]);
+    }
+
+    // Sort order of the listing: by key in the requested direction, items without a key last, ties by productId
+    private int compare(double keyA, String idA, double keyB, String idB) {
+        boolean missingA = Double.isNaN(keyA);
+        boolean missingB = Double.isNaN(keyB);
+        int result;
+        if (missingA || missingB) {
+            result = missingA == missingB ? 0 : (missingA ? 1 : -1);
+        } else {
+            result = descending ? Double.compare(keyB, keyA) : Double.compare(keyA, keyB);
+        }
+        return result != 0 ? result : idA.compareTo(idB);
+    }
+
+    private static int parseOffset(String value, int size) {
+        try {
+            return Math.min(Math.max(Integer.parseInt(value), 0), size);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String encode(String cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Unreadable cursors are ignored and the page number is used instead
+    private static String[] decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 5);
+            if (parts.length == 5) {
+                Double.parseDouble(parts[3]);
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static final class Page {
+        private final List<Map<String, AttributeValue>> items;
+        private final int start;
+        private final int end;
+        private final String nextCursor;
+
+        private Page(List<Map<String, AttributeValue>> items, int start, int end, String nextCursor) {
+            this.items = items;
+            this.start = start;
+            this.end = end;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<Map<String, AttributeValue>> getItems() {
+            return items;
+        }
+
+        // Zero-based position of the first item of the page in the full listing
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        // Null on the last page
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
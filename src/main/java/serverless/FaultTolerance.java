@@ -5,6 +5,8 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import serverless.lib.ClientRegistry;
+import serverless.lib.ColdStartPriming;
 import serverless.lib.MetricsHandler;
 import serverless.lib.ResponseGenerator;
 import software.amazon.awssdk.core.SdkBytes;
@@ -147,19 +149,20 @@ public class FaultTolerance implements RequestHandler<Map<String, Object>, Map<S
                         4,
                         30,
                         "Unable to fetch orders. Please try again later."));
+        ColdStartPriming.prime(gson);
     }
 
 
     private static LambdaClient getLambdaClient() {
         if (lambdaClient == null) {
-            lambdaClient = LambdaClient.builder().build();
+            lambdaClient = ClientRegistry.lambda();
         }
         return lambdaClient;
     }
 
     private static DynamoDbClient getDynamoDbClient() {
         if (dynamoDB == null) {
-            dynamoDB = DynamoDbClient.builder().build();
+            dynamoDB = ClientRegistry.dynamoDb();
         }
         return dynamoDB;
     }
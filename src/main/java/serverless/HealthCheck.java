@@ -5,8 +5,9 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import serverless.lib.ClientRegistry;
+import serverless.lib.ColdStartPriming;
 import serverless.lib.ConfigManager;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.*;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -25,6 +26,10 @@ public class HealthCheck implements RequestHandler<Map<String, Object>, Map<Stri
     private static final Gson gson = new Gson();
     private static final ConfigManager configManager = new ConfigManager();
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @Override
     public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
         Object healthConfig = configManager.get("HEALTH");
@@ -74,9 +79,7 @@ public class HealthCheck implements RequestHandler<Map<String, Object>, Map<Stri
 
         var datasources = configJson.getAsJsonArray("DATASOURCES");
 
-        DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                .region(Region.of(REGION))
-                .build();
+        DynamoDbClient dynamoDB = ClientRegistry.dynamoDb(REGION);
 
         ListTablesResponse listTablesResponse = dynamoDB.listTables();
         List<String> availableTables = listTablesResponse.tableNames();
@@ -133,9 +136,7 @@ public class HealthCheck implements RequestHandler<Map<String, Object>, Map<Stri
         JsonObject metricsJson = configJson.getAsJsonObject("METRICS");
         String timeRange = metricsJson.get("TIME_RANGE").getAsString();
         long startTime = Instant.now().minusMillis(Long.parseLong(timeRange)).toEpochMilli();
-        CloudWatchClient cw = CloudWatchClient.builder()
-                .region(Region.of(REGION))
-                .build();
+        CloudWatchClient cw = ClientRegistry.cloudWatch(REGION);
 
         Map<String, Object> metricsResponse = new HashMap<>();
         for (JsonElement functionElement : metricsJson.getAsJsonArray("FUNCTIONS")) {
@@ -9,13 +9,12 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.net.MalformedURLException;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -29,6 +28,7 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -37,9 +37,7 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -62,6 +60,7 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Product added to cart successfully."),
             @LambdaAPIResponse(responseCode = 403, description = "Invalid token."),
+            @LambdaAPIResponse(responseCode = 404, description = "Product not found."),
             @LambdaAPIResponse(responseCode = 500, description = "Failed to add to cart.")
     })
     @Override
@@ -73,10 +72,6 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             Subsegment authenticationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
@@ -85,7 +80,7 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (JWTVerificationException | MalformedURLException | JwkException e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user", e);
                 return ResponseGenerator.generateResponse(403, "Invalid token.");
@@ -104,106 +99,22 @@ public class AddToCart implements RequestHandler<Map<String, Object>, Map<String
             Subsegment updateQTYandPriceSubsegment = AWSXRay.beginSubsegment("UpdateQuantityAndPrice");
             Map<String, AttributeValue> key = new HashMap<>();
             key.put("UserId", AttributeValue.builder().s(userId).build());
-            GetItemRequest getItemRequest = GetItemRequest.builder()
-                    .tableName(CART_TABLE)
-                    .key(key)
-                    .build();
-            GetItemResponse getItemResponse = dynamoDB.getItem(getItemRequest);
-
-            if (getItemResponse.item() == null || !getItemResponse.item().containsKey("OrderList") || !getItemResponse.item().containsKey("TotalPrice")) {
-                Map<String, String> expressionAttributeNames = new HashMap<>();
-                expressionAttributeNames.put("#O", "OrderList");
-                expressionAttributeNames.put("#T", "TotalPrice");
-                Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-                expressionAttributeValues.put(":ol", AttributeValue.builder().s(";").build()); // Initialize an empty OrderList
-                expressionAttributeValues.put(":t", AttributeValue.builder().n("0.0").build()); // Initialize TotalPrice
-                UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                        .tableName(CART_TABLE)
-                        .key(key)
-                        .updateExpression("SET #O = :ol, #T = :t")
-                        .expressionAttributeNames(expressionAttributeNames)
-                        .expressionAttributeValues(expressionAttributeValues)
-                        .build();
-                dynamoDB.updateItem(updateItemRequest);
-                // Re-fetch the item after initializing OrderList and TotalPrice
-                getItemResponse = dynamoDB.getItem(getItemRequest);
-            }
-
-            // Update the OrderList and quantity
-            String orderListStr = getItemResponse.item().get("OrderList").s();
-            if (!orderListStr.endsWith(";")) {
-                orderListStr += ";";
-            }
-            String[] orderList = orderListStr.split(";");
-            boolean found = false;
-            for (int i = 0; i < orderList.length; i++) {
-                String[] parts = orderList[i].split(":");
-                if (parts[0].equals(productId)) {
-                    // Found the product, update the quantity
-                    parts[1] = String.valueOf(Integer.parseInt(quantity));
-                    orderList[i] = String.join(":", parts);
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                orderList = Arrays.copyOf(orderList, orderList.length + 1);
-                orderList[orderList.length - 1] = productId + ":" + quantity;
-            }
-            orderListStr = String.join(";", orderList);
-
-            // Update the OrderList in the cart
-            Map<String, String> expressionAttributeNames = new HashMap<>();
-            expressionAttributeNames.put("#O", "OrderList");
-            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            expressionAttributeValues.put(":ol", AttributeValue.builder().s(orderListStr).build());
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName(CART_TABLE)
-                    .key(key)
-                    .updateExpression("SET #O = :ol")
-                    .expressionAttributeNames(expressionAttributeNames)
-                    .expressionAttributeValues(expressionAttributeValues)
-                    .build();
-            dynamoDB.updateItem(updateItemRequest);
 
-            // Calculate the total price
-            double totalPrice = 0.0;
-            for (String order : orderList) {
-                String[] parts = order.split(":");
-                String productIdOrder = parts[0];
-                int quantityOrder = Integer.parseInt(parts[1]);
-                Map<String, AttributeValue> productKey = new HashMap<>();
-                productKey.put("productId", AttributeValue.builder().s(productIdOrder).build());
-                GetItemRequest getProductRequest = GetItemRequest.builder()
-                        .tableName(PRODUCT_TABLE)
-                        .key(productKey)
-                        .attributesToGet("discountPrice")
-                        .build();
-                GetItemResponse getProductResponse = dynamoDB.getItem(getProductRequest);
-                double productPrice = Double.parseDouble(getProductResponse.item().get("discountPrice").n());
-                totalPrice += productPrice * quantityOrder;
+            // Price the product once, the line keeps its unit price so the total never has to re-read the catalog
+            Double unitPrice = CartPricing.fetchPrices(dynamoDB, PRODUCT_TABLE, Set.of(productId)).get(productId);
+            if (unitPrice == null) {
+                AWSXRay.endSubsegment();
+                logger.info("Product with given productId does not exist in the database.");
+                return ResponseGenerator.generateResponse(404, gson.toJson("Product not found."));
             }
 
-            // Update the TotalPrice in the CartDB table
-            Map<String, String> expressionAttributeNamesTotal = new HashMap<>();
-            expressionAttributeNamesTotal.put("#T", "TotalPrice");
-            Map<String, AttributeValue> expressionAttributeValuesTotal = new HashMap<>();
-            expressionAttributeValuesTotal.put(":t", AttributeValue.builder().n(String.valueOf(totalPrice)).build());
-            UpdateItemRequest updateTotalPriceRequest = UpdateItemRequest.builder()
-                    .tableName(CART_TABLE)
-                    .key(key)
-                    .updateExpression("SET #T = :t")
-                    .expressionAttributeNames(expressionAttributeNamesTotal)
-                    .expressionAttributeValues(expressionAttributeValuesTotal)
-                    .build();
-            dynamoDB.updateItem(updateTotalPriceRequest);
-
-            // Fetch the updated cart item
-            GetItemResponse updatedItemResponse = dynamoDB.getItem(getItemRequest);
+            // Set the line and move TotalPrice by the price difference in one conditional update
+            Map<String, AttributeValue> updatedCart = new CartMutations(dynamoDB, CART_TABLE, PRODUCT_TABLE)
+                    .setLine(key, productId, Integer.parseInt(quantity), unitPrice);
             AWSXRay.endSubsegment();
 
             logger.info("Update quantity and price successful");
-            return ResponseGenerator.generateResponse(200, gson.toJson(ResponseTransformer.transformItem(updatedItemResponse.item())));
+            return ResponseGenerator.generateResponse(200, gson.toJson(CartLines.toResponse(updatedCart)));
         } catch (DynamoDbException e) {
             Subsegment failureSubsegment = AWSXRay.beginSubsegment("AddToCartFailed");
             logger.log(Level.SEVERE, "Failed to add to cart", e);
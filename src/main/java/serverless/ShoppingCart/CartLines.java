@@ -0,0 +1,147 @@
+package serverless.ShoppingCart;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+// Cart lines live in a "Lines" map attribute: productId -> {quantity, unitPrice}. Carts written before that
+// still carry the "id:qty;" OrderList string, which is read here as well and converted on the first edit.
+// LINES is a DynamoDB reserved word, so expressions refer to the attribute as #lines.
+public class CartLines {
+
+    private static final Logger logger = Logger.getLogger(CartLines.class.getName());
+
+    // productId -> line, ordered by productId so paging over a cart is stable
+    public static Map<String, Line> read(Map<String, AttributeValue> cart) {
+        Map<String, Line> lines = new TreeMap<>();
+        if (cart == null) {
+            return lines;
+        }
+        AttributeValue linesAttribute = cart.get("Lines");
+        if (linesAttribute != null && linesAttribute.hasM()) {
+            for (Map.Entry<String, AttributeValue> entry : linesAttribute.m().entrySet()) {
+                Map<String, AttributeValue> line = entry.getValue().m();
+                AttributeValue unitPrice = line.get("unitPrice");
+                lines.put(entry.getKey(), new Line(Integer.parseInt(line.get("quantity").n()),
+                        unitPrice != null ? Double.valueOf(unitPrice.n()) : null));
+            }
+            return lines;
+        }
+        AttributeValue orderList = cart.get("OrderList");
+        if (orderList != null && orderList.s() != null) {
+            CartPricing.parseOrderList(orderList.s()).forEach((productId, quantity) -> lines.put(productId, new Line(quantity, null)));
+        }
+        return lines;
+    }
+
+    public static boolean isLegacy(Map<String, AttributeValue> cart) {
+        return cart != null && !cart.containsKey("Lines") && cart.containsKey("OrderList");
+    }
+
+    public static AttributeValue lineValue(int quantity, double unitPrice) {
+        Map<String, AttributeValue> line = new HashMap<>();
+        line.put("quantity", AttributeValue.builder().n(String.valueOf(quantity)).build());
+        line.put("unitPrice", AttributeValue.builder().n(String.valueOf(unitPrice)).build());
+        return AttributeValue.builder().m(line).build();
+    }
+
+    public static double total(Map<String, Line> lines) {
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        for (Line line : lines.values()) {
+            if (line.getUnitPrice() != null) {
+                totalPrice = totalPrice.add(BigDecimal.valueOf(line.getUnitPrice()).multiply(BigDecimal.valueOf(line.getQuantity())));
+            }
+        }
+        return totalPrice.doubleValue();
+    }
+
+    // The legacy "id:qty;" form, still returned to clients that read OrderList
+    public static String toOrderList(Map<String, Line> lines) {
+        StringBuilder orderList = new StringBuilder();
+        lines.forEach((productId, line) -> orderList.append(productId).append(":").append(line.getQuantity()).append(";"));
+        return orderList.toString();
+    }
+
+    // Cart attributes in the shape AddToCart has always returned
+    public static Map<String, String> toResponse(Map<String, AttributeValue> cart) {
+        Map<String, Line> lines = read(cart);
+        Map<String, String> response = new HashMap<>();
+        response.put("UserId", cart.get("UserId").s());
+        response.put("OrderList", toOrderList(lines));
+        AttributeValue totalPrice = cart.get("TotalPrice");
+        response.put("TotalPrice", totalPrice != null ? totalPrice.n() : String.valueOf(total(lines)));
+        return response;
+    }
+
+    // Creates the Lines map for a missing or legacy cart, pricing the legacy lines in one batch read.
+    // Callers then retry their single-expression update. Losing the race to a concurrent migration is fine.
+    public static void migrate(DynamoDbClient dynamoDB, String cartTable, String productTable, Map<String, AttributeValue> key) {
+        GetItemResponse getItemResponse = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(cartTable)
+                .key(key)
+                .consistentRead(true)
+                .build());
+        Map<String, AttributeValue> cart = getItemResponse.hasItem() ? getItemResponse.item() : null;
+        if (cart != null && cart.containsKey("Lines")) {
+            return;
+        }
+        Map<String, Line> legacyLines = read(cart);
+        Map<String, Double> prices = CartPricing.fetchPrices(dynamoDB, productTable, legacyLines.keySet());
+        Map<String, AttributeValue> lines = new HashMap<>();
+        BigDecimal totalPrice = BigDecimal.ZERO;
+        for (Map.Entry<String, Line> entry : legacyLines.entrySet()) {
+            Double price = prices.get(entry.getKey());
+            if (price == null) {
+                logger.warning("Dropping product " + entry.getKey() + " from migrated cart, it is no longer in the catalog");
+                continue;
+            }
+            lines.put(entry.getKey(), lineValue(entry.getValue().getQuantity(), price));
+            totalPrice = totalPrice.add(BigDecimal.valueOf(price).multiply(BigDecimal.valueOf(entry.getValue().getQuantity())));
+        }
+
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":lines", AttributeValue.builder().m(lines).build());
+        expressionAttributeValues.put(":t", AttributeValue.builder().n(totalPrice.toPlainString()).build());
+        expressionAttributeValues.put(":one", AttributeValue.builder().n("1").build());
+        try {
+            dynamoDB.updateItem(UpdateItemRequest.builder()
+                    .tableName(cartTable)
+                    .key(key)
+                    .updateExpression("SET #lines = :lines, TotalPrice = :t REMOVE OrderList ADD Version :one")
+                    .conditionExpression("attribute_not_exists(#lines)")
+                    .expressionAttributeNames(Map.of("#lines", "Lines"))
+                    .expressionAttributeValues(expressionAttributeValues)
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            logger.fine("Cart was migrated concurrently");
+        }
+    }
+
+    public static final class Line {
+        private final int quantity;
+        private final Double unitPrice;
+
+        private Line(int quantity, Double unitPrice) {
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        // Null for lines read from a legacy OrderList, which never stored prices
+        public Double getUnitPrice() {
+            return unitPrice;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package serverless.ShoppingCart;
+
+import serverless.lib.OptimisticRetry;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+// Changes one cart line and TotalPrice together in a single conditional UpdateItem, moving the total by the
+// price difference with ADD so concurrent edits of other lines are never lost. Adding a product that is not in
+// the cart yet takes one call; changing or removing an existing line reads the cart first and writes on the
+// condition that its Version is unchanged, retrying through OptimisticRetry when another tab got there first.
+public class CartMutations {
+
+    private static final AttributeValue ONE = AttributeValue.builder().n("1").build();
+
+    private final DynamoDbClient dynamoDB;
+    private final String cartTable;
+    private final String productTable;
+
+    public CartMutations(DynamoDbClient dynamoDB, String cartTable, String productTable) {
+        this.dynamoDB = dynamoDB;
+        this.cartTable = cartTable;
+        this.productTable = productTable;
+    }
+
+    // Sets the quantity of a product, returns the whole cart after the change
+    public Map<String, AttributeValue> setLine(Map<String, AttributeValue> key, String productId, int quantity, double unitPrice) {
+        BigDecimal lineTotal = lineTotal(quantity, unitPrice);
+        try {
+            // Common case first: a product that is not in the cart yet, which no concurrent write can invalidate
+            return update(key, "SET #lines.#pid = :line ADD TotalPrice :delta, Version :one",
+                    "attribute_exists(#lines) AND attribute_not_exists(#lines.#pid)",
+                    productId, CartLines.lineValue(quantity, unitPrice), lineTotal, new HashMap<>());
+        } catch (ConditionalCheckFailedException e) {
+            // Fall through to the cases that need to look at the cart
+        }
+        try {
+            // No Lines map yet, most likely the first product of a new cart. DynamoDB cannot create the map and set
+            // a path inside it in one expression, so the map is written whole, without reading the cart first.
+            return createLines(key, productId, quantity, unitPrice);
+        } catch (ConditionalCheckFailedException e) {
+            // The product is already in the cart, or the cart still has a legacy OrderList
+        }
+        return OptimisticRetry.run("Updating cart line " + productId, () -> {
+            Map<String, AttributeValue> cart = readMigrated(key);
+            if (cart == null || !cart.containsKey("Lines")) {
+                // Checked out and deleted since the attempts above
+                return createLines(key, productId, quantity, unitPrice);
+            }
+            CartLines.Line current = CartLines.read(cart).get(productId);
+            BigDecimal delta = current != null ? lineTotal.subtract(lineTotal(current)) : lineTotal;
+            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+            String condition = OptimisticRetry.expectVersion(cart, expressionAttributeValues);
+            return update(key, "SET #lines.#pid = :line ADD TotalPrice :delta, Version :one", condition,
+                    productId, CartLines.lineValue(quantity, unitPrice), delta, expressionAttributeValues);
+        });
+    }
+
+    // Removes a product, returns the whole cart after the change or null when the product was not in the cart
+    public Map<String, AttributeValue> removeLine(Map<String, AttributeValue> key, String productId) {
+        return OptimisticRetry.run("Removing cart line " + productId, () -> {
+            Map<String, AttributeValue> cart = readMigrated(key);
+            CartLines.Line current = CartLines.read(cart).get(productId);
+            if (current == null) {
+                return null;
+            }
+            Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+            String condition = OptimisticRetry.expectVersion(cart, expressionAttributeValues);
+            return update(key, "REMOVE #lines.#pid ADD TotalPrice :delta, Version :one", condition,
+                    productId, null, lineTotal(current).negate(), expressionAttributeValues);
+        });
+    }
+
+    private Map<String, AttributeValue> createLines(Map<String, AttributeValue> key, String productId, int quantity, double unitPrice) {
+        Map<String, AttributeValue> lines = new HashMap<>();
+        lines.put(productId, CartLines.lineValue(quantity, unitPrice));
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeValues.put(":lines", AttributeValue.builder().m(lines).build());
+        expressionAttributeValues.put(":t", number(lineTotal(quantity, unitPrice)));
+        expressionAttributeValues.put(":one", ONE);
+        return dynamoDB.updateItem(UpdateItemRequest.builder()
+                .tableName(cartTable)
+                .key(key)
+                .updateExpression("SET #lines = :lines, TotalPrice = :t ADD Version :one")
+                .conditionExpression("attribute_not_exists(#lines) AND attribute_not_exists(OrderList)")
+                .expressionAttributeNames(Map.of("#lines", "Lines"))
+                .expressionAttributeValues(expressionAttributeValues)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build()).attributes();
+    }
+
+    private Map<String, AttributeValue> update(Map<String, AttributeValue> key, String updateExpression, String conditionExpression,
+                                               String productId, AttributeValue line, BigDecimal delta,
+                                               Map<String, AttributeValue> expressionAttributeValues) {
+        expressionAttributeValues.put(":delta", number(delta));
+        expressionAttributeValues.put(":one", ONE);
+        if (line != null) {
+            expressionAttributeValues.put(":line", line);
+        }
+        return dynamoDB.updateItem(UpdateItemRequest.builder()
+                .tableName(cartTable)
+                .key(key)
+                .updateExpression(updateExpression)
+                .conditionExpression(conditionExpression)
+                .expressionAttributeNames(Map.of("#lines", "Lines", "#pid", productId))
+                .expressionAttributeValues(expressionAttributeValues)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build()).attributes();
+    }
+
+    // The cart as stored, converting a legacy OrderList cart to Lines first
+    private Map<String, AttributeValue> readMigrated(Map<String, AttributeValue> key) {
+        Map<String, AttributeValue> cart = read(key);
+        if (CartLines.isLegacy(cart)) {
+            CartLines.migrate(dynamoDB, cartTable, productTable, key);
+            cart = read(key);
+        }
+        return cart;
+    }
+
+    private Map<String, AttributeValue> read(Map<String, AttributeValue> key) {
+        GetItemResponse getItemResponse = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(cartTable)
+                .key(key)
+                .consistentRead(true)
+                .build());
+        return getItemResponse.hasItem() ? getItemResponse.item() : null;
+    }
+
+    // Decimal arithmetic so repeated ADDs do not accumulate binary rounding errors in TotalPrice
+    private static BigDecimal lineTotal(int quantity, double unitPrice) {
+        return BigDecimal.valueOf(unitPrice).multiply(BigDecimal.valueOf(quantity));
+    }
+
+    private static BigDecimal lineTotal(CartLines.Line line) {
+        return line.getUnitPrice() != null ? lineTotal(line.getQuantity(), line.getUnitPrice()) : BigDecimal.ZERO;
+    }
+
+    private static AttributeValue number(BigDecimal value) {
+        return AttributeValue.builder().n(value.toPlainString()).build();
+    }
+}
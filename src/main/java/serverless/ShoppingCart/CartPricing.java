@@ -0,0 +1,56 @@
+package serverless.ShoppingCart;
+
+import serverless.lib.BatchReader;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Looks up the prices of all products of a cart with one BatchGetItem instead of a GetItem per order line
+public class CartPricing {
+
+    // productId -> discountPrice, products missing from the catalog are left out
+    public static Map<String, Double> fetchPrices(DynamoDbClient dynamoDB, String productTable, Collection<String> productIds) {
+        Map<String, Double> prices = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return prices;
+        }
+        for (Map<String, AttributeValue> item : BatchReader.getItems(dynamoDB, productTable, "productId", productIds, "productId, discountPrice")) {
+            AttributeValue price = item.get("discountPrice");
+            if (price != null && price.n() != null) {
+                prices.put(item.get("productId").s(), Double.parseDouble(price.n()));
+            }
+        }
+        return prices;
+    }
+
+    // productId -> {productId, productName, discountPrice} of the products still in the catalog
+    public static Map<String, Map<String, AttributeValue>> fetchProducts(DynamoDbClient dynamoDB, String productTable, Collection<String> productIds) {
+        Map<String, Map<String, AttributeValue>> products = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return products;
+        }
+        for (Map<String, AttributeValue> item : BatchReader.getItems(dynamoDB, productTable, "productId", productIds, "productId, productName, discountPrice")) {
+            products.put(item.get("productId").s(), item);
+        }
+        return products;
+    }
+
+    // "productId:quantity;..." -> productId -> quantity, in cart order
+    public static Map<String, Integer> parseOrderList(String orderListStr) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        if (orderListStr == null) {
+            return quantities;
+        }
+        for (String order : orderListStr.split(";")) {
+            String[] parts = order.split(":");
+            if (parts.length == 2 && !parts[0].isEmpty()) {
+                quantities.put(parts[0], Integer.parseInt(parts[1].trim()));
+            }
+        }
+        return quantities;
+    }
+}
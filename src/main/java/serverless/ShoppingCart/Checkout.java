@@ -6,19 +6,21 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import serverless.lib.LambdaDocumentationAnnotations.*;
@@ -32,6 +34,7 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -40,15 +43,13 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
     @LambdaOperation(
             summary = "Checkout",
-            description = "Allows users to finalize their cart and place an order.",
+            description = "Allows users to finalize their cart and place an order. Retries carrying the same Idempotency-Key header never place a second order and, with an idempotency table configured, get the original response back. With asynchronous checkout enabled the order is queued and its id returned with status PENDING.",
             path = "/checkout",
             method = "POST"
     )
@@ -57,14 +58,17 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
             content = @LambdaContent(
                     mediaType = "application/json",
                     schema = @LambdaSchema(
-                            example = "{ \"email\": \"john.doe@example.com\", \"name\": \"John\", \"surname\": \"Doe\", \"address\": \"123 Street\", \"telNumber\": \"1234567890\", \"orderList\": \"product1:2;product2:1;\", \"totalPrice\": \"150.00\" }"
+                            example = "{ \"email\": \"john.doe@example.com\", \"name\": \"John\", \"surname\": \"Doe\", \"address\": \"123 Street\", \"telNumber\": \"1234567890\" }"
                     )
             )
     )
     @LambdaSecurityRequirement(name = "BearerAuth")
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Payment successful."),
+            @LambdaAPIResponse(responseCode = 202, description = "Order accepted for processing (asynchronous checkout)."),
+            @LambdaAPIResponse(responseCode = 400, description = "Cart is empty."),
             @LambdaAPIResponse(responseCode = 403, description = "Invalid token."),
+            @LambdaAPIResponse(responseCode = 409, description = "Cart changed during checkout, or the Idempotency-Key was already used for another order."),
             @LambdaAPIResponse(responseCode = 500, description = "Failed to process checkout.")
     })
     @Override
@@ -73,13 +77,10 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
             Subsegment configSubsegment = AWSXRay.beginSubsegment("collectConfigParams");
             String ORDERS_TABLE = (String) configManager.get("ORDERS_TABLE");
             String CART_TABLE = (String) configManager.get("CART_TABLE");
+            String PRODUCT_TABLE = (String) configManager.get("PRODUCT_TABLE");
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             Subsegment authenticationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
@@ -88,7 +89,7 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (JWTVerificationException | MalformedURLException e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user", e);
                 return ResponseGenerator.generateResponse(403, "Invalid token.");
@@ -103,15 +104,78 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
             String surname = body.get("surname");
             String address = body.get("address");
             String telNumber = body.get("telNumber");
-            String orderListStr = body.get("orderList");
-            String totalPrice = body.get("totalPrice");
             AWSXRay.endSubsegment();
 
-            Subsegment putOrderDetailsSubsegment = AWSXRay.beginSubsegment("StoreOrderDetails");
-            String hashKeyInput = userId + orderListStr + Instant.now().toString();
-            String hashKey = generateHashKey(hashKeyInput);
-            putOrderDetailsSubsegment.putMetadata("email", email);
-            putOrderDetailsSubsegment.putMetadata("hashKey", hashKey);
+            Subsegment idempotencySubsegment = AWSXRay.beginSubsegment("CheckIdempotency");
+            // With an Idempotency-Key the order key comes from it, so a retried checkout addresses the same order.
+            // Without one every checkout is a new order, as it always was.
+            String idempotencyKey = CheckoutIdempotency.resolveKey(event, userId);
+            String hashKey = CheckoutIdempotency.digest(idempotencyKey != null ? idempotencyKey : userId + "#" + UUID.randomUUID());
+            idempotencySubsegment.putMetadata("email", email);
+            idempotencySubsegment.putMetadata("hashKey", hashKey);
+            CheckoutIdempotency idempotency = idempotencyKey != null ? CheckoutIdempotency.fromConfig(dynamoDB, configManager) : null;
+            if (idempotency != null) {
+                try {
+                    Map<String, Object> storedResponse = idempotency.replay(idempotencyKey);
+                    if (storedResponse != null) {
+                        AWSXRay.endSubsegment();
+                        logger.info("Replaying stored checkout response for order " + hashKey);
+                        return storedResponse;
+                    }
+                } catch (DynamoDbException e) {
+                    // Still protected by the order's own HashKey condition, only the stored response is lost
+                    logger.log(Level.WARNING, "Idempotency table is unavailable, checking out without it", e);
+                    idempotency = null;
+                }
+            }
+            AWSXRay.endSubsegment();
+
+            // Price the order from the stored cart and the current catalog instead of trusting the request body
+            Subsegment priceOrderSubsegment = AWSXRay.beginSubsegment("PriceOrder");
+            Map<String, AttributeValue> cartKey = new HashMap<>();
+            cartKey.put("UserId", AttributeValue.builder().s(userId).build());
+            GetItemResponse cartResponse = dynamoDB.getItem(GetItemRequest.builder()
+                    .tableName(CART_TABLE)
+                    .key(cartKey)
+                    .consistentRead(true)
+                    .build());
+            Map<String, CartLines.Line> cartLines = CartLines.read(cartResponse.hasItem() ? cartResponse.item() : null);
+            if ("ASYNC".equals(configManager.get("CHECKOUT_MODE"))) {
+                OrderIntentQueue queue = OrderIntentQueue.fromConfig(configManager);
+                if (queue != null) {
+                    AWSXRay.endSubsegment();
+                    OrderIntent intent = new OrderIntent(hashKey, userId, email, name, surname, address, telNumber,
+                            quantities(cartLines), OptimisticRetry.version(cartResponse.item()), Instant.now().toString());
+                    return acceptOrderIntent(queue, intent, idempotency, idempotencyKey);
+                }
+                logger.warning("CHECKOUT_MODE is ASYNC but no ORDER_INTENT_QUEUE is configured, checking out synchronously");
+            }
+            Map<String, Map<String, AttributeValue>> products = CartPricing.fetchProducts(dynamoDB, PRODUCT_TABLE, cartLines.keySet());
+            JsonArray orderLines = new JsonArray();
+            BigDecimal total = BigDecimal.ZERO;
+            for (Map.Entry<String, CartLines.Line> line : cartLines.entrySet()) {
+                Map<String, AttributeValue> product = products.get(line.getKey());
+                if (product == null || product.get("discountPrice") == null) {
+                    logger.warning("Product " + line.getKey() + " is no longer in the catalog, leaving it out of the order");
+                    continue;
+                }
+                BigDecimal unitPrice = new BigDecimal(product.get("discountPrice").n());
+                JsonObject orderLine = new JsonObject();
+                orderLine.addProperty("productId", line.getKey());
+                orderLine.addProperty("productName", product.containsKey("productName") ? product.get("productName").s() : line.getKey());
+                orderLine.addProperty("quantity", line.getValue().getQuantity());
+                orderLine.addProperty("unitPrice", unitPrice);
+                orderLines.add(orderLine);
+                total = total.add(unitPrice.multiply(BigDecimal.valueOf(line.getValue().getQuantity())));
+            }
+            priceOrderSubsegment.putMetadata("totalPrice", total.toPlainString());
+            AWSXRay.endSubsegment();
+            if (orderLines.size() == 0) {
+                logger.info("Checkout attempted with an empty cart for user " + userId);
+                return ResponseGenerator.generateResponse(400, gson.toJson("Cart is empty."));
+            }
+
+            Subsegment commitOrderSubsegment = AWSXRay.beginSubsegment("CommitOrder");
             String timeStamp = Instant.now().toString();
 
             Map<String, AttributeValue> itemValues = new HashMap<>();
@@ -122,31 +186,65 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
             itemValues.put("Surname", AttributeValue.builder().s(surname).build());
             itemValues.put("Address", AttributeValue.builder().s(address).build());
             itemValues.put("TelNumber", AttributeValue.builder().s(telNumber).build());
-            itemValues.put("OrderList", AttributeValue.builder().s(orderListStr).build());
-            itemValues.put("TotalPrice", AttributeValue.builder().n(totalPrice).build());
+            itemValues.put("OrderList", AttributeValue.builder().s(gson.toJson(orderLines)).build());
+            itemValues.put("TotalPrice", AttributeValue.builder().n(total.toPlainString()).build());
             itemValues.put("OrderStatus", AttributeValue.builder().s("COMPLETED").build());
             itemValues.put("TimeStamp", AttributeValue.builder().s(timeStamp).build());
 
-            PutItemRequest putItemRequest = PutItemRequest.builder()
-                    .tableName(ORDERS_TABLE)
-                    .item(itemValues)
-                    .build();
-            dynamoDB.putItem(putItemRequest);
-            AWSXRay.endSubsegment();
-
-            Subsegment deleteCartSubsegment = AWSXRay.beginSubsegment("DeleteUserCart");
-            Map<String, AttributeValue> keyToDelete = new HashMap<>();
-            keyToDelete.put("UserId", AttributeValue.builder().s(userId).build());
+            // The cart is deleted only if it is still the version that was priced
+            Map<String, AttributeValue> cartVersionValues = new HashMap<>();
+            String cartCondition = OptimisticRetry.expectVersion(cartResponse.item(), cartVersionValues);
 
-            DeleteItemRequest deleteItemRequest = DeleteItemRequest.builder()
+            String responseBody = gson.toJson("Payment successful");
+            List<TransactWriteItem> transactItems = new ArrayList<>();
+            transactItems.add(TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName(ORDERS_TABLE)
+                            .item(itemValues)
+                            .conditionExpression("attribute_not_exists(HashKey)")
+                            .build())
+                    .build());
+            Delete.Builder deleteCart = Delete.builder()
                     .tableName(CART_TABLE)
-                    .key(keyToDelete)
-                    .build();
-            dynamoDB.deleteItem(deleteItemRequest);
-            AWSXRay.endSubsegment();
+                    .key(cartKey)
+                    .conditionExpression(cartCondition);
+            if (!cartVersionValues.isEmpty()) {
+                deleteCart.expressionAttributeValues(cartVersionValues);
+            }
+            transactItems.add(TransactWriteItem.builder().delete(deleteCart.build()).build());
+            if (idempotency != null) {
+                transactItems.add(idempotency.record(idempotencyKey, hashKey, 200, responseBody));
+            }
+
+            try {
+                dynamoDB.transactWriteItems(TransactWriteItemsRequest.builder()
+                        .transactItems(transactItems)
+                        .build());
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.cancellationReasons();
+                boolean orderExists = conditionFailed(reasons, 0) || conditionFailed(reasons, 2);
+                if (orderExists) {
+                    // Either a concurrent retry of this checkout committed first, whose stored response is the
+                    // answer, or the Idempotency-Key was used for an earlier order whose record has expired
+                    Map<String, Object> storedResponse = idempotency != null ? idempotency.replay(idempotencyKey) : null;
+                    if (storedResponse != null) {
+                        logger.info("Checkout for order " + hashKey + " was already completed");
+                        return storedResponse;
+                    }
+                    logger.info("Order " + hashKey + " already exists and no stored response matches this checkout");
+                    return ResponseGenerator.generateResponse(409, gson.toJson("This Idempotency-Key was already used for another order."));
+                }
+                if (conditionFailed(reasons, 1)) {
+                    logger.info("Cart changed during checkout for user " + userId);
+                    return ResponseGenerator.generateResponse(409, gson.toJson("Cart changed during checkout, please review it and try again."));
+                }
+                throw e;
+            } finally {
+                AWSXRay.endSubsegment();
+            }
 
             logger.info("Payment successful");
-            return ResponseGenerator.generateResponse(200, gson.toJson("Payment successful"));
+            return ResponseGenerator.generateResponse(200, responseBody);
         } catch (Exception e) {
             Subsegment failureSubsegment = AWSXRay.beginSubsegment("CheckoutFailed");
             logger.log(Level.SEVERE, "Failed to process checkout", e);
@@ -155,9 +253,48 @@ public class Checkout implements RequestHandler<Map<String, Object>, Map<String,
         }
     }
 
-    private String generateHashKey(String input) throws NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hash);
+    // Queues the checkout for ProcessOrderIntents, which prices it, writes the order and clears the cart. The 202 is
+    // stored under the Idempotency-Key once the intent is queued, so a retry after the worker has cleared the cart
+    // gets it back instead of "Cart is empty".
+    private static Map<String, Object> acceptOrderIntent(OrderIntentQueue queue, OrderIntent intent,
+                                                         CheckoutIdempotency idempotency, String idempotencyKey) {
+        if (intent.getLines().isEmpty()) {
+            logger.info("Checkout attempted with an empty cart for user " + intent.getUserId());
+            return ResponseGenerator.generateResponse(400, gson.toJson("Cart is empty."));
+        }
+        Subsegment enqueueSubsegment = AWSXRay.beginSubsegment("EnqueueOrderIntent");
+        try {
+            enqueueSubsegment.putMetadata("orderId", intent.getOrderId());
+            queue.enqueue(intent);
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+        JsonObject accepted = new JsonObject();
+        accepted.addProperty("orderId", intent.getOrderId());
+        accepted.addProperty("status", "PENDING");
+        String responseBody = gson.toJson(accepted);
+        if (idempotency != null) {
+            try {
+                if (!idempotency.store(idempotencyKey, intent.getOrderId(), 202, responseBody)) {
+                    // A concurrent retry queued the same order id, the worker writes that order only once
+                    logger.info("Order " + intent.getOrderId() + " was already accepted by a concurrent retry");
+                }
+            } catch (DynamoDbException e) {
+                // The intent is queued; a retry without the record is still kept to one order by the HashKey
+                logger.log(Level.WARNING, "Failed to store the checkout response for order " + intent.getOrderId(), e);
+            }
+        }
+        logger.info("Order " + intent.getOrderId() + " accepted for processing");
+        return ResponseGenerator.generateResponse(202, responseBody);
+    }
+
+    private static Map<String, Integer> quantities(Map<String, CartLines.Line> cartLines) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        cartLines.forEach((productId, line) -> quantities.put(productId, line.getQuantity()));
+        return quantities;
+    }
+
+    private static boolean conditionFailed(List<CancellationReason> reasons, int index) {
+        return reasons != null && reasons.size() > index && "ConditionalCheckFailed".equals(reasons.get(index).code());
     }
 }
@@ -0,0 +1,135 @@
+package serverless.ShoppingCart;
+
+import serverless.lib.ConfigManager;
+import serverless.lib.ResponseGenerator;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Short-lived records of completed checkouts, keyed by the client's Idempotency-Key header. A retried checkout finds
+// its record and gets the stored response back instead of placing a second order; the record is written in the same
+// transaction as the order itself, or right after the order intent is queued when checkout runs asynchronously. Checkouts without the header are never deduplicated, identical bodies from a
+// returning customer are separate orders.
+public class CheckoutIdempotency {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final DynamoDbClient dynamoDB;
+    private final String table;
+    private final long ttlSeconds;
+
+    private CheckoutIdempotency(DynamoDbClient dynamoDB, String table, long ttlSeconds) {
+        this.dynamoDB = dynamoDB;
+        this.table = table;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    // Returns null when no IDEMPOTENCY_TABLE is configured
+    public static CheckoutIdempotency fromConfig(DynamoDbClient dynamoDB, ConfigManager configManager) {
+        Object table = configManager.get("IDEMPOTENCY_TABLE");
+        if (!(table instanceof String) || ((String) table).isEmpty()) {
+            return null;
+        }
+        return new CheckoutIdempotency(dynamoDB, (String) table, configManager.getLong("IDEMPOTENCY_TTL_SECONDS", 3600));
+    }
+
+    // Key scoped to the user, so two users sending the same header value never collide; null without the header
+    public static String resolveKey(Map<String, Object> event, String userId) {
+        String clientKey = header(event, HEADER);
+        if (clientKey == null || clientKey.isEmpty()) {
+            return null;
+        }
+        return userId + "#" + clientKey;
+    }
+
+    public static String digest(String input) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    // The stored response of a completed checkout with this key, or null
+    public Map<String, Object> replay(String key) {
+        GetItemResponse getItemResponse = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(table)
+                .key(Map.of("IdempotencyKey", AttributeValue.builder().s(key).build()))
+                .consistentRead(true)
+                .build());
+        if (!getItemResponse.hasItem() || getItemResponse.item().isEmpty()) {
+            return null;
+        }
+        Map<String, AttributeValue> record = getItemResponse.item();
+        // TTL deletion runs late, an expired record no longer counts
+        if (Long.parseLong(record.get("TTL").n()) <= System.currentTimeMillis() / 1000) {
+            return null;
+        }
+        return ResponseGenerator.generateResponse(Integer.parseInt(record.get("StatusCode").n()), record.get("ResponseBody").s());
+    }
+
+    // Transaction item that stores the response, failing if a live record for the key already exists
+    public TransactWriteItem record(String key, String orderHashKey, int statusCode, String responseBody) {
+        return TransactWriteItem.builder()
+                .put(recordPut(key, orderHashKey, statusCode, responseBody))
+                .build();
+    }
+
+    // Stores the response on its own, for checkouts whose outcome is not a DynamoDB write (an accepted order intent).
+    // Returns false when a concurrent retry with the same key stored its response first.
+    public boolean store(String key, String orderHashKey, int statusCode, String responseBody) {
+        Put put = recordPut(key, orderHashKey, statusCode, responseBody);
+        try {
+            dynamoDB.putItem(PutItemRequest.builder()
+                    .tableName(put.tableName())
+                    .item(put.item())
+                    .conditionExpression(put.conditionExpression())
+                    .expressionAttributeNames(put.expressionAttributeNames())
+                    .expressionAttributeValues(put.expressionAttributeValues())
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private Put recordPut(String key, String orderHashKey, int statusCode, String responseBody) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("IdempotencyKey", AttributeValue.builder().s(key).build());
+        item.put("HashKey", AttributeValue.builder().s(orderHashKey).build());
+        item.put("StatusCode", AttributeValue.builder().n(String.valueOf(statusCode)).build());
+        item.put("ResponseBody", AttributeValue.builder().s(responseBody).build());
+        item.put("TTL", AttributeValue.builder().n(String.valueOf(now + ttlSeconds)).build());
+        return Put.builder()
+                .tableName(table)
+                .item(item)
+                .conditionExpression("attribute_not_exists(IdempotencyKey) OR #ttl <= :now")
+                .expressionAttributeNames(Map.of("#ttl", "TTL"))
+                .expressionAttributeValues(Map.of(":now", AttributeValue.builder().n(String.valueOf(now)).build()))
+                .build();
+    }
+
+    private static String header(Map<String, Object> event, String name) {
+        Object headers = event.get("headers");
+        if (!(headers instanceof Map)) {
+            return null;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) headers).entrySet()) {
+            if (name.equalsIgnoreCase(String.valueOf(entry.getKey())) && entry.getValue() != null) {
+                return entry.getValue().toString().trim();
+            }
+        }
+        return null;
+    }
+}
@@ -8,7 +8,6 @@ import com.auth0.jwk.JwkException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.net.MalformedURLException;
@@ -27,6 +26,7 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -35,9 +35,7 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -54,7 +52,7 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
     @LambdaAPIResponses({
             @LambdaAPIResponse(responseCode = 200, description = "Product deleted from cart successfully."),
             @LambdaAPIResponse(responseCode = 403, description = "Invalid token."),
-            @LambdaAPIResponse(responseCode = 404, description = "Product cannot be deleted because it is not present in the database."),
+            @LambdaAPIResponse(responseCode = 404, description = "Product cannot be deleted because it is not present in the cart."),
             @LambdaAPIResponse(responseCode = 500, description = "Failed to delete from cart.")
     })
     @Override
@@ -67,10 +65,6 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             // Authentication
             Subsegment authenticationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
@@ -80,7 +74,7 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (JWTVerificationException | MalformedURLException | JwkException e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user", e);
                 return ResponseGenerator.generateResponse(403, "Invalid token.");
@@ -102,63 +96,15 @@ public class DeleteFromCart implements RequestHandler<Map<String, Object>, Map<S
             Map<String, AttributeValue> key = new HashMap<>();
             key.put("UserId", AttributeValue.builder().s(userId).build());
 
-            // Fetch current cart details
-            GetItemRequest getItemRequest = GetItemRequest.builder()
-                    .tableName(CART_TABLE)
-                    .key(key)
-                    .build();
-            GetItemResponse getItemResponse = dynamoDB.getItem(getItemRequest);
-
-            // Get the OrderList and current TotalPrice
-            String orderListStr = getItemResponse.item().get("OrderList").s();
-            double totalPrice = Double.parseDouble(getItemResponse.item().get("TotalPrice").n());
-
-            // Split the OrderList and remove the specified product
-            String[] orderList = orderListStr.split(";");
-            StringBuilder updatedOrderListStr = new StringBuilder();
-            int quantityToDelete = 0;
-            for (String order : orderList) {
-                String[] parts = order.split(":");
-                if (parts[0].equals(productIdToDelete)) {
-                    quantityToDelete = Integer.parseInt(parts[1]);
-                } else {
-                    updatedOrderListStr.append(order).append(";");
-                }
-            }
-
-            // Fetch the product price
-            Map<String, AttributeValue> productKey = new HashMap<>();
-            productKey.put("productId", AttributeValue.builder().s(productIdToDelete).build());
-            GetItemRequest getProductRequest = GetItemRequest.builder()
-                    .tableName(PRODUCT_TABLE)
-                    .key(productKey)
-                    .build();
-            GetItemResponse getProductResponse = dynamoDB.getItem(getProductRequest);
-
-            // Check if the product exists in the database
-            if (getProductResponse.item() == null || getProductResponse.item().isEmpty()) {
-                logger.info("Product with given productId does not exist in the database.");
-                return ResponseGenerator.generateResponse(404, gson.toJson("Product cannot be deleted because it is not present in the database."));
+            // Remove the line and take its price off TotalPrice in one conditional update
+            Map<String, AttributeValue> updatedCart = new CartMutations(dynamoDB, CART_TABLE, PRODUCT_TABLE)
+                    .removeLine(key, productIdToDelete);
+            if (updatedCart == null) {
+                AWSXRay.endSubsegment();
+                logger.info("Product with given productId is not in the cart.");
+                return ResponseGenerator.generateResponse(404, gson.toJson("Product cannot be deleted because it is not present in the cart."));
             }
-            double productPrice = Double.parseDouble(getProductResponse.item().get("discountPrice").n());
-
-            // Update the total price
-            double updatedTotalPrice = totalPrice - productPrice * quantityToDelete;
-
-            // Define updated attributes for the cart
-            AttributeValue updatedOrderListAttr = AttributeValue.builder().s(updatedOrderListStr.toString()).build();
-            AttributeValue updatedTotalPriceAttr = AttributeValue.builder().n(String.valueOf(updatedTotalPrice)).build();
-            Map<String, AttributeValueUpdate> updatedItemAttrs = new HashMap<>();
-            updatedItemAttrs.put("OrderList", AttributeValueUpdate.builder().value(updatedOrderListAttr).action(AttributeAction.PUT).build());
-            updatedItemAttrs.put("TotalPrice", AttributeValueUpdate.builder().value(updatedTotalPriceAttr).action(AttributeAction.PUT).build());
-
-            // Update the cart in the database
-            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
-                    .tableName(CART_TABLE)
-                    .key(key)
-                    .attributeUpdates(updatedItemAttrs)
-                    .build();
-            dynamoDB.updateItem(updateItemRequest);
+            double updatedTotalPrice = Double.parseDouble(updatedCart.get("TotalPrice").n());
             AWSXRay.endSubsegment();
 
             // Prepare the response
@@ -8,7 +8,6 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import java.net.MalformedURLException;
@@ -30,6 +29,7 @@ public class GetCart implements RequestHandler<Map<String, Object>, Map<String,
 
     static {
         initializeResources();
+        ColdStartPriming.prime(gson);
     }
 
     private static synchronized void initializeResources() {
@@ -38,9 +38,7 @@ public class GetCart implements RequestHandler<Map<String, Object>, Map<String,
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
@@ -68,10 +66,6 @@ public class GetCart implements RequestHandler<Map<String, Object>, Map<String,
             String ISSUER = (String) configManager.get("ISSUER");
             AWSXRay.endSubsegment();
 
-            DynamoDbClient dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of((String) configManager.get("DYNAMO_REGION")))
-                    .build();
-
             Subsegment authenticationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
@@ -80,7 +74,7 @@ public class GetCart implements RequestHandler<Map<String, Object>, Map<String,
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (JWTVerificationException | MalformedURLException e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user. Exception: " + e.getMessage(), e);
                 return ResponseGenerator.generateResponse(401, "Invalid token: " + e.getMessage());
@@ -98,7 +92,7 @@ public class GetCart implements RequestHandler<Map<String, Object>, Map<String,
                     .build();
             QueryResponse queryResponse = dynamoDB.query(queryRequest);
 
-            if (queryResponse.items().isEmpty() || queryResponse.items().get(0).get("OrderList").s().isEmpty()) {
+            if (queryResponse.items().isEmpty() || CartLines.read(queryResponse.items().get(0)).isEmpty()) {
                 Map<String, Object> emptyCartResponse = new HashMap<>();
                 emptyCartResponse.put("products", Collections.emptyList());
                 emptyCartResponse.put("totalPages", 0);
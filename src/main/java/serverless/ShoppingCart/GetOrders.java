@@ -5,7 +5,6 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.xray.entities.Subsegment;
 import com.google.gson.Gson;
 import serverless.lib.*;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import com.amazonaws.xray.AWSXRay;
@@ -26,6 +25,10 @@ public class GetOrders implements RequestHandler<Map<String, Object>, Map<String
     private static DynamoDbClient dynamoDB;
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    static {
+        ColdStartPriming.prime(gson);
+    }
+
     @LambdaOperation(
             summary = "Fetch orders for the user",
             description = "Fetches the list of orders placed by the authenticated user with pagination support.",
@@ -59,24 +62,17 @@ public class GetOrders implements RequestHandler<Map<String, Object>, Map<String
         }
         if (dynamoDB == null) {
             String REGION = (String) configManager.get("DYNAMO_REGION");
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
         }
     }
 
     public Map<String, Object> getOrders(Map<String, Object> event) {
         try {
             Subsegment configSubsegment = AWSXRay.beginSubsegment("collectConfigParams");
-            String REGION = (String) configManager.get("DYNAMO_REGION");
             String ISSUER = (String) configManager.get("ISSUER");
             String ORDERS_TABLE = (String) configManager.get("ORDERS_TABLE");
             AWSXRay.endSubsegment();
 
-            dynamoDB = DynamoDbClient.builder()
-                    .region(Region.of(REGION))
-                    .build();
-
             Subsegment authenticationSubsegment = AWSXRay.beginSubsegment("authenticatingUser");
             String authHeader = ((Map<String, String>) event.get("headers")).get("Authorization");
             String token = "";
@@ -85,7 +81,7 @@ public class GetOrders implements RequestHandler<Map<String, Object>, Map<String
             }
             String userId;
             try {
-                userId = TokenVerifier.verifyToken(token, ISSUER);
+                userId = TokenVerifier.verify(token, ISSUER).getSubject();
             } catch (Exception e) {
                 logger.log(Level.SEVERE, "Failed to authenticate user", e);
                 return ResponseGenerator.generateResponse(401, gson.toJson("Unauthorized: Invalid token."));
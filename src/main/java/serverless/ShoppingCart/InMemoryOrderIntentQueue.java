@@ -0,0 +1,57 @@
+package serverless.ShoppingCart;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Queue held in the container's memory, for running checkout and the worker in one process offline.
+// Received intents stay queued until acknowledged, like messages that are in flight.
+public class InMemoryOrderIntentQueue implements OrderIntentQueue {
+
+    private static final InMemoryOrderIntentQueue shared = new InMemoryOrderIntentQueue();
+
+    private final Map<String, OrderIntent> pending = new LinkedHashMap<>();
+    private final Map<String, OrderIntent> inFlight = new LinkedHashMap<>();
+
+    public static InMemoryOrderIntentQueue shared() {
+        return shared;
+    }
+
+    @Override
+    public synchronized void enqueue(OrderIntent intent) {
+        pending.put(UUID.randomUUID().toString(), intent);
+    }
+
+    @Override
+    public synchronized List<OrderIntent> receive(int maxIntents) {
+        List<OrderIntent> received = new ArrayList<>();
+        var iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && received.size() < maxIntents) {
+            Map.Entry<String, OrderIntent> entry = iterator.next();
+            iterator.remove();
+            entry.getValue().setReceipt(entry.getKey());
+            inFlight.put(entry.getKey(), entry.getValue());
+            received.add(entry.getValue());
+        }
+        return received;
+    }
+
+    @Override
+    public synchronized void acknowledge(List<OrderIntent> intents) {
+        for (OrderIntent intent : intents) {
+            inFlight.remove(intent.getReceipt());
+        }
+    }
+
+    // Puts intents that were received but never acknowledged back at the end of the queue
+    public synchronized void requeueInFlight() {
+        pending.putAll(inFlight);
+        inFlight.clear();
+    }
+
+    public synchronized int size() {
+        return pending.size() + inFlight.size();
+    }
+}
@@ -0,0 +1,91 @@
+package serverless.ShoppingCart;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Queue kept as a JSON-lines file, one "<receipt>\t<intent>" per line, so queued intents survive a restart when
+// the pipeline runs offline. Acknowledging rewrites the file without the processed lines.
+public class LocalFileOrderIntentQueue implements OrderIntentQueue {
+
+    private static final Gson gson = new Gson();
+
+    private final Path file;
+
+    public LocalFileOrderIntentQueue(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void enqueue(OrderIntent intent) {
+        String line = UUID.randomUUID() + "\t" + gson.toJson(intent) + System.lineSeparator();
+        synchronized (LocalFileOrderIntentQueue.class) {
+            try {
+                Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append order intent to " + file, e);
+            }
+        }
+    }
+
+    @Override
+    public List<OrderIntent> receive(int maxIntents) {
+        List<OrderIntent> received = new ArrayList<>();
+        synchronized (LocalFileOrderIntentQueue.class) {
+            for (String line : readLines()) {
+                if (received.size() >= maxIntents) {
+                    break;
+                }
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                OrderIntent intent = gson.fromJson(line.substring(tab + 1), OrderIntent.class);
+                intent.setReceipt(line.substring(0, tab));
+                received.add(intent);
+            }
+        }
+        return received;
+    }
+
+    @Override
+    public void acknowledge(List<OrderIntent> intents) {
+        Set<String> receipts = new HashSet<>();
+        intents.forEach(intent -> receipts.add(intent.getReceipt()));
+        synchronized (LocalFileOrderIntentQueue.class) {
+            List<String> remaining = new ArrayList<>();
+            for (String line : readLines()) {
+                int tab = line.indexOf('\t');
+                if (tab < 0 || !receipts.contains(line.substring(0, tab))) {
+                    remaining.add(line);
+                }
+            }
+            try {
+                Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temporary, remaining, StandardCharsets.UTF_8);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to acknowledge order intents in " + file, e);
+            }
+        }
+    }
+
+    private List<String> readLines() {
+        try {
+            return Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : new ArrayList<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read order intents from " + file, e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package serverless.ShoppingCart;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A checkout accepted in asynchronous mode: who ordered what, captured from the cart at the time of the request.
+// ProcessOrderIntents prices it and writes the order; orderId is the order's HashKey, so replays are harmless.
+public class OrderIntent {
+
+    private String orderId;
+    private String userId;
+    private String email;
+    private String name;
+    private String surname;
+    private String address;
+    private String telNumber;
+    private Map<String, Integer> lines = new LinkedHashMap<>();
+    private long cartVersion;
+    private String acceptedAt;
+    // Queue-specific handle used to acknowledge the intent, never serialized
+    private transient String receipt;
+
+    public OrderIntent() {
+    }
+
+    public OrderIntent(String orderId, String userId, String email, String name, String surname, String address,
+                       String telNumber, Map<String, Integer> lines, long cartVersion, String acceptedAt) {
+        this.orderId = orderId;
+        this.userId = userId;
+        this.email = email;
+        this.name = name;
+        this.surname = surname;
+        this.address = address;
+        this.telNumber = telNumber;
+        this.lines = lines;
+        this.cartVersion = cartVersion;
+        this.acceptedAt = acceptedAt;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getTelNumber() {
+        return telNumber;
+    }
+
+    // productId -> quantity
+    public Map<String, Integer> getLines() {
+        return lines;
+    }
+
+    public long getCartVersion() {
+        return cartVersion;
+    }
+
+    public String getAcceptedAt() {
+        return acceptedAt;
+    }
+
+    public String getReceipt() {
+        return receipt;
+    }
+
+    public void setReceipt(String receipt) {
+        this.receipt = receipt;
+    }
+}
@@ -0,0 +1,198 @@
+package serverless.ShoppingCart;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Subsegment;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import serverless.lib.BatchReader;
+import serverless.lib.BatchWriter;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Turns accepted order intents into orders. Each batch is priced with one catalog read, written as PENDING orders,
+// the carts are cleared, and the orders are moved to COMPLETED. Every step is safe to repeat for a redelivered intent.
+public class OrderIntentProcessor {
+
+    private static final Gson gson = new Gson();
+    private static final Logger logger = Logger.getLogger(OrderIntentProcessor.class.getName());
+
+    private final DynamoDbClient dynamoDB;
+    private final String ordersTable;
+    private final String cartTable;
+    private final String productTable;
+
+    public OrderIntentProcessor(DynamoDbClient dynamoDB, String ordersTable, String cartTable, String productTable) {
+        this.dynamoDB = dynamoDB;
+        this.ordersTable = ordersTable;
+        this.cartTable = cartTable;
+        this.productTable = productTable;
+    }
+
+    // Processes the intents as one batch, and when that fails each of them on its own, so an intent that cannot be
+    // processed is redelivered alone instead of taking the rest of the batch with it. Returns the failed intents.
+    public List<OrderIntent> processAll(List<OrderIntent> intents) {
+        if (intents.size() > 1) {
+            try {
+                processBatch(intents);
+                return List.of();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to process " + intents.size() + " order intents together, retrying them one by one", e);
+            }
+        }
+        List<OrderIntent> failed = new ArrayList<>();
+        for (OrderIntent intent : intents) {
+            try {
+                processBatch(List.of(intent));
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Failed to process order intent " + intent.getOrderId(), e);
+                failed.add(intent);
+            }
+        }
+        return failed;
+    }
+
+    private void processBatch(List<OrderIntent> intents) {
+        // A redelivered intent whose order already completed must not touch the cart again
+        Map<String, OrderIntent> pending = new LinkedHashMap<>();
+        Map<String, Map<String, AttributeValue>> products;
+        Subsegment loadSubsegment = AWSXRay.beginSubsegment("LoadBatch");
+        try {
+            intents.forEach(intent -> pending.putIfAbsent(intent.getOrderId(), intent));
+            for (Map<String, AttributeValue> order : BatchReader.getItemsByKeys(dynamoDB, ordersTable,
+                    orderKeys(pending.values()), "HashKey, OrderStatus")) {
+                if ("COMPLETED".equals(order.get("OrderStatus").s())) {
+                    pending.remove(order.get("HashKey").s());
+                }
+            }
+            Set<String> productIds = new HashSet<>();
+            pending.values().forEach(intent -> productIds.addAll(intent.getLines().keySet()));
+            products = CartPricing.fetchProducts(dynamoDB, productTable, productIds);
+            loadSubsegment.putMetadata("intents", intents.size());
+            loadSubsegment.putMetadata("pending", pending.size());
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+
+        List<Map<String, AttributeValue>> orders = new ArrayList<>();
+        List<OrderIntent> placed = new ArrayList<>();
+        Subsegment pendingSubsegment = AWSXRay.beginSubsegment("WritePendingOrders");
+        try {
+            for (OrderIntent intent : pending.values()) {
+                Map<String, AttributeValue> order = priceOrder(intent, products);
+                if (order == null) {
+                    logger.warning("None of the products in order " + intent.getOrderId() + " are still in the catalog, dropping it");
+                    continue;
+                }
+                orders.add(order);
+                placed.add(intent);
+            }
+            BatchWriter.writeAll(dynamoDB, ordersTable, putRequests(orders));
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+
+        // BatchWriteItem cannot carry conditions, so carts are cleared one by one and only if they were not changed
+        // after checkout; a newer cart is left for the user
+        Subsegment cartSubsegment = AWSXRay.beginSubsegment("ClearCarts");
+        try {
+            for (OrderIntent intent : placed) {
+                Map<String, AttributeValue> expressionValues = new HashMap<>();
+                expressionValues.put(":expectedVersion", AttributeValue.builder().n(Long.toString(intent.getCartVersion())).build());
+                try {
+                    dynamoDB.deleteItem(DeleteItemRequest.builder()
+                            .tableName(cartTable)
+                            .key(Map.of("UserId", AttributeValue.builder().s(intent.getUserId()).build()))
+                            .conditionExpression(intent.getCartVersion() > 0 ? "Version = :expectedVersion" : "attribute_not_exists(Version)")
+                            .expressionAttributeValues(intent.getCartVersion() > 0 ? expressionValues : null)
+                            .build());
+                } catch (ConditionalCheckFailedException e) {
+                    logger.info("Cart of user " + intent.getUserId() + " changed after order " + intent.getOrderId() + " was accepted, keeping it");
+                }
+            }
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+
+        Subsegment completeSubsegment = AWSXRay.beginSubsegment("CompleteOrders");
+        try {
+            String completedAt = Instant.now().toString();
+            for (Map<String, AttributeValue> order : orders) {
+                order.put("OrderStatus", AttributeValue.builder().s("COMPLETED").build());
+                order.put("CompletedAt", AttributeValue.builder().s(completedAt).build());
+            }
+            BatchWriter.writeAll(dynamoDB, ordersTable, putRequests(orders));
+        } finally {
+            AWSXRay.endSubsegment();
+        }
+        logger.info("Completed " + orders.size() + " of " + intents.size() + " order intents");
+    }
+
+    // Prices the intent from the current catalog, as synchronous checkout does; null when nothing is left to order
+    private static Map<String, AttributeValue> priceOrder(OrderIntent intent, Map<String, Map<String, AttributeValue>> products) {
+        JsonArray orderLines = new JsonArray();
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, Integer> line : intent.getLines().entrySet()) {
+            Map<String, AttributeValue> product = products.get(line.getKey());
+            if (product == null || product.get("discountPrice") == null) {
+                continue;
+            }
+            BigDecimal unitPrice = new BigDecimal(product.get("discountPrice").n());
+            JsonObject orderLine = new JsonObject();
+            orderLine.addProperty("productId", line.getKey());
+            orderLine.addProperty("productName", product.containsKey("productName") ? product.get("productName").s() : line.getKey());
+            orderLine.addProperty("quantity", line.getValue());
+            orderLine.addProperty("unitPrice", unitPrice);
+            orderLines.add(orderLine);
+            total = total.add(unitPrice.multiply(BigDecimal.valueOf(line.getValue())));
+        }
+        if (orderLines.size() == 0) {
+            return null;
+        }
+        Map<String, AttributeValue> itemValues = new HashMap<>();
+        itemValues.put("UserId", AttributeValue.builder().s(intent.getUserId()).build());
+        itemValues.put("HashKey", AttributeValue.builder().s(intent.getOrderId()).build());
+        itemValues.put("Email", AttributeValue.builder().s(intent.getEmail()).build());
+        itemValues.put("Name", AttributeValue.builder().s(intent.getName()).build());
+        itemValues.put("Surname", AttributeValue.builder().s(intent.getSurname()).build());
+        itemValues.put("Address", AttributeValue.builder().s(intent.getAddress()).build());
+        itemValues.put("TelNumber", AttributeValue.builder().s(intent.getTelNumber()).build());
+        itemValues.put("OrderList", AttributeValue.builder().s(gson.toJson(orderLines)).build());
+        itemValues.put("TotalPrice", AttributeValue.builder().n(total.toPlainString()).build());
+        itemValues.put("OrderStatus", AttributeValue.builder().s("PENDING").build());
+        itemValues.put("TimeStamp", AttributeValue.builder().s(intent.getAcceptedAt()).build());
+        return itemValues;
+    }
+
+    private static List<Map<String, AttributeValue>> orderKeys(Iterable<OrderIntent> intents) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (OrderIntent intent : intents) {
+            keys.add(Map.of(
+                    "UserId", AttributeValue.builder().s(intent.getUserId()).build(),
+                    "HashKey", AttributeValue.builder().s(intent.getOrderId()).build()));
+        }
+        return keys;
+    }
+
+    private static List<WriteRequest> putRequests(List<Map<String, AttributeValue>> items) {
+        List<WriteRequest> writeRequests = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items) {
+            writeRequests.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(item).build())
+                    .build());
+        }
+        return writeRequests;
+    }
+}
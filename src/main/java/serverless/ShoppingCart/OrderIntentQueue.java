@@ -0,0 +1,44 @@
+package serverless.ShoppingCart;
+
+import serverless.lib.ClientRegistry;
+import serverless.lib.ConfigManager;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+// Durable hand-off between Checkout and ProcessOrderIntents. ORDER_INTENT_QUEUE selects the implementation:
+// an SQS queue URL in deployed stacks, "file:<path>" or "memory" to run the pipeline offline. When it is not set
+// in the configuration, the queue URL the stack passes in the ORDER_INTENT_QUEUE environment variable is used.
+public interface OrderIntentQueue {
+
+    void enqueue(OrderIntent intent);
+
+    // Up to maxIntents intents that have not been acknowledged yet, oldest first
+    List<OrderIntent> receive(int maxIntents);
+
+    // Removes intents that were processed, identified by their receipts
+    void acknowledge(List<OrderIntent> intents);
+
+    // Returns null when no queue is configured
+    static OrderIntentQueue fromConfig(ConfigManager configManager) {
+        Object setting = configManager.get("ORDER_INTENT_QUEUE");
+        String queue = setting instanceof String ? ((String) setting).trim() : "";
+        if (queue.isEmpty()) {
+            String stackQueue = System.getenv("ORDER_INTENT_QUEUE");
+            queue = stackQueue != null ? stackQueue.trim() : "";
+        }
+        if (queue.startsWith("https://")) {
+            return new SqsOrderIntentQueue(ClientRegistry.sqs((String) configManager.get("DYNAMO_REGION")), queue);
+        }
+        if (queue.startsWith("file:")) {
+            return new LocalFileOrderIntentQueue(Paths.get(queue.substring("file:".length())));
+        }
+        if (queue.equals("memory")) {
+            return InMemoryOrderIntentQueue.shared();
+        }
+        if (!queue.isEmpty()) {
+            throw new IllegalStateException("Unsupported ORDER_INTENT_QUEUE " + queue);
+        }
+        return null;
+    }
+}
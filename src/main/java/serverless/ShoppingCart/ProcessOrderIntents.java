@@ -0,0 +1,86 @@
+package serverless.ShoppingCart;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import serverless.lib.*;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Finalizes checkouts accepted in asynchronous mode. Triggered by the order intent queue in deployed stacks,
+// or invoked without Records to poll the configured queue; OrderIntentProcessor does the work.
+public class ProcessOrderIntents implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    private static final Gson gson = new Gson();
+    private static final Logger logger = Logger.getLogger(ProcessOrderIntents.class.getName());
+    private static ConfigManager configManager;
+    private static DynamoDbClient dynamoDB;
+
+    static {
+        initializeResources();
+        ColdStartPriming.prime(gson);
+    }
+
+    private static synchronized void initializeResources() {
+        if (configManager == null) {
+            configManager = new ConfigManager();
+        }
+        if (dynamoDB == null) {
+            String REGION = (String) configManager.get("DYNAMO_REGION");
+            dynamoDB = ClientRegistry.dynamoDb(REGION);
+        }
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> event, Context context) {
+        List<Map<String, String>> batchItemFailures = new ArrayList<>();
+        List<OrderIntent> intents = new ArrayList<>();
+        OrderIntentQueue queue = null;
+
+        List<Map<String, Object>> records = event != null ? (List<Map<String, Object>>) event.get("Records") : null;
+        if (records != null) {
+            for (Map<String, Object> record : records) {
+                String messageId = (String) record.get("messageId");
+                try {
+                    OrderIntent intent = gson.fromJson((String) record.get("body"), OrderIntent.class);
+                    intent.setReceipt(messageId);
+                    intents.add(intent);
+                } catch (JsonParseException | NullPointerException e) {
+                    logger.log(Level.SEVERE, "Unreadable order intent in message " + messageId, e);
+                    batchItemFailures.add(Map.of("itemIdentifier", messageId));
+                }
+            }
+        } else {
+            queue = OrderIntentQueue.fromConfig(configManager);
+            if (queue == null) {
+                logger.warning("No ORDER_INTENT_QUEUE is configured, there is nothing to poll");
+            } else {
+                intents = queue.receive((int) configManager.getLong("ORDER_INTENT_BATCH_SIZE", 25));
+            }
+        }
+
+        if (!intents.isEmpty()) {
+            // Failed intents are neither acknowledged nor reported as processed, so they are delivered again and
+            // end up in the dead-letter queue once they have failed too often; every step below is safe to repeat
+            OrderIntentProcessor processor = new OrderIntentProcessor(dynamoDB, (String) configManager.get("ORDERS_TABLE"),
+                    (String) configManager.get("CART_TABLE"), (String) configManager.get("PRODUCT_TABLE"));
+            List<OrderIntent> failed = processor.processAll(intents);
+            failed.forEach(intent -> batchItemFailures.add(Map.of("itemIdentifier", intent.getReceipt())));
+            if (queue != null) {
+                List<OrderIntent> processed = new ArrayList<>(intents);
+                processed.removeAll(failed);
+                queue.acknowledge(processed);
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("batchItemFailures", batchItemFailures);
+        return response;
+    }
+}
@@ -0,0 +1,76 @@
+package serverless.ShoppingCart;
+
+import com.google.gson.Gson;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Order intents as SQS messages. In the deployed stack the worker is triggered by the queue and receives the
+// messages in its event; receive/acknowledge are used when the worker polls instead.
+public class SqsOrderIntentQueue implements OrderIntentQueue {
+
+    private static final Gson gson = new Gson();
+    // ReceiveMessage and DeleteMessageBatch handle at most 10 messages per call
+    private static final int MAX_MESSAGES_PER_CALL = 10;
+
+    private final SqsClient sqs;
+    private final String queueUrl;
+
+    public SqsOrderIntentQueue(SqsClient sqs, String queueUrl) {
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public void enqueue(OrderIntent intent) {
+        sqs.sendMessage(SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(gson.toJson(intent))
+                .build());
+    }
+
+    @Override
+    public List<OrderIntent> receive(int maxIntents) {
+        List<OrderIntent> received = new ArrayList<>();
+        while (received.size() < maxIntents) {
+            List<Message> messages = sqs.receiveMessage(ReceiveMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .maxNumberOfMessages(Math.min(MAX_MESSAGES_PER_CALL, maxIntents - received.size()))
+                    .waitTimeSeconds(received.isEmpty() ? 1 : 0)
+                    .build()).messages();
+            if (messages.isEmpty()) {
+                break;
+            }
+            for (Message message : messages) {
+                OrderIntent intent = gson.fromJson(message.body(), OrderIntent.class);
+                intent.setReceipt(message.receiptHandle());
+                received.add(intent);
+            }
+        }
+        return received;
+    }
+
+    @Override
+    public void acknowledge(List<OrderIntent> intents) {
+        for (int start = 0; start < intents.size(); start += MAX_MESSAGES_PER_CALL) {
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>();
+            List<OrderIntent> chunk = intents.subList(start, Math.min(start + MAX_MESSAGES_PER_CALL, intents.size()));
+            for (int i = 0; i < chunk.size(); i++) {
+                entries.add(DeleteMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(i))
+                        .receiptHandle(chunk.get(i).getReceipt())
+                        .build());
+            }
+            sqs.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Reads many items by primary key with BatchGetItem, instead of one GetItem round trip per key
+public class BatchReader {
+
+    // BatchGetItem accepts at most 100 keys per call
+    private static final int MAX_KEYS_PER_BATCH = 100;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 25;
+
+    public static List<Map<String, AttributeValue>> getItems(DynamoDbClient dynamoDB, String tableName, String keyName, Collection<String> ids) {
+        return getItems(dynamoDB, tableName, keyName, ids, null);
+    }
+
+    public static List<Map<String, AttributeValue>> getItems(DynamoDbClient dynamoDB, String tableName, String keyName,
+                                                             Collection<String> ids, String projectionExpression) {
+        // BatchGetItem rejects requests that contain the same key twice
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int start = 0; start < uniqueIds.size(); start += MAX_KEYS_PER_BATCH) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (String id : uniqueIds.subList(start, Math.min(start + MAX_KEYS_PER_BATCH, uniqueIds.size()))) {
+                keys.add(Map.of(keyName, AttributeValue.builder().s(id).build()));
+            }
+            items.addAll(readBatch(dynamoDB, tableName, keysAndAttributes(keys, projectionExpression)));
+        }
+        return items;
+    }
+
+    // For tables with a composite primary key; the caller passes distinct keys
+    public static List<Map<String, AttributeValue>> getItemsByKeys(DynamoDbClient dynamoDB, String tableName,
+                                                                   List<Map<String, AttributeValue>> keys, String projectionExpression) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_BATCH) {
+            List<Map<String, AttributeValue>> batch = keys.subList(start, Math.min(start + MAX_KEYS_PER_BATCH, keys.size()));
+            items.addAll(readBatch(dynamoDB, tableName, keysAndAttributes(batch, projectionExpression)));
+        }
+        return items;
+    }
+
+    private static KeysAndAttributes keysAndAttributes(List<Map<String, AttributeValue>> keys, String projectionExpression) {
+        KeysAndAttributes.Builder keysAndAttributes = KeysAndAttributes.builder().keys(keys);
+        if (projectionExpression != null) {
+            keysAndAttributes.projectionExpression(projectionExpression);
+        }
+        return keysAndAttributes.build();
+    }
+
+    private static List<Map<String, AttributeValue>> readBatch(DynamoDbClient dynamoDB, String tableName, KeysAndAttributes keysAndAttributes) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, KeysAndAttributes> requestItems = Map.of(tableName, keysAndAttributes);
+        for (int attempt = 1; ; attempt++) {
+            BatchGetItemResponse response = dynamoDB.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build());
+            List<Map<String, AttributeValue>> returned = response.responses().get(tableName);
+            if (returned != null) {
+                items.addAll(returned);
+            }
+            // Keys the table could not serve under its current throughput come back to be retried
+            KeysAndAttributes unprocessed = response.hasUnprocessedKeys() ? response.unprocessedKeys().get(tableName) : null;
+            if (unprocessed == null || unprocessed.keys().isEmpty()) {
+                return items;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw DynamoDbException.builder()
+                        .message(unprocessed.keys().size() + " keys of " + tableName + " were still unprocessed after " + MAX_ATTEMPTS + " attempts")
+                        .build();
+            }
+            requestItems = Map.of(tableName, unprocessed);
+            backoff(attempt);
+        }
+    }
+
+    static void backoff(int attempt) {
+        long delay = BASE_BACKOFF_MILLIS << (attempt - 1);
+        try {
+            Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw DynamoDbException.builder().message("Interrupted while retrying a batch request").cause(e).build();
+        }
+    }
+}
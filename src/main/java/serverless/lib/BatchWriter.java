@@ -0,0 +1,44 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.List;
+import java.util.Map;
+
+// Puts and deletes many items with BatchWriteItem, retrying whatever DynamoDB hands back as unprocessed
+public class BatchWriter {
+
+    // BatchWriteItem accepts at most 25 requests per call
+    private static final int MAX_REQUESTS_PER_BATCH = 25;
+    private static final int MAX_ATTEMPTS = 5;
+
+    public static void writeAll(DynamoDbClient dynamoDB, String tableName, List<WriteRequest> writeRequests) {
+        for (int start = 0; start < writeRequests.size(); start += MAX_REQUESTS_PER_BATCH) {
+            writeBatch(dynamoDB, tableName, writeRequests.subList(start, Math.min(start + MAX_REQUESTS_PER_BATCH, writeRequests.size())));
+        }
+    }
+
+    private static void writeBatch(DynamoDbClient dynamoDB, String tableName, List<WriteRequest> batch) {
+        Map<String, List<WriteRequest>> requestItems = Map.of(tableName, batch);
+        for (int attempt = 1; ; attempt++) {
+            BatchWriteItemResponse response = dynamoDB.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(requestItems)
+                    .build());
+            List<WriteRequest> unprocessed = response.hasUnprocessedItems() ? response.unprocessedItems().get(tableName) : null;
+            if (unprocessed == null || unprocessed.isEmpty()) {
+                return;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw DynamoDbException.builder()
+                        .message(unprocessed.size() + " writes to " + tableName + " were still unprocessed after " + MAX_ATTEMPTS + " attempts")
+                        .build();
+            }
+            requestItems = Map.of(tableName, unprocessed);
+            BatchReader.backoff(attempt);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package serverless.lib;
+
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// One client per service and region for the lifetime of the container, so connections and TLS sessions are reused
+public class ClientRegistry {
+
+    private static final int MAX_CONNECTIONS = 50;
+    private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(2);
+    private static final Duration CONNECTION_ACQUISITION_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration SOCKET_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration CONNECTION_MAX_IDLE_TIME = Duration.ofSeconds(60);
+
+    private static final Map<String, SdkClient> clients = new ConcurrentHashMap<>();
+
+    public static DynamoDbClient dynamoDb(String region) {
+        return client("dynamodb", region, () -> DynamoDbClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static CognitoIdentityProviderClient cognito(String region) {
+        return client("cognito-idp", region, () -> CognitoIdentityProviderClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static SsmClient ssm(String region) {
+        return client("ssm", region, () -> SsmClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static CloudWatchClient cloudWatch(String region) {
+        return client("cloudwatch", region, () -> CloudWatchClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static SqsClient sqs(String region) {
+        return client("sqs", region, () -> SqsClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static LambdaClient lambda(String region) {
+        return client("lambda", region, () -> LambdaClient.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    // Clients for the function's own region, as resolved by the SDK's default region provider chain
+    public static DynamoDbClient dynamoDb() {
+        return client("dynamodb", null, () -> DynamoDbClient.builder()
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    public static LambdaClient lambda() {
+        return client("lambda", null, () -> LambdaClient.builder()
+                .httpClientBuilder(httpClientBuilder())
+                .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends SdkClient> T client(String service, String region, Supplier<T> factory) {
+        String key = service + ":" + (region == null ? "default" : region);
+        return (T) clients.computeIfAbsent(key, ignored -> factory.get());
+    }
+
+    private static SdkHttpClient.Builder<?> httpClientBuilder() {
+        return ApacheHttpClient.builder()
+                .maxConnections(MAX_CONNECTIONS)
+                .connectionTimeout(CONNECTION_TIMEOUT)
+                .connectionAcquisitionTimeout(CONNECTION_ACQUISITION_TIMEOUT)
+                .socketTimeout(SOCKET_TIMEOUT)
+                .connectionMaxIdleTime(CONNECTION_MAX_IDLE_TIME)
+                .tcpKeepAlive(true);
+    }
+}
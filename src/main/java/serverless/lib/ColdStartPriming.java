@@ -0,0 +1,128 @@
+package serverless.lib;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Opt-in (PRIMING_ENABLED=true) warm-up run from each handler's static initializer, so the first request
+// does not pay for class loading, TLS setup and the JWKS download. Also registered as a CRaC resource so
+// the warmed state is captured in a snapshot and re-primed after restore.
+public class ColdStartPriming implements Resource {
+
+    private static final Logger logger = Logger.getLogger(ColdStartPriming.class.getName());
+
+    private static final String[] HOT_PATH_CLASSES = {
+            "serverless.lib.ResponseGenerator",
+            "serverless.lib.ResponseTransformer",
+            "serverless.lib.TokenVerifier",
+            "serverless.lib.VerifiedPrincipal",
+            "com.auth0.jwt.JWT",
+            "com.auth0.jwt.algorithms.Algorithm",
+            "com.amazonaws.xray.AWSXRay",
+            "software.amazon.awssdk.services.dynamodb.model.AttributeValue",
+            "software.amazon.awssdk.services.dynamodb.model.GetItemRequest",
+            "software.amazon.awssdk.services.dynamodb.model.PutItemRequest",
+            "software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest",
+            "software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest",
+            "software.amazon.awssdk.services.dynamodb.model.QueryRequest",
+            "software.amazon.awssdk.services.dynamodb.model.ScanRequest"
+    };
+
+    // The CRaC global context only keeps weak references to registered resources
+    private static ColdStartPriming instance;
+    private static Boolean enabled;
+
+    private final ConfigManager configManager = new ConfigManager();
+
+    public static synchronized void prime(Gson gson) {
+        if (enabled == null) {
+            enabled = new ConfigManager().getBoolean("PRIMING_ENABLED", false);
+        }
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        if (instance == null) {
+            instance = new ColdStartPriming();
+            instance.primeClients();
+            touchClasses();
+            registerCheckpointHook(instance);
+        }
+        primeGson(gson);
+        logger.info("Cold start priming took " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        logger.info("Taking checkpoint with primed clients and JWKS cache");
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        // Handlers hold on to the snapshotted clients, so they are kept rather than rebuilt. Their pooled
+        // connections are dead by now and older than the idle limit, so the priming call makes the pool open
+        // a fresh one before the first request. The cached keys may have been rotated since the snapshot.
+        primeClients();
+        try {
+            JwksCache.forIssuer((String) configManager.get("ISSUER")).refresh(true);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to refresh JWKS after restore", e);
+        }
+    }
+
+    private void primeClients() {
+        try {
+            String REGION = (String) configManager.get("DYNAMO_REGION");
+            String PRODUCT_TABLE = (String) configManager.get("PRODUCT_TABLE");
+            ClientRegistry.dynamoDb(REGION).describeTable(DescribeTableRequest.builder()
+                    .tableName(PRODUCT_TABLE)
+                    .build());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to prime DynamoDB client", e);
+        }
+        try {
+            JwksCache.forIssuer((String) configManager.get("ISSUER")).warmUp();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to prime JWKS cache", e);
+        }
+    }
+
+    private static void primeGson(Gson gson) {
+        Map<String, Object> sample = new HashMap<>();
+        sample.put("productId", "priming");
+        sample.put("Price", 1.0);
+        sample.put("items", List.of(Map.of("quantity", 1)));
+        String json = gson.toJson(sample);
+        Type mapType = new TypeToken<HashMap<String, Object>>(){}.getType();
+        Map<String, Object> parsed = gson.fromJson(json, mapType);
+        ResponseGenerator.generateResponse(200, gson.toJson(parsed));
+    }
+
+    private static void touchClasses() {
+        ClassLoader classLoader = ColdStartPriming.class.getClassLoader();
+        for (String className : HOT_PATH_CLASSES) {
+            try {
+                Class.forName(className, true, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.fine("Skipping priming of " + className);
+            }
+        }
+    }
+
+    private static void registerCheckpointHook(ColdStartPriming resource) {
+        try {
+            Core.getGlobalContext().register(resource);
+        } catch (Exception | LinkageError e) {
+            logger.log(Level.FINE, "CRaC is not available, skipping checkpoint hook", e);
+        }
+    }
+}
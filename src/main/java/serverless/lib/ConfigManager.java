@@ -5,26 +5,61 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.awssdk.services.ssm.model.GetParameterRequest;
 import software.amazon.awssdk.services.ssm.model.GetParameterResponse;
+import software.amazon.awssdk.services.ssm.model.GetParametersByPathRequest;
+import software.amazon.awssdk.services.ssm.model.GetParametersByPathResponse;
+import software.amazon.awssdk.services.ssm.model.GetParametersRequest;
+import software.amazon.awssdk.services.ssm.model.GetParametersResponse;
+import software.amazon.awssdk.services.ssm.model.Parameter;
+import software.amazon.awssdk.services.ssm.model.ParameterNotFoundException;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ConfigManager {
+    private static final Logger logger = Logger.getLogger(ConfigManager.class.getName());
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long DEFAULT_REFRESH_AHEAD_SECONDS = 30;
+    // GetParameters accepts at most 10 names per call
+    private static final int GET_PARAMETERS_BATCH_SIZE = 10;
+
+    // Resolved parameters are shared by every ConfigManager in the container, so they outlive a single invocation
+    private static final Map<String, CachedParameter> parameterCache = new ConcurrentHashMap<>();
+    private static final Set<String> refreshesInFlight = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile boolean preloaded;
+    private static volatile Set<String> missingKeys = Collections.emptySet();
+
     private Map<String, Object> config;
     private final SsmClient ssmClient;
 
     public ConfigManager() {
         // Initialize the SSM Client, MAY NEED CHANGE FOR DIFFERENT REGION
-        ssmClient = SsmClient.builder()
-                .region(Region.US_EAST_1)
-                .build();
+        ssmClient = ClientRegistry.ssm(Region.US_EAST_1.id());
 
         // Load the default configuration
         loadDefaultConfig();
+
+        // Resolve every known key in as few SSM calls as possible on cold start
+        preloadParameters();
     }
 
     private void loadDefaultConfig() {
@@ -41,29 +76,227 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Keys from config.json that were not found in the Parameter Store during preload,
+     * so their config.json defaults are in effect.
+     */
+    public static Set<String> getMissingKeys() {
+        return missingKeys;
+    }
+
+    private void preloadParameters() {
+        if (preloaded || !Boolean.TRUE.equals(cacheConfig().getOrDefault("PRELOAD", true))) {
+            return;
+        }
+        synchronized (ConfigManager.class) {
+            if (preloaded) {
+                return;
+            }
+            Set<String> keys = new LinkedHashSet<>(config.keySet());
+            keys.remove("PARAMETER_CACHE");
+            try {
+                Map<String, String> values = parameterPrefix().isEmpty() ? fetchParameters(keys) : fetchParametersByPath();
+                long now = System.currentTimeMillis();
+                Set<String> missing = new LinkedHashSet<>();
+                for (String key : keys) {
+                    String value = values.get(key);
+                    if (value == null) {
+                        missing.add(key);
+                    }
+                    parameterCache.put(key, new CachedParameter(value, now, ttlMillis(key), refreshAheadMillis()));
+                }
+                missingKeys = Collections.unmodifiableSet(missing);
+                if (!missing.isEmpty()) {
+                    logger.info("Parameters not found in Parameter Store, using config.json defaults: " + missing);
+                }
+            } catch (Exception e) {
+                // Fall back to resolving keys one by one on first use
+                logger.log(Level.WARNING, "Failed to preload parameters", e);
+            }
+            preloaded = true;
+        }
+    }
+
+    private Map<String, String> fetchParameters(Set<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        List<String> names = new ArrayList<>(keys);
+        for (int start = 0; start < names.size(); start += GET_PARAMETERS_BATCH_SIZE) {
+            GetParametersRequest request = GetParametersRequest.builder()
+                    .names(names.subList(start, Math.min(start + GET_PARAMETERS_BATCH_SIZE, names.size())))
+                    .withDecryption(true)
+                    .build();
+            GetParametersResponse response = ssmClient.getParameters(request);
+            for (Parameter parameter : response.parameters()) {
+                values.put(parameter.name(), parameter.value());
+            }
+        }
+        return values;
+    }
+
+    private Map<String, String> fetchParametersByPath() {
+        String prefix = parameterPrefix();
+        // The hierarchy itself is named without the trailing slash, except for the root "/"
+        String path = prefix.length() > 1 ? prefix.substring(0, prefix.length() - 1) : prefix;
+        Map<String, String> values = new HashMap<>();
+        String nextToken = null;
+        do {
+            GetParametersByPathRequest request = GetParametersByPathRequest.builder()
+                    .path(path)
+                    .recursive(true)
+                    .withDecryption(true)
+                    .nextToken(nextToken)
+                    .build();
+            GetParametersByPathResponse response = ssmClient.getParametersByPath(request);
+            for (Parameter parameter : response.parameters()) {
+                if (parameter.name().startsWith(prefix)) {
+                    values.put(parameter.name().substring(prefix.length()), parameter.value());
+                }
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return values;
+    }
+
     public Object get(String key) {
-        // Try to get the value from the Parameter Store first
-        String parameterValue = getParameter(key);
-        if (parameterValue != null) {
+        long now = System.currentTimeMillis();
+        CachedParameter cached = parameterCache.get(key);
+        if (cached == null || cached.isExpired(now)) {
+            cached = loadParameter(key, cached);
+        } else if (cached.needsRefresh(now)) {
+            scheduleRefresh(key);
+        }
+
+        if (cached.value != null) {
             // If a value is found, use it and update the config map
-            config.put(key, parameterValue);
-            return parameterValue;
+            config.put(key, cached.value);
+            return cached.value;
         }
         // If not found in the Parameter Store, return the value from the config map (default value)
         return config.get(key);
     }
 
+    // Numeric settings are numbers in config.json but strings when they come from the Parameter Store
+    public long getLong(String key, long defaultValue) {
+        Object value = get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return value == null ? defaultValue : (long) Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // Flags are booleans in config.json but strings when they come from the Parameter Store
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value == null || value.toString().trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+    private CachedParameter loadParameter(String key, CachedParameter previous) {
+        long now = System.currentTimeMillis();
+        CachedParameter loaded;
+        try {
+            loaded = new CachedParameter(getParameter(key), now, ttlMillis(key), refreshAheadMillis());
+        } catch (Exception e) {
+            // Serve the last known value while SSM is failing and try again after the refresh window
+            logger.log(Level.WARNING, "Failed to refresh parameter " + key + ", serving cached value", e);
+            String staleValue = previous != null ? previous.value : null;
+            loaded = new CachedParameter(staleValue, now, refreshAheadMillis(), 0);
+        }
+        parameterCache.put(key, loaded);
+        return loaded;
+    }
+
+    private void scheduleRefresh(String key) {
+        if (!refreshesInFlight.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    loadParameter(key, parameterCache.get(key));
+                } finally {
+                    refreshesInFlight.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshesInFlight.remove(key);
+            logger.log(Level.WARNING, "Failed to schedule refresh of parameter " + key, e);
+        }
+    }
+
+    private long ttlMillis(String key) {
+        Map<String, Object> cacheConfig = cacheConfig();
+        Object perKey = cacheConfig.get("TTL_SECONDS");
+        if (perKey instanceof Map && ((Map<?, ?>) perKey).get(key) instanceof Number) {
+            return ((Number) ((Map<?, ?>) perKey).get(key)).longValue() * 1000;
+        }
+        return secondsSetting(cacheConfig, "DEFAULT_TTL_SECONDS", DEFAULT_TTL_SECONDS) * 1000;
+    }
+
+    private long refreshAheadMillis() {
+        return secondsSetting(cacheConfig(), "REFRESH_AHEAD_SECONDS", DEFAULT_REFRESH_AHEAD_SECONDS) * 1000;
+    }
+
+    // "/serverless" and "/serverless/" name the same hierarchy, so the prefix is normalized to end with a slash
+    private String parameterPrefix() {
+        Object prefix = cacheConfig().get("PREFIX");
+        if (!(prefix instanceof String) || ((String) prefix).isEmpty()) {
+            return "";
+        }
+        String normalized = (String) prefix;
+        return normalized.endsWith("/") ? normalized : normalized + "/";
+    }
+
+    private Map<String, Object> cacheConfig() {
+        Object cacheConfig = config.get("PARAMETER_CACHE");
+        return cacheConfig instanceof Map ? (Map<String, Object>) cacheConfig : Map.of();
+    }
+
+    private static long secondsSetting(Map<String, Object> cacheConfig, String name, long defaultValue) {
+        Object value = cacheConfig.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
     private String getParameter(String parameterName) {
         try {
             GetParameterRequest request = GetParameterRequest.builder()
-                    .name(parameterName)
+                    .name(parameterPrefix() + parameterName)
                     .withDecryption(true)
                     .build();
 
             GetParameterResponse response = ssmClient.getParameter(request);
             return response.parameter().value();
-        } catch (Exception e) {
+        } catch (ParameterNotFoundException e) {
             return null;
         }
     }
+
+    private static final class CachedParameter {
+        private final String value;
+        private final long expiresAt;
+        private final long refreshAt;
+
+        private CachedParameter(String value, long loadedAt, long ttlMillis, long refreshAheadMillis) {
+            this.value = value;
+            this.expiresAt = loadedAt + ttlMillis;
+            this.refreshAt = expiresAt - Math.min(refreshAheadMillis, ttlMillis / 2);
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        private boolean needsRefresh(long now) {
+            return now >= refreshAt;
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package serverless.lib;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.JwkException;
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwk.UrlJwkProvider;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class JwksCache {
+
+    private static final Logger logger = Logger.getLogger(JwksCache.class.getName());
+    private static final long REFRESH_INTERVAL_MINUTES = 60;
+    // Unknown key ids trigger a refetch at most this often, so forged kids cannot hammer the JWKS endpoint
+    private static final long MIN_FETCH_INTERVAL_MILLIS = 30_000;
+
+    private static final Map<String, JwksCache> caches = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String issuer;
+    private final UrlJwkProvider provider;
+    private final Map<String, JWTVerifier> verifiers = new ConcurrentHashMap<>();
+    private volatile Map<String, RSAPublicKey> keys = Map.of();
+    private long lastFetch;
+
+    JwksCache(String issuer, UrlJwkProvider provider) {
+        this.issuer = issuer;
+        this.provider = provider;
+    }
+
+    public static JwksCache forIssuer(String issuer) throws MalformedURLException {
+        JwksCache cache = caches.get(issuer);
+        if (cache != null) {
+            return cache;
+        }
+        cache = new JwksCache(issuer, new UrlJwkProvider(jwksUrl(issuer)));
+        JwksCache existing = caches.putIfAbsent(issuer, cache);
+        if (existing != null) {
+            return existing;
+        }
+        JwksCache created = cache;
+        refresher.scheduleAtFixedRate(created::refreshQuietly, REFRESH_INTERVAL_MINUTES, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        return created;
+    }
+
+    // JWKS_URL points the cache at a local stand-in (e.g. file:///tmp/jwks.json) so tokens can be verified offline
+    private static URL jwksUrl(String issuer) throws MalformedURLException {
+        Object override = new ConfigManager().get("JWKS_URL");
+        if (override instanceof String && !((String) override).isEmpty()) {
+            return new URL((String) override);
+        }
+        return new URL(issuer + "/.well-known/jwks.json");
+    }
+
+    public JWTVerifier getVerifier(String keyId) throws JwkException {
+        JWTVerifier verifier = verifiers.get(keyId);
+        if (verifier == null) {
+            verifier = JWT.require(Algorithm.RSA256(getKey(keyId), null))
+                    .withIssuer(issuer)
+                    .build();
+            verifiers.put(keyId, verifier);
+        }
+        return verifier;
+    }
+
+    public RSAPublicKey getKey(String keyId) throws JwkException {
+        RSAPublicKey key = keys.get(keyId);
+        if (key == null) {
+            refresh(false);
+            key = keys.get(keyId);
+            if (key == null) {
+                throw new SigningKeyNotFoundException("No key found in " + issuer + " JWKS with kid " + keyId, null);
+            }
+        }
+        return key;
+    }
+
+    // Fetches the key set and builds a verifier for every key ahead of the first request
+    public void warmUp() throws JwkException {
+        refresh(false);
+        for (String keyId : keys.keySet()) {
+            getVerifier(keyId);
+        }
+    }
+
+    public synchronized void refresh(boolean force) throws JwkException {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastFetch < MIN_FETCH_INTERVAL_MILLIS) {
+            return;
+        }
+        lastFetch = now;
+        Map<String, RSAPublicKey> loaded = new HashMap<>();
+        for (Jwk jwk : provider.getAll()) {
+            if ("RSA".equals(jwk.getType())) {
+                loaded.put(jwk.getId(), (RSAPublicKey) jwk.getPublicKey());
+            }
+        }
+        keys = Map.copyOf(loaded);
+        verifiers.keySet().retainAll(loaded.keySet());
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh(true);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to refresh JWKS for " + issuer + ", keeping cached keys", e);
+        }
+    }
+}
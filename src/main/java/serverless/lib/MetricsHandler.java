@@ -1,12 +1,23 @@
 package serverless.lib;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
 import software.amazon.awssdk.services.cloudwatch.model.*;
 
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class MetricsHandler {
 
+    private static final Logger logger = Logger.getLogger(MetricsHandler.class.getName());
+    // Background publishing shares one daemon thread per container, so callers never wait on PutMetricData
+    private static final ExecutorService publisher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final CloudWatchClient cloudWatch;
     private final String namespace;
     private String lambdaFunctionName;
@@ -14,9 +25,7 @@ public class MetricsHandler {
     public MetricsHandler() {
         ConfigManager configManager = new ConfigManager();
         String REGION = (String) configManager.get("DYNAMO_REGION");
-        this.cloudWatch = CloudWatchClient.builder()
-                .region(Region.of(REGION))
-                .build();
+        this.cloudWatch = ClientRegistry.cloudWatch(REGION);
         this.namespace = "FaultTolerance";
     }
     public void setLambdaFunctionName(String lambdaFunctionName) {
@@ -60,6 +69,26 @@ public class MetricsHandler {
         publishMetric("fallback.calls.total", 1, StandardUnit.COUNT);
     }
 
+//    hits and misses of an in-memory cache since the previous report, plus the resulting hit rate
+    public void publishCacheStatistics(String cacheName, long hits, long misses) {
+        publishMetric(cacheName + ".hits.total", hits, StandardUnit.COUNT);
+        publishMetric(cacheName + ".misses.total", misses, StandardUnit.COUNT);
+        if (hits + misses > 0) {
+            publishMetric(cacheName + ".hitRate", 100.0 * hits / (hits + misses), StandardUnit.PERCENT);
+        }
+    }
+
+//    same as publishCacheStatistics, sent from the background publisher instead of the calling thread
+    public void publishCacheStatisticsAsync(String cacheName, long hits, long misses) {
+        publisher.execute(() -> {
+            try {
+                publishCacheStatistics(cacheName, hits, misses);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to publish " + cacheName + " metrics", e);
+            }
+        });
+    }
+
     private void publishMetric(String metricName, double value, StandardUnit unit) {
         System.out.println("Lambda Function Name: " + lambdaFunctionName);
 
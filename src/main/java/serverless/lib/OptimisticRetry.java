@@ -0,0 +1,91 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// Read-modify-write against items that carry a numeric "Version" attribute. Each attempt reads the item, writes
+// with a condition on the version it read and bumps it; when another writer got there first the condition fails
+// and the attempt is repeated after a short jittered pause, so writers are never serialized behind a lock.
+public class OptimisticRetry {
+
+    private static final Logger logger = Logger.getLogger(OptimisticRetry.class.getName());
+    private static final int MAX_ATTEMPTS = 6;
+
+    public static <T> T run(String description, Supplier<T> attempt) {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                return attempt.get();
+            } catch (ConditionalCheckFailedException e) {
+                if (attemptNumber == MAX_ATTEMPTS) {
+                    throw DynamoDbException.builder()
+                            .message(description + " kept conflicting with concurrent writes, giving up after " + MAX_ATTEMPTS + " attempts")
+                            .cause(e)
+                            .build();
+                }
+                logger.fine(description + " conflicted with a concurrent write, retrying");
+                BatchReader.backoff(attemptNumber);
+            }
+        }
+    }
+
+    // TransactWriteItems, repeated after a short jittered pause while it is cancelled only because another transaction
+    // was writing one of the same items at that moment. Any other cancellation is thrown to the caller.
+    public static void transactWrite(DynamoDbClient dynamoDB, List<TransactWriteItem> transactItems) {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                dynamoDB.transactWriteItems(TransactWriteItemsRequest.builder()
+                        .transactItems(transactItems)
+                        .build());
+                return;
+            } catch (TransactionCanceledException e) {
+                if (attemptNumber == MAX_ATTEMPTS || !onlyConflicts(e.cancellationReasons())) {
+                    throw e;
+                }
+                logger.fine("Transaction conflicted with a concurrent one, retrying");
+                BatchReader.backoff(attemptNumber);
+            }
+        }
+    }
+
+    private static boolean onlyConflicts(List<CancellationReason> reasons) {
+        if (reasons == null) {
+            return false;
+        }
+        boolean conflict = false;
+        for (CancellationReason reason : reasons) {
+            if ("TransactionConflict".equals(reason.code())) {
+                conflict = true;
+            } else if (reason.code() != null && !"None".equals(reason.code())) {
+                return false;
+            }
+        }
+        return conflict;
+    }
+
+    // Condition that the item still has the version it was read with; adds :expectedVersion to the values
+    public static String expectVersion(Map<String, AttributeValue> item, Map<String, AttributeValue> expressionAttributeValues) {
+        AttributeValue version = item != null ? item.get("Version") : null;
+        if (version == null) {
+            return "attribute_not_exists(Version)";
+        }
+        expressionAttributeValues.put(":expectedVersion", version);
+        return "Version = :expectedVersion";
+    }
+
+    // Version of the item, 0 when it was never written with one
+    public static long version(Map<String, AttributeValue> item) {
+        AttributeValue version = item != null ? item.get("Version") : null;
+        return version != null ? Long.parseLong(version.n()) : 0;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class ResponseTransformer {
 
@@ -39,7 +40,21 @@ public class ResponseTransformer {
                 String key = entry.getKey();
                 AttributeValue value = entry.getValue();
 
-                if (key.equals("OrderList")) {
+                if (key.equals("Lines")) {
+                    // productId -> {quantity, unitPrice} map, sorted so that paging is stable
+                    List<Map<String, String>> products = new ArrayList<>();
+                    for (Map.Entry<String, AttributeValue> line : new TreeMap<>(value.m()).entrySet()) {
+                        Map<String, String> product = new HashMap<>();
+                        product.put("productId", line.getKey());
+                        product.put("quantity", line.getValue().m().get("quantity").n());
+                        AttributeValue unitPrice = line.getValue().m().get("unitPrice");
+                        if (unitPrice != null) {
+                            product.put("unitPrice", unitPrice.n());
+                        }
+                        products.add(product);
+                    }
+                    transformedItem.put("products", new Gson().toJson(products));
+                } else if (key.equals("OrderList")) {
                     String orderListStr = value.s();
                     String[] orderList = orderListStr.split(";");
                     List<Map<String, String>> products = new ArrayList<>();
@@ -69,19 +84,8 @@ public class ResponseTransformer {
             if (entry.getValue().s() != null) {
                 // If the attribute is "OrderList", parse the JSON string into a list of objects
                 if (entry.getKey().equals("OrderList")) {
-                    String orderListStr = entry.getValue().s();
-                    JsonParser parser = new JsonParser();
-                    JsonArray orderList = parser.parse(orderListStr).getAsJsonArray();
-                    List<Map<String, String>> products = new ArrayList<>();
-                    for (JsonElement order : orderList) {
-                        JsonObject orderObj = order.getAsJsonObject();
-                        Map<String, String> product = new HashMap<>();
-                        product.put("productName", orderObj.get("productName").getAsString());
-                        product.put("quantity", orderObj.get("quantity").getAsString());
-                        products.add(product);
-                    }
                     Gson gson = new Gson();
-                    itemString.put("OrderList", gson.toJson(products));
+                    itemString.put("OrderList", gson.toJson(transformOrderLines(entry.getValue().s())));
                 } else {
                     itemString.put(entry.getKey(), entry.getValue().s());
                 }
@@ -92,5 +96,48 @@ public class ResponseTransformer {
         return itemString;
     }
 
+    // Orders store their lines as JSON written at checkout; orders placed before server-side pricing may hold
+    // whatever the client sent, including the "id:qty;" cart format, so nothing here is assumed to be present
+    private static List<Map<String, String>> transformOrderLines(String orderListStr) {
+        List<Map<String, String>> products = new ArrayList<>();
+        JsonElement parsed;
+        try {
+            parsed = JsonParser.parseString(orderListStr);
+        } catch (JsonParseException e) {
+            parsed = null;
+        }
+        if (parsed == null || !parsed.isJsonArray()) {
+            for (String order : orderListStr.split(";")) {
+                String[] parts = order.split(":");
+                if (parts.length == 2 && !parts[0].isEmpty()) {
+                    Map<String, String> product = new HashMap<>();
+                    product.put("productName", parts[0]);
+                    product.put("quantity", parts[1]);
+                    products.add(product);
+                }
+            }
+            return products;
+        }
+        for (JsonElement order : parsed.getAsJsonArray()) {
+            if (!order.isJsonObject()) {
+                continue;
+            }
+            JsonObject orderObj = order.getAsJsonObject();
+            Map<String, String> product = new HashMap<>();
+            String productName = stringOrNull(orderObj, "productName");
+            product.put("productName", productName != null ? productName : stringOrNull(orderObj, "productId"));
+            product.put("quantity", stringOrNull(orderObj, "quantity"));
+            String unitPrice = stringOrNull(orderObj, "unitPrice");
+            if (unitPrice != null) {
+                product.put("unitPrice", unitPrice);
+            }
+            products.add(product);
+        }
+        return products;
+    }
 
+    private static String stringOrNull(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
 }
@@ -0,0 +1,89 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Reads every page of a Scan, optionally split into parallel Segment/TotalSegments workers
+public class ScanExecutor {
+
+    private static final Logger logger = Logger.getLogger(ScanExecutor.class.getName());
+    private static final int MAX_SEGMENTS = 16;
+
+    private static final ExecutorService executor = createExecutor();
+
+    public static List<Map<String, AttributeValue>> scanAll(DynamoDbClient dynamoDB, ScanRequest request, int totalSegments) {
+        int segments = Math.max(1, Math.min(totalSegments, MAX_SEGMENTS));
+        if (segments == 1) {
+            return scanSegment(dynamoDB, request);
+        }
+
+        List<Future<List<Map<String, AttributeValue>>>> futures = new ArrayList<>();
+        for (int segment = 0; segment < segments; segment++) {
+            ScanRequest segmentRequest = request.toBuilder()
+                    .segment(segment)
+                    .totalSegments(segments)
+                    .build();
+            futures.add(executor.submit(() -> scanSegment(dynamoDB, segmentRequest)));
+        }
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        try {
+            for (Future<List<Map<String, AttributeValue>>> future : futures) {
+                items.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Interrupted while scanning " + request.tableName(), e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to scan " + request.tableName(), e.getCause());
+        }
+        return items;
+    }
+
+    // Follows LastEvaluatedKey until the segment (or the whole table) has been read
+    private static List<Map<String, AttributeValue>> scanSegment(DynamoDbClient dynamoDB, ScanRequest request) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            ScanResponse scanResponse = dynamoDB.scan(request.toBuilder()
+                    .exclusiveStartKey(lastEvaluatedKey)
+                    .build());
+            items.addAll(scanResponse.items());
+            lastEvaluatedKey = scanResponse.hasLastEvaluatedKey() && !scanResponse.lastEvaluatedKey().isEmpty()
+                    ? scanResponse.lastEvaluatedKey() : null;
+        } while (lastEvaluatedKey != null);
+        return items;
+    }
+
+    // Virtual threads on runtimes that have them (Java 21+), otherwise a fixed pool of daemon threads.
+    // Either way a single scan never runs more than MAX_SEGMENTS workers.
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.log(Level.FINE, "Virtual threads are not available, using a platform thread pool");
+        }
+        return Executors.newFixedThreadPool(MAX_SEGMENTS, runnable -> {
+            Thread thread = new Thread(runnable, "scan-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
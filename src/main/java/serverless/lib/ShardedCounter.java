@@ -0,0 +1,314 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Counters that take more writes than one DynamoDB partition key allows. A counter is spread over shard items that
+// each have their own partition key ("<counter>#1".."<counter>#N" in CounterId), each write ADDs to a randomly chosen
+// one, and readers merge them with one BatchGetItem. "<counter>#0" is the base: it holds the totals the counter was
+// seeded with and marks the counter as initialized. A seeded counter stays seeded, so once a container has seen the
+// base it stops checking for it and an increment touches a single shard.
+// Merged values are cached per container for a few seconds, since readers can tolerate slightly old totals.
+// Every write also stamps its shard with a fresh DirtyToken. A sparse index keyed on it (COUNTER_DIRTY_INDEX) holds
+// only the shards changed since they were last collected, so readDirty finds changed counters without a full Scan.
+public class ShardedCounter {
+
+    private static final int MAX_CACHED_COUNTERS = 10_000;
+    private static final String KEY = "CounterId";
+    private static final String DIRTY = "DirtyToken";
+    private static final String DEFAULT_DIRTY_INDEX = "DirtyToken-index";
+    private static final Map<String, CachedTotals> cache = new ConcurrentHashMap<>();
+    private static final Set<String> seeded = ConcurrentHashMap.newKeySet();
+
+    private final DynamoDbClient dynamoDB;
+    private final String counterTable;
+    private final int shards;
+    private final long cacheTtlMillis;
+    private final String dirtyIndex;
+
+    public ShardedCounter(DynamoDbClient dynamoDB, String counterTable, int shards, long cacheTtlMillis) {
+        this(dynamoDB, counterTable, shards, cacheTtlMillis, DEFAULT_DIRTY_INDEX);
+    }
+
+    public ShardedCounter(DynamoDbClient dynamoDB, String counterTable, int shards, long cacheTtlMillis, String dirtyIndex) {
+        this.dynamoDB = dynamoDB;
+        this.counterTable = counterTable;
+        this.shards = Math.max(1, shards);
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.dirtyIndex = dirtyIndex;
+    }
+
+    // Returns null when no COUNTER_TABLE is configured
+    public static ShardedCounter fromConfig(DynamoDbClient dynamoDB, ConfigManager configManager) {
+        Object counterTable = configManager.get("COUNTER_TABLE");
+        if (!(counterTable instanceof String) || ((String) counterTable).isEmpty()) {
+            return null;
+        }
+        Object dirtyIndex = configManager.get("COUNTER_DIRTY_INDEX");
+        return new ShardedCounter(dynamoDB, (String) counterTable,
+                (int) configManager.getLong("COUNTER_SHARDS", 10),
+                configManager.getLong("COUNTER_CACHE_SECONDS", 5) * 1000,
+                dirtyIndex instanceof String && !((String) dirtyIndex).isEmpty() ? (String) dirtyIndex : DEFAULT_DIRTY_INDEX);
+    }
+
+    // Whether the counter was seeded; only asks the table until the answer is yes
+    public boolean isSeeded(String counterId) {
+        if (seeded.contains(cacheKey(counterId))) {
+            return true;
+        }
+        GetItemResponse base = dynamoDB.getItem(GetItemRequest.builder()
+                .tableName(counterTable)
+                .key(key(counterId, 0))
+                .projectionExpression(KEY)
+                .consistentRead(true)
+                .build());
+        if (!base.hasItem() || base.item().isEmpty()) {
+            return false;
+        }
+        markSeeded(counterId);
+        return true;
+    }
+
+    // Transaction item that fails when the counter was never seeded
+    public TransactWriteItem requireSeeded(String counterId) {
+        return TransactWriteItem.builder()
+                .conditionCheck(ConditionCheck.builder()
+                        .tableName(counterTable)
+                        .key(key(counterId, 0))
+                        .conditionExpression("attribute_exists(" + KEY + ")")
+                        .build())
+                .build();
+    }
+
+    // Transaction item adding the deltas to a random shard; negative deltas decrement
+    public TransactWriteItem increment(String counterId, Map<String, Long> deltas) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        String updateExpression = addExpression(deltas, names, values) + " SET " + DIRTY + " = :dirty";
+        values.put(":dirty", dirtyToken());
+        return TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(counterTable)
+                        .key(key(counterId, randomShard()))
+                        .updateExpression(updateExpression)
+                        .expressionAttributeNames(names)
+                        .expressionAttributeValues(values)
+                        .build())
+                .build();
+    }
+
+    // Adds the deltas only if the counter is seeded; false otherwise
+    public boolean add(String counterId, Map<String, Long> deltas) {
+        if (isSeeded(counterId)) {
+            OptimisticRetry.transactWrite(dynamoDB, List.of(increment(counterId, deltas)));
+        } else {
+            try {
+                OptimisticRetry.transactWrite(dynamoDB, List.of(requireSeeded(counterId), increment(counterId, deltas)));
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.cancellationReasons();
+                if (reasons != null && !reasons.isEmpty() && "ConditionalCheckFailed".equals(reasons.get(0).code())) {
+                    return false;
+                }
+                throw e;
+            }
+            markSeeded(counterId);
+        }
+        cache.remove(cacheKey(counterId));
+        return true;
+    }
+
+    // Transaction item writing the base shard with starting totals; fails when the counter was already seeded
+    public TransactWriteItem seedOnce(String counterId, Map<String, Long> totals) {
+        Map<String, AttributeValue> item = key(counterId, 0);
+        totals.forEach((field, value) -> item.put(field, AttributeValue.builder().n(Long.toString(value)).build()));
+        item.put(DIRTY, dirtyToken());
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(counterTable)
+                        .item(item)
+                        .conditionExpression("attribute_not_exists(" + KEY + ")")
+                        .build())
+                .build();
+    }
+
+    // Merged totals, possibly up to the cache TTL old; null when the counter was never seeded
+    public Map<String, Long> read(String counterId) {
+        CachedTotals cached = cache.get(cacheKey(counterId));
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt < cacheTtlMillis) {
+            return cached.totals;
+        }
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (int shard = 0; shard <= shards; shard++) {
+            keys.add(key(counterId, shard));
+        }
+        Map<String, Long> totals = new HashMap<>();
+        boolean baseFound = false;
+        for (Map<String, AttributeValue> shard : BatchReader.getItemsByKeys(dynamoDB, counterTable, keys, null)) {
+            baseFound |= shard.get(KEY).s().equals(shardId(counterId, 0));
+            merge(totals, shard);
+        }
+        if (!baseFound) {
+            return null;
+        }
+        markSeeded(counterId);
+        if (cache.size() >= MAX_CACHED_COUNTERS) {
+            cache.clear();
+        }
+        cache.put(cacheKey(counterId), new CachedTotals(totals, System.currentTimeMillis()));
+        return totals;
+    }
+
+    // Seeded counters whose id starts with the prefix and that changed since markClean last saw them, with their
+    // merged totals. The sparse dirty index is scanned for the changed shards, then only those counters are read.
+    public List<DirtyCounter> readDirty(String counterIdPrefix, int scanSegments) {
+        ScanRequest scanRequest = ScanRequest.builder()
+                .tableName(counterTable)
+                .indexName(dirtyIndex)
+                .filterExpression("begins_with(" + KEY + ", :prefix)")
+                .expressionAttributeValues(Map.of(":prefix", AttributeValue.builder().s(counterIdPrefix).build()))
+                .build();
+        // Shards beyond the configured count, left over from a larger COUNTER_SHARDS, are read while they are dirty
+        Map<String, Integer> highestShard = new HashMap<>();
+        for (Map<String, AttributeValue> shard : ScanExecutor.scanAll(dynamoDB, scanRequest, scanSegments)) {
+            String shardId = shard.get(KEY).s();
+            int separator = shardId.lastIndexOf('#');
+            if (separator < 0) {
+                continue;
+            }
+            try {
+                highestShard.merge(shardId.substring(0, separator), Integer.parseInt(shardId.substring(separator + 1)), Math::max);
+            } catch (NumberFormatException e) {
+                // Not a shard of a counter
+            }
+        }
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        highestShard.forEach((counterId, highest) -> {
+            for (int shard = 0; shard <= Math.max(shards, highest); shard++) {
+                keys.add(key(counterId, shard));
+            }
+        });
+        Map<String, DirtyCounter> counters = new HashMap<>();
+        for (Map<String, AttributeValue> shard : BatchReader.getItemsByKeys(dynamoDB, counterTable, keys, null)) {
+            String shardId = shard.get(KEY).s();
+            DirtyCounter counter = counters.computeIfAbsent(shardId.substring(0, shardId.lastIndexOf('#')), DirtyCounter::new);
+            counter.seeded |= shardId.equals(shardId(counter.counterId, 0));
+            merge(counter.totals, shard);
+            if (shard.containsKey(DIRTY)) {
+                counter.dirtyTokens.put(shardId, shard.get(DIRTY));
+            }
+        }
+        List<DirtyCounter> dirty = new ArrayList<>();
+        for (DirtyCounter counter : counters.values()) {
+            if (counter.seeded) {
+                dirty.add(counter);
+            }
+        }
+        return dirty;
+    }
+
+    // Takes the counter's shards out of the dirty index, each only if no write stamped it again after readDirty read
+    // it; a shard written in the meantime stays dirty and is collected the next time
+    public void markClean(DirtyCounter counter) {
+        counter.dirtyTokens.forEach((shardId, token) -> {
+            try {
+                dynamoDB.updateItem(UpdateItemRequest.builder()
+                        .tableName(counterTable)
+                        .key(Map.of(KEY, AttributeValue.builder().s(shardId).build()))
+                        .updateExpression("REMOVE " + DIRTY)
+                        .conditionExpression(DIRTY + " = :seen")
+                        .expressionAttributeValues(Map.of(":seen", token))
+                        .build());
+            } catch (ConditionalCheckFailedException e) {
+                // Written again since it was read
+            }
+        });
+    }
+
+    public static String shardId(String counterId, int shard) {
+        return counterId + "#" + shard;
+    }
+
+    private void markSeeded(String counterId) {
+        if (seeded.size() >= MAX_CACHED_COUNTERS) {
+            seeded.clear();
+        }
+        seeded.add(cacheKey(counterId));
+    }
+
+    private int randomShard() {
+        return 1 + ThreadLocalRandom.current().nextInt(shards);
+    }
+
+    private String cacheKey(String counterId) {
+        return counterTable + "/" + counterId;
+    }
+
+    private static void merge(Map<String, Long> totals, Map<String, AttributeValue> shard) {
+        for (Map.Entry<String, AttributeValue> field : shard.entrySet()) {
+            if (field.getValue().n() != null) {
+                totals.merge(field.getKey(), Long.parseLong(field.getValue().n()), Long::sum);
+            }
+        }
+    }
+
+    private static String addExpression(Map<String, Long> deltas, Map<String, String> names, Map<String, AttributeValue> values) {
+        List<String> additions = new ArrayList<>();
+        int index = 0;
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            names.put("#f" + index, delta.getKey());
+            values.put(":d" + index, AttributeValue.builder().n(Long.toString(delta.getValue())).build());
+            additions.add("#f" + index + " :d" + index);
+            index++;
+        }
+        return "ADD " + String.join(", ", additions);
+    }
+
+    private static AttributeValue dirtyToken() {
+        return AttributeValue.builder().s(UUID.randomUUID().toString()).build();
+    }
+
+    private static Map<String, AttributeValue> key(String counterId, int shard) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(KEY, AttributeValue.builder().s(shardId(counterId, shard)).build());
+        return key;
+    }
+
+    public static final class DirtyCounter {
+        private final String counterId;
+        private final Map<String, Long> totals = new HashMap<>();
+        private final Map<String, AttributeValue> dirtyTokens = new HashMap<>();
+        private boolean seeded;
+
+        private DirtyCounter(String counterId) {
+            this.counterId = counterId;
+        }
+
+        public String getCounterId() {
+            return counterId;
+        }
+
+        // Merged totals of all shards as they were read
+        public Map<String, Long> getTotals() {
+            return totals;
+        }
+    }
+
+    private static final class CachedTotals {
+        private final Map<String, Long> totals;
+        private final long loadedAt;
+
+        private CachedTotals(Map<String, Long> totals, long loadedAt) {
+            this.totals = totals;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
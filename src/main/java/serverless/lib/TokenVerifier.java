@@ -1,48 +1,136 @@
 package serverless.lib;
 
-import com.auth0.jwk.Jwk;
 import com.auth0.jwk.JwkException;
-import com.auth0.jwk.JwkProvider;
-import com.auth0.jwk.UrlJwkProvider;
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.security.interfaces.RSAPublicKey;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TokenVerifier {
 
-    public static String verifyToken(String token, String issuer) throws JWTVerificationException, JwkException, MalformedURLException {
-        DecodedJWT decodedJWT = JWT.decode(token);
+    private static final Logger logger = Logger.getLogger(TokenVerifier.class.getName());
+    private static final ConfigManager configManager = new ConfigManager();
+
+    // TOKEN_CACHE_ENABLED=false turns the verified-token cache off, TOKEN_CACHE_SIZE bounds its entries
+    private static final boolean CACHE_ENABLED = configManager.getBoolean("TOKEN_CACHE_ENABLED", true);
+    private static final int CACHE_SIZE = (int) configManager.getLong("TOKEN_CACHE_SIZE", 1000);
+    private static final long METRICS_INTERVAL_MILLIS = configManager.getLong("TOKEN_CACHE_METRICS_SECONDS", 60) * 1000;
+
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    private static volatile long lastPublished = System.currentTimeMillis();
+    private static MetricsHandler metricsHandler;
+    private static final Map<String, CachedToken> verifiedTokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedToken> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public static VerifiedPrincipal verify(String token, String issuer) throws JWTVerificationException, JwkException, MalformedURLException {
+        if (!CACHE_ENABLED) {
+            return verifySignature(token, issuer).principal;
+        }
 
-        // Verify token signature
-        JwkProvider provider = new UrlJwkProvider(new URL(issuer + "/.well-known/jwks.json"));
-        Jwk jwk = provider.get(decodedJWT.getKeyId());
-        Algorithm algorithm = Algorithm.RSA256((RSAPublicKey) jwk.getPublicKey(), null);
-        JWT.require(algorithm)
-                .withIssuer(issuer)
-                .build()
-                .verify(token);
+        String cacheKey = digest(token);
+        CachedToken cached;
+        synchronized (verifiedTokens) {
+            cached = verifiedTokens.get(cacheKey);
+        }
+        if (cached != null && cached.issuer.equals(issuer) && System.currentTimeMillis() < cached.expiresAt) {
+            cacheHits.incrementAndGet();
+            publishMetrics();
+            return cached.principal;
+        }
 
-        return decodedJWT.getClaim("sub").asString();
+        cacheMisses.incrementAndGet();
+        publishMetrics();
+        CachedToken verified = verifySignature(token, issuer);
+        synchronized (verifiedTokens) {
+            if (verified.expiresAt > 0) {
+                verifiedTokens.put(cacheKey, verified);
+            } else {
+                verifiedTokens.remove(cacheKey);
+            }
+        }
+        return verified.principal;
     }
 
-    public static List<String> getGroups(String token, String issuer) throws JWTVerificationException, JwkException, MalformedURLException {
+    // Hands the hit and miss counts since the last report to the background publisher, at most once per
+    // TOKEN_CACHE_METRICS_SECONDS, so verification never waits on CloudWatch
+    private static void publishMetrics() {
+        long now = System.currentTimeMillis();
+        if (now - lastPublished < METRICS_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (TokenVerifier.class) {
+            if (now - lastPublished < METRICS_INTERVAL_MILLIS) {
+                return;
+            }
+            lastPublished = now;
+        }
+        long hitCount = cacheHits.getAndSet(0);
+        long missCount = cacheMisses.getAndSet(0);
+        try {
+            metricsHandler().publishCacheStatisticsAsync("tokenCache", hitCount, missCount);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to queue token cache metrics", e);
+        }
+    }
+
+    private static synchronized MetricsHandler metricsHandler() {
+        if (metricsHandler == null) {
+            metricsHandler = new MetricsHandler();
+            metricsHandler.setLambdaFunctionName(System.getenv("AWS_LAMBDA_FUNCTION_NAME"));
+        }
+        return metricsHandler;
+    }
+
+    private static CachedToken verifySignature(String token, String issuer) throws JWTVerificationException, JwkException, MalformedURLException {
         DecodedJWT decodedJWT = JWT.decode(token);
 
-        // Verify token signature
-        JwkProvider provider = new UrlJwkProvider(new URL(issuer + "/.well-known/jwks.json"));
-        Jwk jwk = provider.get(decodedJWT.getKeyId());
-        Algorithm algorithm = Algorithm.RSA256((RSAPublicKey) jwk.getPublicKey(), null);
-        JWT.require(algorithm)
-                .withIssuer(issuer)
-                .build()
-                .verify(token);
+        // Verify token signature with the cached verifier for the token's key
+        JwksCache.forIssuer(issuer)
+                .getVerifier(decodedJWT.getKeyId())
+                .verify(decodedJWT);
+
+        VerifiedPrincipal principal = new VerifiedPrincipal(
+                decodedJWT.getClaim("sub").asString(),
+                decodedJWT.getClaim("email").asString(),
+                decodedJWT.getClaim("cognito:groups").asList(String.class));
+        Date expiresAt = decodedJWT.getExpiresAt();
+        return new CachedToken(principal, issuer, expiresAt == null ? 0 : expiresAt.getTime());
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class CachedToken {
+        private final VerifiedPrincipal principal;
+        private final String issuer;
+        private final long expiresAt;
 
-        return decodedJWT.getClaim("cognito:groups").asList(String.class);
+        private CachedToken(VerifiedPrincipal principal, String issuer, long expiresAt) {
+            this.principal = principal;
+            this.issuer = issuer;
+            this.expiresAt = expiresAt;
+        }
     }
 }
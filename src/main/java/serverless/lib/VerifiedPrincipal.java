@@ -0,0 +1,33 @@
+package serverless.lib;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class VerifiedPrincipal {
+
+    private final String subject;
+    private final String email;
+    private final List<String> groups;
+
+    public VerifiedPrincipal(String subject, String email, List<String> groups) {
+        this.subject = subject;
+        this.email = email;
+        this.groups = groups == null ? Collections.emptyList() : List.copyOf(groups);
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public List<String> getGroups() {
+        return groups;
+    }
+
+    public boolean isInGroup(String group) {
+        return groups.contains(group);
+    }
+}
@@ -0,0 +1,100 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.Test;
+import serverless.lib.MetricsHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class CatalogResponseCacheTest {
+
+    private static final long TTL = 60_000;
+    private static final long BUDGET = 1_000_000;
+
+    @Test
+    void keysIgnoreSearchCaseAndSurroundingSpaces() {
+        assertEquals(CatalogResponseCache.key(" Clock ", "Timepiece", "Price", "asc", 1, 10, null),
+                CatalogResponseCache.key("clock", "Timepiece", "Price", "ASC", 1, 10, ""));
+    }
+
+    @Test
+    void keysTellPagesCursorsAndOrdersApart() {
+        String first = CatalogResponseCache.key("", "", "Price", "ASC", 1, 10, null);
+
+        assertNotEquals(first, CatalogResponseCache.key("", "", "Price", "ASC", 2, 10, null));
+        assertNotEquals(first, CatalogResponseCache.key("", "", "Price", "ASC", 1, 10, "cursor"));
+        assertNotEquals(first, CatalogResponseCache.key("", "", "Price", "DSC", 1, 10, null));
+        assertNotEquals(first, CatalogResponseCache.key("", "", "Price", "ASC", 1, 20, null));
+    }
+
+    @Test
+    void servesTheBodyForTheSameVersionOnly() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        cache.put("k", 3, "body", BUDGET);
+
+        assertEquals("body", cache.get("k", 3, TTL));
+        assertNull(cache.get("k", 4, TTL));
+        // A version mismatch drops the entry
+        assertNull(cache.get("k", 3, TTL));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        cache.put("k", 1, "body", BUDGET);
+
+        assertNull(cache.get("k", 1, 0));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntriesOverTheByteBudget() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        // Every entry takes 2 * (1 + 9) = 20 bytes
+        long budget = 40;
+        cache.put("a", 1, "123456789", budget);
+        cache.put("b", 1, "123456789", budget);
+        cache.get("a", 1, TTL);
+        cache.put("c", 1, "123456789", budget);
+
+        assertEquals("123456789", cache.get("a", 1, TTL));
+        assertNull(cache.get("b", 1, TTL));
+        assertEquals("123456789", cache.get("c", 1, TTL));
+    }
+
+    @Test
+    void bodiesLargerThanTheBudgetAreNotCached() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        cache.put("k", 1, "123456789", 10);
+
+        assertNull(cache.get("k", 1, TTL));
+    }
+
+    @Test
+    void newerVersionsClearTheCacheAndOlderOnesAreIgnored() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        cache.put("a", 1, "old", BUDGET);
+        cache.put("b", 2, "new", BUDGET);
+        cache.put("c", 1, "stale", BUDGET);
+
+        assertNull(cache.get("a", 1, TTL));
+        assertEquals("new", cache.get("b", 2, TTL));
+        assertNull(cache.get("c", 1, TTL));
+    }
+
+    @Test
+    void publishesHitsAndMissesSinceTheLastReport() {
+        CatalogResponseCache cache = new CatalogResponseCache();
+        MetricsHandler metricsHandler = mock(MetricsHandler.class);
+        cache.put("k", 1, "body", BUDGET);
+        cache.get("k", 1, TTL);
+        cache.get("k", 1, TTL);
+        cache.get("missing", 1, TTL);
+
+        cache.publishMetrics(metricsHandler, 0);
+
+        verify(metricsHandler).publishCacheStatisticsAsync("catalogResponseCache", 2, 1);
+    }
+}
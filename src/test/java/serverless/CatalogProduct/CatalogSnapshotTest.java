@@ -0,0 +1,116 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CatalogSnapshotTest {
+
+    private DynamoDbClient dynamoDB;
+    private CatalogSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("Version", AttributeValue.builder().n("3").build()))
+                .build());
+        when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(product("p1", "Aberdeen Clock", "Timepiece", "20"),
+                        product("p2", "Silver Ring", "Jewelry", "35.5")))
+                .build());
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder().items(List.of()).build());
+        // Refresh on every read, never reload
+        snapshot = new CatalogSnapshot(dynamoDB, "Products", new CatalogVersion(dynamoDB, "CatalogVersion", "Products"),
+                0, Long.MAX_VALUE);
+    }
+
+    @Test
+    void listsRowsWithTheListViewAttributesOnly() {
+        List<Map<String, AttributeValue>> rows = snapshot.list("", "Timepiece");
+
+        assertEquals(1, rows.size());
+        Map<String, AttributeValue> row = rows.get(0);
+        assertEquals("p1", row.get("productId").s());
+        assertEquals("20", row.get("Price").n());
+        assertFalse(row.containsKey("description"));
+        assertEquals(Map.of("productId", "p1", "productName", "Aberdeen Clock", "categoryName", "Timepiece", "Price", "20"),
+                texts(row));
+    }
+
+    @Test
+    void matchesWordPrefixesOfTheName() {
+        assertEquals(1, snapshot.list("clo", "").size());
+        assertEquals(1, snapshot.list("aberdeen CLOCK", "").size());
+        assertEquals(0, snapshot.list("clock ring", "").size());
+    }
+
+    @Test
+    void getReturnsTheFullItem() {
+        Map<String, AttributeValue> item = snapshot.get("p2");
+
+        assertEquals("A ring", item.get("description").s());
+        assertEquals("35.5", item.get("Price").n());
+        assertNull(snapshot.get("p3"));
+    }
+
+    @Test
+    void refreshReplacesOnlyTheChangedProducts() {
+        assertEquals(3, snapshot.version());
+        when(dynamoDB.query(argThat((QueryRequest request) -> request != null
+                && request.expressionAttributeValues().get(":version").n().equals("3"))))
+                .thenReturn(QueryResponse.builder().items(List.of(change(4, "p1"), change(5, "p3"))).build());
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of("Products", List.of(product("p1", "Aberdeen Clock", "Timepiece", "18"))))
+                .build());
+
+        assertEquals(5, snapshot.version());
+        assertEquals("18", snapshot.get("p1").get("Price").n());
+        assertEquals("35.5", snapshot.get("p2").get("Price").n());
+        assertEquals(2, snapshot.list("", "").size());
+    }
+
+    private static Map<String, AttributeValue> product(String productId, String name, String category, String price) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("productId", AttributeValue.builder().s(productId).build());
+        item.put("productName", AttributeValue.builder().s(name).build());
+        item.put("categoryName", AttributeValue.builder().s(category).build());
+        item.put("Price", AttributeValue.builder().n(price).build());
+        if (productId.equals("p2")) {
+            item.put("description", AttributeValue.builder().s("A ring").build());
+        }
+        return item;
+    }
+
+    private static Map<String, AttributeValue> change(long version, String productId) {
+        return Map.of("Seq", AttributeValue.builder().n(String.valueOf(version)).build(),
+                "productId", AttributeValue.builder().s(productId).build());
+    }
+
+    private static Map<String, String> texts(Map<String, AttributeValue> row) {
+        Map<String, String> texts = new HashMap<>();
+        row.forEach((attribute, value) -> texts.put(attribute, value.s() != null ? value.s() : value.n()));
+        return texts;
+    }
+}
@@ -0,0 +1,154 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommentPagesTest {
+
+    @Test
+    void cursorsOnTheTimeIndexResumeAfterTheLastComment() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        Map<String, AttributeValue> lastKey = Map.of(
+                "productId", s("p1"), "UserId", s("u|2"), "CreatedAt", s("2024-05-01T10:00:00Z"));
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(lastKey));
+        CommentPages pages = new CommentPages(dynamoDB, "Comments", "productId-CreatedAt-index");
+
+        String cursor = pages.page("p1", 1, 2, null).getNextCursor();
+        pages.page("p1", 7, 2, cursor);
+
+        QueryRequest resumed = capture(dynamoDB, 2).get(1);
+        assertEquals(lastKey, resumed.exclusiveStartKey());
+        assertEquals("productId-CreatedAt-index", resumed.indexName());
+        assertFalse(resumed.scanIndexForward());
+    }
+
+    @Test
+    void cursorsOnTheTableResumeAfterTheLastUser() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        Map<String, AttributeValue> lastKey = Map.of("productId", s("p1"), "UserId", s("u2"));
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(lastKey));
+        CommentPages pages = new CommentPages(dynamoDB, "Comments", "");
+
+        String cursor = pages.page("p1", 1, 2, null).getNextCursor();
+        pages.page("p1", 1, 2, cursor);
+
+        QueryRequest resumed = capture(dynamoDB, 2).get(1);
+        assertEquals(lastKey, resumed.exclusiveStartKey());
+        assertNull(resumed.indexName());
+    }
+
+    @Test
+    void cursorsNeverCarryTheProductId() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(Map.of("productId", s("p1"), "UserId", s("u2"))));
+        CommentPages pages = new CommentPages(dynamoDB, "Comments", null);
+
+        String cursor = pages.page("p1", 1, 2, null).getNextCursor();
+        pages.page("other", 1, 2, cursor);
+
+        assertEquals("other", capture(dynamoDB, 2).get(1).exclusiveStartKey().get("productId").s());
+    }
+
+    @Test
+    void cursorsFromTheOtherOrderingFallBackToThePageNumber() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(Map.of(
+                "productId", s("p1"), "UserId", s("u2"), "CreatedAt", s("2024-05-01T10:00:00Z"))));
+        String tableCursor = new CommentPages(dynamoDB, "Comments", null).page("p1", 1, 2, null).getNextCursor();
+
+        new CommentPages(dynamoDB, "Comments", "productId-CreatedAt-index").page("p1", 1, 2, tableCursor);
+        new CommentPages(dynamoDB, "Comments", null).page("p1", 1, 2, "%%% not base64");
+
+        List<QueryRequest> requests = capture(dynamoDB, 3);
+        assertFalse(requests.get(1).hasExclusiveStartKey());
+        assertFalse(requests.get(2).hasExclusiveStartKey());
+    }
+
+    @Test
+    void theLastPageHasNoCursor() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder()
+                .items(List.of(Map.of("UserId", s("u1")))).count(1).build());
+
+        CommentPages.Page page = new CommentPages(dynamoDB, "Comments", null).page("p1", 1, 4, null);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void pageNumbersSkipWithAKeyOnlyQuery() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(Map.of("productId", s("p1"), "UserId", s("u2"))));
+
+        new CommentPages(dynamoDB, "Comments", null).page("p1", 3, 2, null);
+
+        // Each response holds two comments, so skipping four takes two key-only reads before the page itself
+        List<QueryRequest> requests = capture(dynamoDB, 3);
+        assertEquals(4, requests.get(0).limit());
+        assertEquals(2, requests.get(1).limit());
+        assertTrue(requests.get(0).projectionExpression().contains("UserId"));
+        assertNull(requests.get(2).projectionExpression());
+    }
+
+    @Test
+    void rejectsPageSizesAndPageNumbersItCannotServe() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        CommentPages pages = new CommentPages(dynamoDB, "Comments", null);
+
+        assertThrows(IllegalArgumentException.class, () -> pages.page("p1", 1, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> pages.page("p1", 1, -3, null));
+        assertThrows(IllegalArgumentException.class, () -> pages.page("p1", 1, CommentPages.MAX_PAGE_SIZE + 1, null));
+        assertThrows(IllegalArgumentException.class, () -> pages.page("p1", 0, 4, null));
+        verify(dynamoDB, never()).query(any(QueryRequest.class));
+    }
+
+    @Test
+    void deepPageNumbersAreServed() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(page(Map.of("productId", s("p1"), "UserId", s("u2"))));
+
+        CommentPages.Page page = new CommentPages(dynamoDB, "Comments", null).page("p1", 40, 2, null);
+
+        // 78 comments to skip, two per response, then the page itself
+        assertEquals(2, page.getItems().size());
+        verify(dynamoDB, times(40)).query(any(QueryRequest.class));
+    }
+
+    private static QueryResponse page(Map<String, AttributeValue> lastEvaluatedKey) {
+        return QueryResponse.builder()
+                .items(List.of(Map.of("UserId", s("u1")), Map.of("UserId", s("u2"))))
+                .count(2)
+                .lastEvaluatedKey(lastEvaluatedKey)
+                .build();
+    }
+
+    private static List<QueryRequest> capture(DynamoDbClient dynamoDB, int count) {
+        ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(dynamoDB, times(count)).query(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
@@ -0,0 +1,107 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductQueryPlannerTest {
+
+    private DynamoDbClient dynamoDB;
+    private ProductQueryPlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDB = mock(DynamoDbClient.class);
+        // Missing indexes are remembered per table for the whole container, so every test gets its own table
+        String productTable = "Products-" + UUID.randomUUID();
+        planner = new ProductQueryPlanner(dynamoDB, productTable,
+                Map.of("Price", "categoryName-Price-index"));
+        when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(product("p1"), product("p2")))
+                .build());
+    }
+
+    @Test
+    void queriesTheCategoryIndexSortedByTheRequestedAttribute() {
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder()
+                .items(List.of(product("p1")))
+                .build());
+
+        ProductQueryPlanner.Result result = planner.execute(planner.plan("", "Games", "Price", "ASC"));
+
+        assertEquals(ProductQueryPlanner.AccessPath.QUERY, result.getAccessPath());
+        assertTrue(result.isSortedByIndex());
+        assertEquals(1, result.getItems().size());
+    }
+
+    @Test
+    void fallsBackToAnUnsortedScanWhenTheIndexIsMissing() {
+        when(dynamoDB.query(any(QueryRequest.class))).thenThrow(ResourceNotFoundException.builder().message("no index").build());
+
+        ProductQueryPlanner.Plan plan = planner.plan("", "Games", "Price", "ASC");
+        ProductQueryPlanner.Result result = planner.execute(plan);
+
+        assertTrue(plan.isSortedByIndex());
+        assertEquals(ProductQueryPlanner.AccessPath.SCAN, result.getAccessPath());
+        assertFalse(result.isSortedByIndex());
+        assertEquals(2, result.getItems().size());
+    }
+
+    @Test
+    void plansAroundAnIndexKnownToBeMissing() {
+        when(dynamoDB.query(any(QueryRequest.class))).thenThrow(ResourceNotFoundException.builder().message("no index").build());
+        planner.execute(planner.plan("", "Games", "Price", "ASC"));
+
+        ProductQueryPlanner.Plan plan = planner.plan("", "Jewelry", "Price", "DSC");
+
+        assertEquals(ProductQueryPlanner.AccessPath.SCAN, plan.getAccessPath());
+        assertFalse(plan.isSortedByIndex());
+    }
+
+    @Test
+    void fallsBackToTheFilteredScanWhenTheSearchIndexTableIsMissing() {
+        ProductQueryPlanner searchPlanner = new ProductQueryPlanner(dynamoDB, "Products-" + UUID.randomUUID(),
+                Map.of(), new ProductSearchIndex(dynamoDB, "SearchIndex"), 1);
+        when(dynamoDB.query(any(QueryRequest.class))).thenThrow(ResourceNotFoundException.builder().message("no table").build());
+
+        ProductQueryPlanner.Plan plan = searchPlanner.plan("clock", "", "Price", "ASC");
+        ProductQueryPlanner.Result result = searchPlanner.execute(plan);
+
+        assertEquals(ProductQueryPlanner.AccessPath.SEARCH_INDEX, plan.getAccessPath());
+        assertEquals(ProductQueryPlanner.AccessPath.SCAN, result.getAccessPath());
+        assertEquals(2, result.getItems().size());
+        assertEquals(ProductQueryPlanner.AccessPath.SCAN, searchPlanner.plan("clock", "", "Price", "ASC").getAccessPath());
+    }
+
+    @Test
+    void scansWithoutCategory() {
+        ProductQueryPlanner.Result result = planner.execute(planner.plan("", "", "Price", "ASC"));
+
+        assertEquals(ProductQueryPlanner.AccessPath.SCAN, result.getAccessPath());
+        verify(dynamoDB, never()).query(any(QueryRequest.class));
+    }
+
+    private static Map<String, AttributeValue> product(String productId) {
+        return Map.of("productId", AttributeValue.builder().s(productId).build(),
+                "categoryName", AttributeValue.builder().s("Games").build());
+    }
+}
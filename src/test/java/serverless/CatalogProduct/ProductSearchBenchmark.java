@@ -0,0 +1,190 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.MicroBenchmark;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Compares name search through the inverted index with the filtered Scan it replaces, on a synthetic catalog, run
+// by hand:
+//   java -cp <test classpath> serverless.CatalogProduct.ProductSearchBenchmark [products] [seconds per case]
+// Both paths go through ProductQueryPlanner against a mocked client that pages like DynamoDB (1 MB per Scan or
+// Query page, 100 keys per BatchGetItem). The interesting number is how much each search reads, since that is what
+// DynamoDB bills and what dominates latency; the local time only covers the work done in this JVM.
+public class ProductSearchBenchmark {
+
+    private static final String PRODUCT_TABLE = "Products";
+    private static final String INDEX_TABLE = "SearchIndex";
+    private static final int PAGE_BYTES = 1024 * 1024;
+    private static final String[] ADJECTIVES = {"Vintage", "Modern", "Rustic", "Compact", "Deluxe", "Classic", "Silver",
+            "Golden", "Wooden", "Handmade", "Portable", "Wireless", "Ergonomic", "Organic", "Heavy", "Slim"};
+    private static final String[] NOUNS = {"Clock", "Ring", "Lamp", "Chair", "Table", "Mug", "Speaker", "Backpack",
+            "Notebook", "Kettle", "Blender", "Jacket", "Scarf", "Watch", "Bottle", "Candle", "Mirror", "Rug"};
+    private static final String[] CATEGORIES = {"Timepiece", "Jewelry", "Home", "Kitchen", "Audio", "Apparel"};
+    private static final String[] SEARCHES = {"clock", "vintage clock", "wire speak", "golden ring 42", "zzz"};
+
+    private final Map<String, Map<String, AttributeValue>> products = new HashMap<>();
+    private final List<Map<String, AttributeValue>> productList = new ArrayList<>();
+    private final Map<String, List<String>> postings = new HashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int productCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long measureMillis = (args.length > 1 ? Long.parseLong(args[1]) : 2) * 1000;
+        new ProductSearchBenchmark().run(productCount, measureMillis);
+    }
+
+    private void run(int productCount, long measureMillis) throws Exception {
+        long buildStart = System.nanoTime();
+        long postingCount = generateCatalog(productCount, new Random(42));
+        System.out.printf("%d products, %d postings for %d terms, built in %d ms%n%n", productCount, postingCount,
+                postings.size(), (System.nanoTime() - buildStart) / 1_000_000);
+
+        DynamoDbClient dynamoDB = simulatedTables();
+        ProductQueryPlanner scanPlanner = new ProductQueryPlanner(dynamoDB, PRODUCT_TABLE, Map.of(), null, 1);
+        ProductQueryPlanner indexPlanner = new ProductQueryPlanner(dynamoDB, PRODUCT_TABLE, Map.of(),
+                new ProductSearchIndex(dynamoDB, INDEX_TABLE), 1);
+
+        System.out.printf("%-16s %-12s %8s %10s %12s %12s%n", "search", "path", "matches", "requests", "KB read", "ms/search");
+        for (String search : SEARCHES) {
+            measure(search, "scan", scanPlanner, measureMillis);
+            measure(search, "index", indexPlanner, measureMillis);
+        }
+    }
+
+    private void measure(String search, String path, ProductQueryPlanner planner, long measureMillis) throws Exception {
+        requests.set(0);
+        bytesRead.set(0);
+        int matches = planner.execute(planner.plan(search, "", "Price", "ASC")).getItems().size();
+        long searchRequests = requests.get();
+        long searchBytes = bytesRead.get();
+        double micros = MicroBenchmark.microsPerCall(
+                () -> planner.execute(planner.plan(search, "", "Price", "ASC")), measureMillis / 4, measureMillis);
+        System.out.printf("%-16s %-12s %8d %10d %12d %12.2f%n", search, path, matches, searchRequests,
+                searchBytes / 1024, micros / 1000);
+    }
+
+    private long generateCatalog(int productCount, Random random) {
+        long postingCount = 0;
+        for (int i = 0; i < productCount; i++) {
+            String productId = String.format("p%07d", i);
+            String productName = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + NOUNS[random.nextInt(NOUNS.length)] + " " + random.nextInt(1000);
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("productId", s(productId));
+            item.put("productName", s(productName));
+            item.put("categoryName", s(CATEGORIES[random.nextInt(CATEGORIES.length)]));
+            item.put("imageURL", s("https://images.example/" + productId + ".jpg"));
+            item.put("description", s("A " + productName.toLowerCase() + " for everyday use, ".repeat(4)));
+            item.put("Price", AttributeValue.builder().n(Integer.toString(5 + random.nextInt(500))).build());
+            products.put(productId, item);
+            productList.add(item);
+            for (String term : ProductSearchIndex.indexTerms(productName)) {
+                postings.computeIfAbsent(term, t -> new ArrayList<>()).add(productId);
+                postingCount++;
+            }
+        }
+        return postingCount;
+    }
+
+    private DynamoDbClient simulatedTables() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.scan(any(ScanRequest.class))).thenAnswer(invocation -> scan(invocation.getArgument(0)));
+        when(dynamoDB.query(any(QueryRequest.class))).thenAnswer(invocation -> query(invocation.getArgument(0)));
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> batchGet(invocation.getArgument(0)));
+        return dynamoDB;
+    }
+
+    // Reads items in table order until a page is full; the filter only decides what is returned, not what is read
+    private ScanResponse scan(ScanRequest request) {
+        requests.incrementAndGet();
+        int position = request.hasExclusiveStartKey() ? Integer.parseInt(request.exclusiveStartKey().get("pos").n()) : 0;
+        List<String> words = new ArrayList<>();
+        request.expressionAttributeValues().forEach((name, value) -> {
+            if (name.startsWith(":val")) {
+                words.add(value.s());
+            }
+        });
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        int pageBytes = 0;
+        while (position < productList.size() && pageBytes < PAGE_BYTES) {
+            Map<String, AttributeValue> item = productList.get(position++);
+            pageBytes += size(item);
+            String productName = item.get("productName").s();
+            if (words.stream().allMatch(productName::contains)) {
+                items.add(item);
+            }
+        }
+        bytesRead.addAndGet(pageBytes);
+        ScanResponse.Builder response = ScanResponse.builder().items(items);
+        if (position < productList.size()) {
+            response.lastEvaluatedKey(Map.of("pos", AttributeValue.builder().n(Integer.toString(position)).build()));
+        }
+        return response.build();
+    }
+
+    private QueryResponse query(QueryRequest request) {
+        requests.incrementAndGet();
+        String term = request.expressionAttributeValues().get(":term").s();
+        List<String> productIds = postings.getOrDefault(term, List.of());
+        int position = request.hasExclusiveStartKey() ? Integer.parseInt(request.exclusiveStartKey().get("pos").n()) : 0;
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        int pageBytes = 0;
+        while (position < productIds.size() && pageBytes < PAGE_BYTES) {
+            String productId = productIds.get(position++);
+            pageBytes += "term".length() + term.length() + "productId".length() + productId.length();
+            items.add(Map.of("productId", s(productId)));
+        }
+        bytesRead.addAndGet(pageBytes);
+        QueryResponse.Builder response = QueryResponse.builder().items(items);
+        if (position < productIds.size()) {
+            response.lastEvaluatedKey(Map.of("pos", AttributeValue.builder().n(Integer.toString(position)).build()));
+        }
+        return response.build();
+    }
+
+    private BatchGetItemResponse batchGet(BatchGetItemRequest request) {
+        requests.incrementAndGet();
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (Map<String, AttributeValue> key : request.requestItems().get(PRODUCT_TABLE).keys()) {
+            Map<String, AttributeValue> item = products.get(key.get("productId").s());
+            if (item != null) {
+                // Each item read is billed in 4 KB units, whatever the projection
+                bytesRead.addAndGet(((size(item) + 4095) / 4096) * 4096L);
+                items.add(item);
+            }
+        }
+        return BatchGetItemResponse.builder().responses(Map.of(PRODUCT_TABLE, items)).build();
+    }
+
+    private static int size(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            AttributeValue value = attribute.getValue();
+            size += attribute.getKey().length() + (value.s() != null ? value.s().length() : value.n().length());
+        }
+        return size;
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
@@ -0,0 +1,105 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductSearchIndexTest {
+
+    @Test
+    void tokenizeFoldsCaseAndStripsAccents() {
+        assertEquals(List.of("cafe", "creme", "brulee"), ProductSearchIndex.tokenize("Caf\u00e9 CR\u00c8ME-br\u00fbl\u00e9e"));
+    }
+
+    @Test
+    void tokenizeDropsSingleCharactersAndTruncatesLongWords() {
+        assertEquals(List.of("clock", "abcdefghijklmnopqrst"),
+                ProductSearchIndex.tokenize("a Clock, x abcdefghijklmnopqrstuvwxyz!"));
+    }
+
+    @Test
+    void tokenizeOfNullIsEmpty() {
+        assertTrue(ProductSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void indexTermsArePrefixesOfEveryWord() {
+        assertEquals(Set.of("ab", "abe", "aber", "cl", "clo", "cloc", "clock"),
+                ProductSearchIndex.indexTerms("Aber Clock"));
+    }
+
+    @Test
+    void canSearchNeedsAtLeastOneTerm() {
+        ProductSearchIndex index = new ProductSearchIndex(mock(DynamoDbClient.class), "Index");
+
+        assertTrue(index.canSearch("cl"));
+        assertFalse(index.canSearch("a - b"));
+    }
+
+    @Test
+    void searchIntersectsThePostingsOfEveryWord() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.query(argThat((QueryRequest request) -> request != null && termOf(request).equals("clock"))))
+                .thenReturn(postings("p1", "p2", "p3"));
+        when(dynamoDB.query(argThat((QueryRequest request) -> request != null && termOf(request).equals("ab"))))
+                .thenReturn(postings("p2", "p3", "p4"));
+
+        Set<String> matches = new ProductSearchIndex(dynamoDB, "Index").search("Clock ab");
+
+        assertEquals(Set.of("p2", "p3"), matches);
+    }
+
+    @Test
+    void updateWritesOnlyTheTermsThatChanged() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(BatchWriteItemResponse.builder().build());
+
+        new ProductSearchIndex(dynamoDB, "Index").update("p1", "Red Clock", "Red Watch");
+
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDB).batchWriteItem(captor.capture());
+        List<String> deleted = new ArrayList<>();
+        List<String> put = new ArrayList<>();
+        for (WriteRequest writeRequest : captor.getValue().requestItems().get("Index")) {
+            if (writeRequest.deleteRequest() != null) {
+                deleted.add(writeRequest.deleteRequest().key().get("term").s());
+            } else {
+                put.add(writeRequest.putRequest().item().get("term").s());
+            }
+        }
+        assertEquals(List.of("cl", "clo", "cloc", "clock"), deleted);
+        assertEquals(List.of("wa", "wat", "watc", "watch"), put);
+    }
+
+    private static String termOf(QueryRequest request) {
+        return request.expressionAttributeValues().get(":term").s();
+    }
+
+    private static QueryResponse postings(String... productIds) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (String productId : productIds) {
+            items.add(Map.of("productId", AttributeValue.builder().s(productId).build()));
+        }
+        return QueryResponse.builder().items(items).build();
+    }
+}
@@ -0,0 +1,309 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import serverless.lib.ShardedCounter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RatingAggregatesTest {
+
+    @Test
+    void concurrentFirstRatingsAreEachCountedOnce() throws Exception {
+        InMemoryRatingTables tables = new InMemoryRatingTables();
+        RatingAggregates aggregates = new RatingAggregates(tables.client(), "Products", "Comments", null);
+        // Both writers find no aggregates and count the comments before either rebuild is written
+        tables.countBarrier = new CyclicBarrier(2);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Boolean> first = pool.submit(() -> aggregates.write(tables.putComment("u1", 4), "p1", 4, 1));
+        Future<Boolean> second = pool.submit(() -> aggregates.write(tables.putComment("u2", 5), "p1", 5, 1));
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(2, tables.comments.size());
+        assertEquals("9", tables.product.get("RatingSum").n());
+        assertEquals("2", tables.product.get("RatingCount").n());
+        assertEquals("1", tables.product.get("Stars4").n());
+        assertEquals("1", tables.product.get("Stars5").n());
+    }
+
+    @Test
+    void firstRatingRebuildsFromTheCommentsAlreadyThere() {
+        InMemoryRatingTables tables = new InMemoryRatingTables();
+        tables.comments.put("legacy", 2);
+        RatingAggregates aggregates = new RatingAggregates(tables.client(), "Products", "Comments", null);
+
+        assertTrue(aggregates.write(tables.putComment("u1", 5), "p1", 5, 1));
+        assertTrue(aggregates.write(tables.putComment("u2", 3), "p1", 3, 1));
+
+        assertEquals("10", tables.product.get("RatingSum").n());
+        assertEquals("3", tables.product.get("RatingCount").n());
+    }
+
+    @Test
+    void commentOnAMissingProductIsNotWritten() {
+        InMemoryRatingTables tables = new InMemoryRatingTables();
+        tables.product.clear();
+        RatingAggregates aggregates = new RatingAggregates(tables.client(), "Products", "Comments", null);
+
+        assertFalse(aggregates.write(tables.putComment("u1", 5), "p1", 5, 1));
+        assertTrue(tables.comments.isEmpty());
+    }
+
+    @Test
+    void secondReviewReportsTheCommentCondition() {
+        InMemoryRatingTables tables = new InMemoryRatingTables();
+        RatingAggregates aggregates = new RatingAggregates(tables.client(), "Products", "Comments", null);
+        assertTrue(aggregates.write(tables.putComment("u1", 5), "p1", 5, 1));
+
+        try {
+            aggregates.write(tables.putComment("u1", 1), "p1", 1, 1);
+            fail("A second review by the same user was written");
+        } catch (TransactionCanceledException e) {
+            assertEquals("ConditionalCheckFailed", e.cancellationReasons().get(0).code());
+        }
+        assertEquals("1", tables.product.get("RatingCount").n());
+    }
+
+    @Test
+    void seedLostToAConcurrentWriterAppliesTheDeltaInstead() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        String counterTable = "Counters-" + UUID.randomUUID();
+        RatingAggregates aggregates = new RatingAggregates(dynamoDB, "Products", "Comments",
+                new ShardedCounter(dynamoDB, counterTable, 4, 60_000));
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            GetItemRequest request = invocation.getArgument(0);
+            return "Products".equals(request.tableName())
+                    ? GetItemResponse.builder().item(Map.of("productId", s("p1"))).build()
+                    : GetItemResponse.builder().build();
+        });
+        when(dynamoDB.query(any(QueryRequest.class))).thenReturn(QueryResponse.builder()
+                .items(List.of(Map.of("Rating", n(3)))).build());
+        when(dynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(cancelled("None", "ConditionalCheckFailed", "None"))
+                .thenThrow(cancelled("None", "None", "ConditionalCheckFailed"))
+                .thenReturn(TransactWriteItemsResponse.builder().build());
+
+        TransactWriteItem putComment = TransactWriteItem.builder()
+                .put(Put.builder().tableName("Comments").item(Map.of("UserId", s("u1"), "Rating", n(5))).build())
+                .build();
+        assertTrue(aggregates.write(putComment, "p1", 5, 1));
+
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDB, times(3)).transactWriteItems(captor.capture());
+        Put seed = captor.getAllValues().get(1).transactItems().get(2).put();
+        assertEquals(counterTable, seed.tableName());
+        assertEquals("8", seed.item().get("RatingSum").n());
+        assertEquals("2", seed.item().get("RatingCount").n());
+        // The winner's base is left alone; the comment goes in with this rating's delta on one shard
+        List<TransactWriteItem> retried = captor.getAllValues().get(2).transactItems();
+        assertEquals(putComment, retried.get(0));
+        Update increment = retried.get(retried.size() - 1).update();
+        assertEquals(counterTable, increment.tableName());
+        assertTrue(increment.updateExpression().startsWith("ADD "));
+        assertNull(retried.get(retried.size() - 1).put());
+    }
+
+    @Test
+    void rollUpWritesOnlyChangedProductsAndMarksEveryCounterClean() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        String counterTable = "Counters-" + UUID.randomUUID();
+        RatingAggregates aggregates = new RatingAggregates(dynamoDB, "Products", "Comments",
+                new ShardedCounter(dynamoDB, counterTable, 1, 60_000));
+        when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(
+                        Map.of("CounterId", s("product#changed#1"), "DirtyToken", s("a")),
+                        Map.of("CounterId", s("product#same#1"), "DirtyToken", s("b"))))
+                .build());
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest request = invocation.getArgument(0);
+            if (request.requestItems().containsKey(counterTable)) {
+                return BatchGetItemResponse.builder().responses(Map.of(counterTable, List.of(
+                        Map.of("CounterId", s("product#changed#0"), "RatingSum", n(4), "RatingCount", n(1), "Stars4", n(1)),
+                        Map.of("CounterId", s("product#changed#1"), "RatingSum", n(5), "RatingCount", n(1), "Stars5", n(1), "DirtyToken", s("a")),
+                        Map.of("CounterId", s("product#same#0"), "RatingSum", n(3), "RatingCount", n(1), "Stars3", n(1)),
+                        Map.of("CounterId", s("product#same#1"), "DirtyToken", s("b"))))).build();
+            }
+            return BatchGetItemResponse.builder().responses(Map.of("Products", List.of(
+                    Map.of("productId", s("changed"), "RatingSum", n(4), "RatingCount", n(1), "Stars4", n(1)),
+                    Map.of("productId", s("same"), "RatingSum", n(3), "RatingCount", n(1), "Stars3", n(1))))).build();
+        });
+
+        assertEquals(List.of("changed"), aggregates.rollUpCounters(1));
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDB, times(3)).updateItem(captor.capture());
+        List<UpdateItemRequest> products = new ArrayList<>();
+        List<String> cleaned = new ArrayList<>();
+        for (UpdateItemRequest request : captor.getAllValues()) {
+            if ("Products".equals(request.tableName())) {
+                products.add(request);
+            } else {
+                cleaned.add(request.key().get("CounterId").s());
+            }
+        }
+        assertEquals(1, products.size());
+        assertEquals("9", products.get(0).expressionAttributeValues().get(":sum").n());
+        assertEquals(Set.of("product#changed#1", "product#same#1"), Set.copyOf(cleaned));
+    }
+
+    private static TransactionCanceledException cancelled(String... codes) {
+        List<CancellationReason> reasons = new ArrayList<>();
+        for (String code : codes) {
+            reasons.add(CancellationReason.builder().code(code).build());
+        }
+        return TransactionCanceledException.builder().message("cancelled").cancellationReasons(reasons).build();
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(long value) {
+        return AttributeValue.builder().n(Long.toString(value)).build();
+    }
+
+    // One product and its comments, with transactions applied atomically and all-or-nothing the way DynamoDB does,
+    // for exactly the conditions and update expressions RatingAggregates writes
+    private static final class InMemoryRatingTables {
+        private final Map<String, Integer> comments = new HashMap<>();
+        private final Map<String, AttributeValue> product = new HashMap<>(Map.of("productId", s("p1")));
+        private volatile CyclicBarrier countBarrier;
+
+        TransactWriteItem putComment(String userId, int rating) {
+            return TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName("Comments")
+                            .item(Map.of("UserId", s(userId), "productId", s("p1"), "Rating", n(rating)))
+                            .conditionExpression("attribute_not_exists(UserId)")
+                            .build())
+                    .build();
+        }
+
+        DynamoDbClient client() {
+            DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+            when(dynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                    .thenAnswer(invocation -> transact(invocation.getArgument(0)));
+            when(dynamoDB.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+                QueryResponse response = query();
+                CyclicBarrier barrier = countBarrier;
+                if (barrier != null) {
+                    barrier.await(10, TimeUnit.SECONDS);
+                }
+                return response;
+            });
+            when(dynamoDB.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> getProduct());
+            return dynamoDB;
+        }
+
+        private synchronized QueryResponse query() {
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            comments.values().forEach(rating -> items.add(Map.of("Rating", n(rating))));
+            return QueryResponse.builder().items(items).build();
+        }
+
+        private synchronized GetItemResponse getProduct() {
+            return GetItemResponse.builder().item(new HashMap<>(product)).build();
+        }
+
+        private synchronized TransactWriteItemsResponse transact(TransactWriteItemsRequest request) {
+            List<CancellationReason> reasons = new ArrayList<>();
+            boolean cancelled = false;
+            for (TransactWriteItem item : request.transactItems()) {
+                boolean holds = item.put() != null ? commentConditionHolds(item.put()) : productConditionHolds(item.update());
+                reasons.add(CancellationReason.builder().code(holds ? "None" : "ConditionalCheckFailed").build());
+                cancelled |= !holds;
+            }
+            if (cancelled) {
+                throw TransactionCanceledException.builder().message("cancelled").cancellationReasons(reasons).build();
+            }
+            for (TransactWriteItem item : request.transactItems()) {
+                if (item.put() != null) {
+                    comments.put(item.put().item().get("UserId").s(), Integer.parseInt(item.put().item().get("Rating").n()));
+                } else {
+                    updateProduct(item.update());
+                }
+            }
+            return TransactWriteItemsResponse.builder().build();
+        }
+
+        private boolean commentConditionHolds(Put put) {
+            return !comments.containsKey(put.item().get("UserId").s());
+        }
+
+        private boolean productConditionHolds(Update update) {
+            switch (update.conditionExpression()) {
+                case "attribute_exists(RatingCount)":
+                    return product.containsKey("RatingCount");
+                case "attribute_exists(productId) AND attribute_not_exists(RatingCount)":
+                    return product.containsKey("productId") && !product.containsKey("RatingCount");
+                default:
+                    throw new IllegalArgumentException("Unexpected condition " + update.conditionExpression());
+            }
+        }
+
+        // "SET a = :x, b = :y ADD c :z, d :w", either clause optional
+        private void updateProduct(Update update) {
+            String expression = update.updateExpression();
+            int add = expression.indexOf("ADD ");
+            String setClause = expression.startsWith("SET ") ? expression.substring(4, add < 0 ? expression.length() : add) : "";
+            String addClause = add < 0 ? "" : expression.substring(add + 4);
+            for (String assignment : setClause.split(",")) {
+                if (!assignment.isBlank()) {
+                    String[] parts = assignment.split("=");
+                    product.put(parts[0].trim(), update.expressionAttributeValues().get(parts[1].trim()));
+                }
+            }
+            for (String addition : addClause.split(",")) {
+                if (!addition.isBlank()) {
+                    String[] parts = addition.trim().split(" ");
+                    AttributeValue current = product.get(parts[0]);
+                    double value = (current != null ? Double.parseDouble(current.n()) : 0)
+                            + Double.parseDouble(update.expressionAttributeValues().get(parts[1]).n());
+                    product.put(parts[0], n((long) value));
+                }
+            }
+        }
+    }
+}
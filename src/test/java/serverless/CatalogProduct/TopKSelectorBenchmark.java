@@ -0,0 +1,61 @@
+package serverless.CatalogProduct;
+
+import serverless.lib.MicroBenchmark;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Compares TopKSelector with the boxed full sort the listing used before, run by hand:
+//   java -cp <test classpath> serverless.CatalogProduct.TopKSelectorBenchmark [items] [page size] [seconds per case]
+// The baseline is the old code path: sort the whole list with Comparator.comparing(Double.parseDouble), reverse it
+// for descending order and take subList for the page.
+public class TopKSelectorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long measureMillis = (args.length > 2 ? Long.parseLong(args[2]) : 2) * 1000;
+
+        List<Map<String, AttributeValue>> items = randomProducts(itemCount, new Random(42));
+        System.out.printf("%d items, page size %d%n", itemCount, pageSize);
+        for (int page : new int[]{1, 10, 100}) {
+            for (boolean descending : new boolean[]{false, true}) {
+                String label = "page " + page + (descending ? " DSC" : " ASC");
+                MicroBenchmark.report(label + " full sort + subList", MicroBenchmark.microsPerCall(
+                        () -> fullSort(items, "Price", descending, page, pageSize), measureMillis / 2, measureMillis));
+                MicroBenchmark.report(label + " TopKSelector", MicroBenchmark.microsPerCall(
+                        () -> TopKSelector.select(items, "Price", descending, false, page, pageSize, null).getItems(),
+                        measureMillis / 2, measureMillis));
+            }
+        }
+    }
+
+    private static List<Map<String, AttributeValue>> fullSort(List<Map<String, AttributeValue>> items, String sortBy,
+                                                              boolean descending, int page, int pageSize) {
+        List<Map<String, AttributeValue>> sortedItems = new ArrayList<>(items);
+        sortedItems.sort(Comparator.comparing(item -> Double.parseDouble(item.get(sortBy).n())));
+        if (descending) {
+            Collections.reverse(sortedItems);
+        }
+        int start = Math.min((page - 1) * pageSize, sortedItems.size());
+        int end = Math.min(start + pageSize, sortedItems.size());
+        return sortedItems.subList(start, end);
+    }
+
+    private static List<Map<String, AttributeValue>> randomProducts(int count, Random random) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("productId", AttributeValue.builder().s(String.format("p%07d", i)).build());
+            item.put("Price", AttributeValue.builder().n(String.format("%d.%02d", random.nextInt(1000), random.nextInt(100))).build());
+            items.add(item);
+        }
+        return items;
+    }
+}
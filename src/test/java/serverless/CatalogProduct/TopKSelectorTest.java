@@ -0,0 +1,129 @@
+package serverless.CatalogProduct;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TopKSelectorTest {
+
+    @Test
+    void numberedPagesMatchAFullSort() {
+        List<Map<String, AttributeValue>> items = randomProducts(57, new Random(7));
+        for (boolean descending : new boolean[]{false, true}) {
+            List<String> expected = sortedIds(items, "Price", descending);
+            for (int page = 1; page <= 9; page++) {
+                TopKSelector.Page selected = TopKSelector.select(items, "Price", descending, false, page, 7, null);
+
+                int start = Math.min((page - 1) * 7, items.size());
+                assertEquals(expected.subList(start, Math.min(start + 7, items.size())), ids(selected.getItems()));
+                assertEquals(start, selected.getStart());
+                assertEquals(start + selected.getItems().size(), selected.getEnd());
+            }
+        }
+    }
+
+    @Test
+    void followingCursorsVisitsEveryItemOnceInOrder() {
+        List<Map<String, AttributeValue>> items = randomProducts(40, new Random(11));
+        List<String> visited = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TopKSelector.Page selected = TopKSelector.select(items, "AverageRating", true, false, 1, 6, cursor);
+            assertEquals(visited.size(), selected.getStart());
+            visited.addAll(ids(selected.getItems()));
+            cursor = selected.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(sortedIds(items, "AverageRating", true), visited);
+        assertEquals(7, pages);
+    }
+
+    @Test
+    void itemsWithoutTheSortKeyComeLast() {
+        List<Map<String, AttributeValue>> items = List.of(product("a", null), product("b", "3"), product("c", "1"));
+
+        TopKSelector.Page selected = TopKSelector.select(items, "Price", false, false, 1, 3, null);
+
+        assertEquals(List.of("c", "b", "a"), ids(selected.getItems()));
+        assertNull(selected.getNextCursor());
+    }
+
+    @Test
+    void alreadyOrderedItemsArePagedByOffset() {
+        List<Map<String, AttributeValue>> items = List.of(product("z", "9"), product("y", "1"), product("x", "5"));
+
+        TopKSelector.Page first = TopKSelector.select(items, "Price", false, true, 1, 2, null);
+        TopKSelector.Page second = TopKSelector.select(items, "Price", false, true, 1, 2, first.getNextCursor());
+
+        assertEquals(List.of("z", "y"), ids(first.getItems()));
+        assertNotNull(first.getNextCursor());
+        assertEquals(List.of("x"), ids(second.getItems()));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void unreadableCursorsFallBackToThePageNumber() {
+        List<Map<String, AttributeValue>> items = randomProducts(10, new Random(3));
+
+        TopKSelector.Page selected = TopKSelector.select(items, "Price", false, false, 2, 4, "not a cursor!");
+
+        assertEquals(sortedIds(items, "Price", false).subList(4, 8), ids(selected.getItems()));
+    }
+
+    @Test
+    void pagesPastTheEndAreEmpty() {
+        List<Map<String, AttributeValue>> items = randomProducts(5, new Random(5));
+
+        TopKSelector.Page selected = TopKSelector.select(items, "Price", false, false, 4, 2, null);
+
+        assertEquals(List.of(), selected.getItems());
+        assertNull(selected.getNextCursor());
+    }
+
+    private static List<Map<String, AttributeValue>> randomProducts(int count, Random random) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, AttributeValue> item = product(String.format("p%03d", i), String.valueOf(random.nextInt(20)));
+            // Few distinct ratings, so ties have to be broken by productId
+            item.put("AverageRating", AttributeValue.builder().n(String.valueOf(random.nextInt(5))).build());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static Map<String, AttributeValue> product(String productId, String price) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("productId", AttributeValue.builder().s(productId).build());
+        if (price != null) {
+            item.put("Price", AttributeValue.builder().n(price).build());
+        }
+        return item;
+    }
+
+    private static List<String> sortedIds(List<Map<String, AttributeValue>> items, String sortBy, boolean descending) {
+        Comparator<Map<String, AttributeValue>> byKey = Comparator.comparingDouble(item -> Double.parseDouble(item.get(sortBy).n()));
+        List<Map<String, AttributeValue>> sorted = new ArrayList<>(items);
+        sorted.sort((descending ? byKey.reversed() : byKey).thenComparing(item -> item.get("productId").s()));
+        return ids(sorted);
+    }
+
+    private static List<String> ids(List<Map<String, AttributeValue>> items) {
+        List<String> ids = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items) {
+            ids.add(item.get("productId").s());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,89 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CartLinesTest {
+
+    @Test
+    void readsTheLinesMapOrderedByProductId() {
+        Map<String, AttributeValue> cart = cart(Map.of(
+                "p2", CartLines.lineValue(1, 35.5),
+                "p1", CartLines.lineValue(3, 20.0)));
+
+        Map<String, CartLines.Line> lines = CartLines.read(cart);
+
+        assertEquals(List.of("p1", "p2"), List.copyOf(lines.keySet()));
+        assertEquals(3, lines.get("p1").getQuantity());
+        assertEquals(20.0, lines.get("p1").getUnitPrice());
+        assertFalse(CartLines.isLegacy(cart));
+    }
+
+    @Test
+    void readsALegacyOrderListWithoutPrices() {
+        Map<String, AttributeValue> cart = new HashMap<>();
+        cart.put("UserId", AttributeValue.builder().s("u1").build());
+        cart.put("OrderList", AttributeValue.builder().s("p2:1;p1:4;").build());
+
+        Map<String, CartLines.Line> lines = CartLines.read(cart);
+
+        assertEquals(4, lines.get("p1").getQuantity());
+        assertNull(lines.get("p1").getUnitPrice());
+        assertEquals("p1:4;p2:1;", CartLines.toOrderList(lines));
+        assertTrue(CartLines.isLegacy(cart));
+    }
+
+    @Test
+    void aMissingCartHasNoLines() {
+        assertTrue(CartLines.read(null).isEmpty());
+        assertFalse(CartLines.isLegacy(null));
+    }
+
+    @Test
+    void lineValuesCarryQuantityAndUnitPrice() {
+        Map<String, AttributeValue> line = CartLines.lineValue(2, 9.99).m();
+
+        assertEquals("2", line.get("quantity").n());
+        assertEquals("9.99", line.get("unitPrice").n());
+    }
+
+    @Test
+    void totalsWithoutBinaryRoundingErrors() {
+        Map<String, CartLines.Line> lines = CartLines.read(cart(Map.of(
+                "p1", CartLines.lineValue(3, 0.1),
+                "p2", CartLines.lineValue(1, 0.2))));
+
+        assertEquals(0.5, CartLines.total(lines));
+    }
+
+    @Test
+    void responseKeepsTheShapeClientsRead() {
+        Map<String, AttributeValue> cart = cart(Map.of("p1", CartLines.lineValue(2, 10.0)));
+        cart.put("TotalPrice", AttributeValue.builder().n("20").build());
+
+        assertEquals(Map.of("UserId", "u1", "OrderList", "p1:2;", "TotalPrice", "20"), CartLines.toResponse(cart));
+    }
+
+    @Test
+    void responseComputesAMissingTotal() {
+        Map<String, AttributeValue> cart = cart(Map.of("p1", CartLines.lineValue(2, 10.0)));
+
+        assertEquals("20.0", CartLines.toResponse(cart).get("TotalPrice"));
+    }
+
+    private static Map<String, AttributeValue> cart(Map<String, AttributeValue> lines) {
+        Map<String, AttributeValue> cart = new HashMap<>();
+        cart.put("UserId", AttributeValue.builder().s("u1").build());
+        cart.put("Lines", AttributeValue.builder().m(lines).build());
+        return cart;
+    }
+}
@@ -0,0 +1,188 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Many tabs editing the same cart at once, against an in-memory table that applies CartMutations' conditional
+// updates atomically the way DynamoDB does. Every thread owns one product, so the serial result is known whatever
+// the interleaving; all of them also keep overwriting one shared product, so a change based on a stale read would
+// leave TotalPrice out of step with the lines it is the sum of.
+class CartMutationsConcurrencyTest {
+
+    private static final Map<String, AttributeValue> KEY = Map.of("UserId", AttributeValue.builder().s("u1").build());
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 15;
+
+    @Test
+    void concurrentLineChangesMatchTheSerialResult() throws Exception {
+        InMemoryCartTable table = new InMemoryCartTable();
+        CartMutations mutations = new CartMutations(table.client(), "Carts", "Products");
+        AtomicLong writes = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            String productId = "p" + thread;
+            double unitPrice = 1.25 + thread;
+            boolean endsRemoved = thread % 3 == 0;
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    int quantity = 1 + round % 4;
+                    retryGivenUp(() -> mutations.setLine(KEY, productId, quantity, unitPrice));
+                    writes.incrementAndGet();
+                    int sharedQuantity = 1 + (productId.hashCode() + round) % 5;
+                    retryGivenUp(() -> mutations.setLine(KEY, "shared", sharedQuantity, 2.5));
+                    writes.incrementAndGet();
+                    if (round % 5 == 2 || (endsRemoved && round == ROUNDS - 1)) {
+                        assertNotNull(retryGivenUp(() -> mutations.removeLine(KEY, productId)));
+                        writes.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        Map<String, Integer> expectedLines = new HashMap<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            if (thread % 3 != 0) {
+                expectedLines.put("p" + thread, 1 + (ROUNDS - 1) % 4);
+            }
+        }
+        Map<String, AttributeValue> cart = table.item();
+        Map<String, CartLines.Line> lines = CartLines.read(cart);
+        Map<String, Integer> quantities = new HashMap<>();
+        BigDecimal linesTotal = BigDecimal.ZERO;
+        for (Map.Entry<String, CartLines.Line> line : lines.entrySet()) {
+            quantities.put(line.getKey(), line.getValue().getQuantity());
+            linesTotal = linesTotal.add(BigDecimal.valueOf(line.getValue().getUnitPrice())
+                    .multiply(BigDecimal.valueOf(line.getValue().getQuantity())));
+        }
+        // Whichever tab wrote the shared product last, it must be there and counted in the total exactly once
+        assertNotNull(quantities.remove("shared"));
+        assertEquals(expectedLines, quantities);
+        assertEquals(0, linesTotal.compareTo(new BigDecimal(cart.get("TotalPrice").n())),
+                "TotalPrice " + cart.get("TotalPrice").n() + ", lines add up to " + linesTotal);
+        assertEquals(writes.get(), Long.parseLong(cart.get("Version").n()));
+    }
+
+    // A mutation that ran out of optimistic attempts wrote nothing, so it can simply be sent again, as a client would
+    private static <T> T retryGivenUp(Callable<T> mutation) throws Exception {
+        while (true) {
+            try {
+                return mutation.call();
+            } catch (DynamoDbException e) {
+                if (!(e.getCause() instanceof ConditionalCheckFailedException)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // One cart item, supporting exactly the conditions and update expressions CartMutations sends
+    private static final class InMemoryCartTable {
+
+        private Map<String, AttributeValue> item;
+
+        DynamoDbClient client() {
+            DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+            when(dynamoDB.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+                Map<String, AttributeValue> current = item();
+                return current == null ? GetItemResponse.builder().build() : GetItemResponse.builder().item(current).build();
+            });
+            when(dynamoDB.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> UpdateItemResponse.builder()
+                    .attributes(update(invocation.getArgument(0)))
+                    .build());
+            return dynamoDB;
+        }
+
+        synchronized Map<String, AttributeValue> item() {
+            return item == null ? null : new HashMap<>(item);
+        }
+
+        private synchronized Map<String, AttributeValue> update(UpdateItemRequest request) {
+            Map<String, String> names = request.expressionAttributeNames();
+            Map<String, AttributeValue> values = request.expressionAttributeValues();
+            Map<String, AttributeValue> current = item == null ? new HashMap<>(KEY) : new HashMap<>(item);
+            Map<String, AttributeValue> lines = current.containsKey("Lines") ? current.get("Lines").m() : null;
+            if (!conditionHolds(request.conditionExpression(), current, lines, names, values)) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            switch (request.updateExpression()) {
+                case "SET #lines.#pid = :line ADD TotalPrice :delta, Version :one":
+                    Map<String, AttributeValue> withLine = new HashMap<>(lines);
+                    withLine.put(names.get("#pid"), values.get(":line"));
+                    current.put("Lines", AttributeValue.builder().m(withLine).build());
+                    add(current, "TotalPrice", values.get(":delta"));
+                    break;
+                case "REMOVE #lines.#pid ADD TotalPrice :delta, Version :one":
+                    Map<String, AttributeValue> withoutLine = new HashMap<>(lines);
+                    withoutLine.remove(names.get("#pid"));
+                    current.put("Lines", AttributeValue.builder().m(withoutLine).build());
+                    add(current, "TotalPrice", values.get(":delta"));
+                    break;
+                case "SET #lines = :lines, TotalPrice = :t ADD Version :one":
+                    current.put("Lines", values.get(":lines"));
+                    current.put("TotalPrice", values.get(":t"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported update " + request.updateExpression());
+            }
+            add(current, "Version", values.get(":one"));
+            item = current;
+            return new HashMap<>(item);
+        }
+
+        private static boolean conditionHolds(String condition, Map<String, AttributeValue> current, Map<String, AttributeValue> lines,
+                                              Map<String, String> names, Map<String, AttributeValue> values) {
+            switch (condition) {
+                case "attribute_exists(#lines) AND attribute_not_exists(#lines.#pid)":
+                    return lines != null && !lines.containsKey(names.get("#pid"));
+                case "attribute_not_exists(#lines) AND attribute_not_exists(OrderList)":
+                    return lines == null && !current.containsKey("OrderList");
+                case "Version = :expectedVersion":
+                    return current.containsKey("Version") && current.get("Version").n().equals(values.get(":expectedVersion").n());
+                case "attribute_not_exists(Version)":
+                    return !current.containsKey("Version");
+                default:
+                    throw new IllegalArgumentException("Unsupported condition " + condition);
+            }
+        }
+
+        private static void add(Map<String, AttributeValue> item, String attribute, AttributeValue delta) {
+            BigDecimal value = item.containsKey(attribute) ? new BigDecimal(item.get(attribute).n()) : BigDecimal.ZERO;
+            item.put(attribute, AttributeValue.builder().n(value.add(new BigDecimal(delta.n())).toPlainString()).build());
+        }
+    }
+}
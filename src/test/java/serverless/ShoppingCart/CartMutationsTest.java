@@ -0,0 +1,125 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartMutationsTest {
+
+    private static final Map<String, AttributeValue> KEY = Map.of("UserId", AttributeValue.builder().s("u1").build());
+
+    private DynamoDbClient dynamoDB;
+    private CartMutations mutations;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDB = mock(DynamoDbClient.class);
+        mutations = new CartMutations(dynamoDB, "Carts", "Products");
+    }
+
+    @Test
+    void addsANewProductInOneConditionalUpdate() {
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().attributes(KEY).build());
+
+        mutations.setLine(KEY, "p1", 2, 9.5);
+
+        UpdateItemRequest request = captureUpdates(1).get(0);
+        assertEquals("SET #lines.#pid = :line ADD TotalPrice :delta, Version :one", request.updateExpression());
+        assertEquals("attribute_exists(#lines) AND attribute_not_exists(#lines.#pid)", request.conditionExpression());
+        assertEquals(Map.of("#lines", "Lines", "#pid", "p1"), request.expressionAttributeNames());
+        assertEquals("19.0", request.expressionAttributeValues().get(":delta").n());
+        verify(dynamoDB, never()).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    void startsANewCartWithoutReadingIt() {
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("no cart").build())
+                .thenReturn(UpdateItemResponse.builder().attributes(KEY).build());
+
+        mutations.setLine(KEY, "p1", 2, 9.5);
+
+        UpdateItemRequest request = captureUpdates(2).get(1);
+        assertEquals("SET #lines = :lines, TotalPrice = :t ADD Version :one", request.updateExpression());
+        assertEquals("attribute_not_exists(#lines) AND attribute_not_exists(OrderList)", request.conditionExpression());
+        assertEquals("2", request.expressionAttributeValues().get(":lines").m().get("p1").m().get("quantity").n());
+        assertEquals("19.0", request.expressionAttributeValues().get(":t").n());
+        verify(dynamoDB, never()).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    void changesAnExistingLineByThePriceDifferenceOnTheReadVersion() {
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("in cart").build())
+                .thenThrow(ConditionalCheckFailedException.builder().message("has lines").build())
+                .thenReturn(UpdateItemResponse.builder().attributes(KEY).build());
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(cart(Map.of("p1", CartLines.lineValue(1, 9.5)), "7"))
+                .build());
+
+        mutations.setLine(KEY, "p1", 3, 9.5);
+
+        UpdateItemRequest request = captureUpdates(3).get(2);
+        assertEquals("SET #lines.#pid = :line ADD TotalPrice :delta, Version :one", request.updateExpression());
+        assertEquals("Version = :expectedVersion", request.conditionExpression());
+        assertEquals("7", request.expressionAttributeValues().get(":expectedVersion").n());
+        assertEquals("19.0", request.expressionAttributeValues().get(":delta").n());
+    }
+
+    @Test
+    void removesALineAndSubtractsItsTotal() {
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(cart(Map.of("p1", CartLines.lineValue(2, 9.5)), "4"))
+                .build());
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class))).thenReturn(UpdateItemResponse.builder().attributes(KEY).build());
+
+        mutations.removeLine(KEY, "p1");
+
+        UpdateItemRequest request = captureUpdates(1).get(0);
+        assertEquals("REMOVE #lines.#pid ADD TotalPrice :delta, Version :one", request.updateExpression());
+        assertEquals("-19.0", request.expressionAttributeValues().get(":delta").n());
+    }
+
+    @Test
+    void removingAProductThatIsNotInTheCartWritesNothing() {
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(cart(Map.of(), "1"))
+                .build());
+
+        assertNull(mutations.removeLine(KEY, "p1"));
+        verify(dynamoDB, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    private List<UpdateItemRequest> captureUpdates(int count) {
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDB, times(count)).updateItem(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static Map<String, AttributeValue> cart(Map<String, AttributeValue> lines, String version) {
+        Map<String, AttributeValue> cart = new HashMap<>(KEY);
+        cart.put("Lines", AttributeValue.builder().m(lines).build());
+        cart.put("Version", AttributeValue.builder().n(version).build());
+        return cart;
+    }
+}
@@ -0,0 +1,109 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import serverless.lib.ConfigManager;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CheckoutIdempotencyTest {
+
+    @Test
+    void keysAreTheHeaderScopedToTheUser() {
+        assertEquals("u1#retry-1", CheckoutIdempotency.resolveKey(event(Map.of("Idempotency-Key", " retry-1 ")), "u1"));
+        assertNotEquals(CheckoutIdempotency.resolveKey(event(Map.of("Idempotency-Key", "retry-1")), "u1"),
+                CheckoutIdempotency.resolveKey(event(Map.of("Idempotency-Key", "retry-1")), "u2"));
+    }
+
+    @Test
+    void headerNamesAreCaseInsensitive() {
+        assertEquals("u1#abc", CheckoutIdempotency.resolveKey(event(Map.of("idempotency-key", "abc")), "u1"));
+    }
+
+    @Test
+    void checkoutsWithoutTheHeaderHaveNoKey() {
+        // Identical bodies from a returning customer must not be taken for a retry
+        assertNull(CheckoutIdempotency.resolveKey(event(Map.of("Authorization", "Bearer t")), "u1"));
+        assertNull(CheckoutIdempotency.resolveKey(event(Map.of("Idempotency-Key", "  ")), "u1"));
+        assertNull(CheckoutIdempotency.resolveKey(new HashMap<>(), "u1"));
+    }
+
+    @Test
+    void anEmptyTableNameTurnsIdempotencyOff() {
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.get("IDEMPOTENCY_TABLE")).thenReturn("");
+
+        assertNull(CheckoutIdempotency.fromConfig(mock(DynamoDbClient.class), configManager));
+    }
+
+    @Test
+    void recordsAreWrittenOnlyOverMissingOrExpiredRecords() {
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.get("IDEMPOTENCY_TABLE")).thenReturn("Idempotency");
+        when(configManager.getLong("IDEMPOTENCY_TTL_SECONDS", 3600)).thenReturn(60L);
+        CheckoutIdempotency idempotency = CheckoutIdempotency.fromConfig(mock(DynamoDbClient.class), configManager);
+
+        Put put = idempotency.record("u1#abc", "hash", 200, "\"Payment successful\"").put();
+
+        assertEquals("Idempotency", put.tableName());
+        assertEquals("attribute_not_exists(IdempotencyKey) OR #ttl <= :now", put.conditionExpression());
+        assertEquals("200", put.item().get("StatusCode").n());
+        long ttl = Long.parseLong(put.item().get("TTL").n());
+        assertEquals(System.currentTimeMillis() / 1000 + 60, ttl, 5);
+    }
+
+    @Test
+    void acceptedCheckoutsAreStoredOnTheirOwn() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        CheckoutIdempotency idempotency = CheckoutIdempotency.fromConfig(dynamoDB, config());
+
+        assertTrue(idempotency.store("u1#abc", "hash", 202, "{\"orderId\":\"hash\",\"status\":\"PENDING\"}"));
+
+        ArgumentCaptor<PutItemRequest> captor = ArgumentCaptor.forClass(PutItemRequest.class);
+        verify(dynamoDB).putItem(captor.capture());
+        PutItemRequest request = captor.getValue();
+        assertEquals("Idempotency", request.tableName());
+        assertEquals("attribute_not_exists(IdempotencyKey) OR #ttl <= :now", request.conditionExpression());
+        assertEquals("202", request.item().get("StatusCode").n());
+        assertEquals("hash", request.item().get("HashKey").s());
+    }
+
+    @Test
+    void storingOverALiveRecordReportsTheConcurrentRetry() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        when(dynamoDB.putItem(any(PutItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("exists").build());
+        CheckoutIdempotency idempotency = CheckoutIdempotency.fromConfig(dynamoDB, config());
+
+        assertFalse(idempotency.store("u1#abc", "hash", 202, "{}"));
+    }
+
+    private static ConfigManager config() {
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.get("IDEMPOTENCY_TABLE")).thenReturn("Idempotency");
+        when(configManager.getLong("IDEMPOTENCY_TTL_SECONDS", 3600)).thenReturn(60L);
+        return configManager;
+    }
+
+    private static Map<String, Object> event(Map<String, String> headers) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("headers", headers);
+        event.put("body", "{\"email\":\"john.doe@example.com\"}");
+        return event;
+    }
+}
@@ -0,0 +1,64 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryOrderIntentQueueTest {
+
+    @Test
+    void receivesIntentsOldestFirstUpToTheLimit() {
+        InMemoryOrderIntentQueue queue = new InMemoryOrderIntentQueue();
+        queue.enqueue(intent("o1"));
+        queue.enqueue(intent("o2"));
+        queue.enqueue(intent("o3"));
+
+        List<OrderIntent> received = queue.receive(2);
+
+        assertEquals(List.of("o1", "o2"), orderIds(received));
+        received.forEach(intent -> assertNotNull(intent.getReceipt()));
+        assertEquals(List.of("o3"), orderIds(queue.receive(10)));
+    }
+
+    @Test
+    void acknowledgedIntentsAreGone() {
+        InMemoryOrderIntentQueue queue = new InMemoryOrderIntentQueue();
+        queue.enqueue(intent("o1"));
+        queue.enqueue(intent("o2"));
+
+        queue.acknowledge(queue.receive(10));
+        queue.requeueInFlight();
+
+        assertEquals(0, queue.size());
+        assertTrue(queue.receive(10).isEmpty());
+    }
+
+    @Test
+    void unacknowledgedIntentsAreDeliveredAgain() {
+        InMemoryOrderIntentQueue queue = new InMemoryOrderIntentQueue();
+        queue.enqueue(intent("o1"));
+        queue.enqueue(intent("o2"));
+        List<OrderIntent> received = queue.receive(10);
+        queue.acknowledge(List.of(received.get(0)));
+
+        // In flight until requeued, like a message whose visibility timeout has not run out yet
+        assertTrue(queue.receive(10).isEmpty());
+        queue.requeueInFlight();
+
+        assertEquals(List.of("o2"), orderIds(queue.receive(10)));
+    }
+
+    static OrderIntent intent(String orderId) {
+        return new OrderIntent(orderId, "u-" + orderId, "john.doe@example.com", "John", "Doe", "Main St 1", "555",
+                Map.of("p1", 2), 1, "2026-01-01T00:00:00Z");
+    }
+
+    static List<String> orderIds(List<OrderIntent> intents) {
+        return intents.stream().map(OrderIntent::getOrderId).toList();
+    }
+}
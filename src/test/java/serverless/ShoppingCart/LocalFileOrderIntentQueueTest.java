@@ -0,0 +1,72 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static serverless.ShoppingCart.InMemoryOrderIntentQueueTest.intent;
+import static serverless.ShoppingCart.InMemoryOrderIntentQueueTest.orderIds;
+
+class LocalFileOrderIntentQueueTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("order-intents", ".jsonl");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+    }
+
+    @Test
+    void receivingAnEmptyQueueNeedsNoFile() {
+        assertTrue(new LocalFileOrderIntentQueue(file).receive(10).isEmpty());
+    }
+
+    @Test
+    void intentsRoundTripThroughTheFile() {
+        new LocalFileOrderIntentQueue(file).enqueue(intent("o1"));
+
+        // A new instance stands in for a restarted process
+        List<OrderIntent> received = new LocalFileOrderIntentQueue(file).receive(10);
+
+        assertEquals(List.of("o1"), orderIds(received));
+        OrderIntent intent = received.get(0);
+        assertEquals("u-o1", intent.getUserId());
+        assertEquals(Map.of("p1", 2), intent.getLines());
+        assertEquals(1, intent.getCartVersion());
+    }
+
+    @Test
+    void acknowledgedIntentsAreRemovedAndTheRestRedelivered() {
+        LocalFileOrderIntentQueue queue = new LocalFileOrderIntentQueue(file);
+        queue.enqueue(intent("o1"));
+        queue.enqueue(intent("o2"));
+        queue.enqueue(intent("o3"));
+
+        List<OrderIntent> first = queue.receive(2);
+        queue.acknowledge(List.of(first.get(0)));
+
+        List<OrderIntent> redelivered = queue.receive(10);
+        assertEquals(List.of("o2", "o3"), orderIds(redelivered));
+        // The same line keeps its receipt, so a late acknowledgement of the first delivery still removes it
+        assertEquals(first.get(1).getReceipt(), redelivered.get(0).getReceipt());
+        assertNotEquals(redelivered.get(0).getReceipt(), redelivered.get(1).getReceipt());
+
+        queue.acknowledge(redelivered);
+        assertTrue(queue.receive(10).isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package serverless.ShoppingCart;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderIntentProcessorTest {
+
+    private DynamoDbClient dynamoDB;
+    private OrderIntentProcessor processor;
+    private final List<Map<String, AttributeValue>> completedOrders = new ArrayList<>();
+
+    @BeforeAll
+    static void withoutTracing() {
+        // The processor records X-Ray subsegments, which have no segment to attach to outside Lambda
+        System.setProperty("com.amazonaws.xray.strategy.contextMissingStrategy", "IGNORE_ERROR");
+    }
+
+    @BeforeEach
+    void setUp() {
+        dynamoDB = mock(DynamoDbClient.class);
+        processor = new OrderIntentProcessor(dynamoDB, "Orders", "Carts", "Products");
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(invocation -> {
+            BatchGetItemRequest request = invocation.getArgument(0);
+            if (request.requestItems().containsKey("Orders")) {
+                return BatchGetItemResponse.builder().responses(Map.of("Orders", completedOrders)).build();
+            }
+            return BatchGetItemResponse.builder().responses(Map.of("Products", List.of(
+                    Map.of("productId", s("p1"), "productName", s("Clock"), "discountPrice", n("12.5"))))).build();
+        });
+        when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(BatchWriteItemResponse.builder().build());
+        when(dynamoDB.deleteItem(any(DeleteItemRequest.class))).thenReturn(DeleteItemResponse.builder().build());
+    }
+
+    @Test
+    void writesPendingThenCompletedOrdersAndClearsTheCartAtItsCheckoutVersion() {
+        List<OrderIntent> failed = processor.processAll(List.of(intent("o1", "u1", 3)));
+
+        assertTrue(failed.isEmpty());
+        List<BatchWriteItemRequest> writes = captureWrites(2);
+        Map<String, AttributeValue> pending = writes.get(0).requestItems().get("Orders").get(0).putRequest().item();
+        assertEquals("PENDING", pending.get("OrderStatus").s());
+        assertEquals("25.0", pending.get("TotalPrice").n());
+        assertEquals("COMPLETED", writes.get(1).requestItems().get("Orders").get(0).putRequest().item().get("OrderStatus").s());
+
+        ArgumentCaptor<DeleteItemRequest> delete = ArgumentCaptor.forClass(DeleteItemRequest.class);
+        verify(dynamoDB).deleteItem(delete.capture());
+        assertEquals("Version = :expectedVersion", delete.getValue().conditionExpression());
+        assertEquals("3", delete.getValue().expressionAttributeValues().get(":expectedVersion").n());
+    }
+
+    @Test
+    void cartsThatNeverHadAVersionAreClearedOnlyIfTheyStillHaveNone() {
+        processor.processAll(List.of(intent("o1", "u1", 0)));
+
+        ArgumentCaptor<DeleteItemRequest> delete = ArgumentCaptor.forClass(DeleteItemRequest.class);
+        verify(dynamoDB).deleteItem(delete.capture());
+        assertEquals("attribute_not_exists(Version)", delete.getValue().conditionExpression());
+        assertTrue(delete.getValue().expressionAttributeValues().isEmpty());
+    }
+
+    @Test
+    void aCartChangedAfterCheckoutIsKeptAndTheOrderStillCompletes() {
+        when(dynamoDB.deleteItem(any(DeleteItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("changed").build());
+
+        List<OrderIntent> failed = processor.processAll(List.of(intent("o1", "u1", 3)));
+
+        assertTrue(failed.isEmpty());
+        assertEquals("COMPLETED", captureWrites(2).get(1).requestItems().get("Orders").get(0).putRequest().item().get("OrderStatus").s());
+    }
+
+    @Test
+    void redeliveredIntentsOfCompletedOrdersAreSkipped() {
+        completedOrders.add(Map.of("HashKey", s("o1"), "OrderStatus", s("COMPLETED")));
+
+        List<OrderIntent> failed = processor.processAll(List.of(intent("o1", "u1", 3), intent("o2", "u2", 1)));
+
+        assertTrue(failed.isEmpty());
+        List<String> written = new ArrayList<>();
+        for (WriteRequest write : captureWrites(2).get(0).requestItems().get("Orders")) {
+            written.add(write.putRequest().item().get("HashKey").s());
+        }
+        assertEquals(List.of("o2"), written);
+        verify(dynamoDB, never()).deleteItem(argThat((DeleteItemRequest request) -> request != null
+                && request.key().get("UserId").s().equals("u1")));
+    }
+
+    @Test
+    void aFailingBatchIsRetriedOneByOneAndOnlyTheFailingIntentIsReturned() {
+        when(dynamoDB.deleteItem(any(DeleteItemRequest.class))).thenAnswer(invocation -> {
+            DeleteItemRequest request = invocation.getArgument(0);
+            if (request.key().get("UserId").s().equals("u2")) {
+                throw DynamoDbException.builder().message("throttled").build();
+            }
+            return DeleteItemResponse.builder().build();
+        });
+        OrderIntent first = intent("o1", "u1", 1);
+        OrderIntent second = intent("o2", "u2", 1);
+        OrderIntent third = intent("o3", "u3", 1);
+
+        List<OrderIntent> failed = processor.processAll(List.of(first, second, third));
+
+        assertEquals(List.of(second), failed);
+        // PENDING for the batch, then o1 and o3 alone each PENDING and COMPLETED, o2 alone PENDING only
+        verify(dynamoDB, times(1 + 2 + 1 + 2)).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    void intentsWithNothingLeftInTheCatalogAreDropped() {
+        OrderIntent intent = new OrderIntent("o1", "u1", "a@b.c", "A", "B", "C", "1", Map.of("gone", 1), 1, "2026-01-01T00:00:00Z");
+
+        assertTrue(processor.processAll(List.of(intent)).isEmpty());
+        verify(dynamoDB, never()).deleteItem(any(DeleteItemRequest.class));
+    }
+
+    private List<BatchWriteItemRequest> captureWrites(int count) {
+        ArgumentCaptor<BatchWriteItemRequest> captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDB, times(count)).batchWriteItem(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static OrderIntent intent(String orderId, String userId, long cartVersion) {
+        return new OrderIntent(orderId, userId, "john.doe@example.com", "John", "Doe", "Main St 1", "555",
+                Map.of("p1", 2), cartVersion, "2026-01-01T00:00:00Z");
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    private static AttributeValue n(String value) {
+        return AttributeValue.builder().n(value).build();
+    }
+}
@@ -0,0 +1,127 @@
+package serverless.lib;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Times the first response of a handler in a fresh JVM with PRIMING_ENABLED on and off, run by hand:
+//   java -cp <test classpath> serverless.lib.ColdStartPrimingBenchmark [runs] [handler class] [event json]
+// Each run starts its own JVM, so every run is a cold start. The flag is switched by putting a copy of config.json
+// with PRIMING_ENABLED set ahead of the real one on the child's classpath, so a PRIMING_ENABLED parameter in the
+// Parameter Store would override it. Point the AWS credentials and config at a deployed stack to include the real
+// DynamoDB and JWKS round trips; without them those calls fail fast and only class loading and JIT are compared.
+public class ColdStartPrimingBenchmark {
+
+    private static final Gson gson = new Gson();
+    private static final String DEFAULT_HANDLER = "serverless.CatalogProduct.GetProduct";
+    private static final String DEFAULT_EVENT = "{\"pathParameters\":{\"proxy\":\"product/priming-benchmark\"}}";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            runChild(args[1], args[2]);
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String handler = args.length > 1 ? args[1] : DEFAULT_HANDLER;
+        String event = args.length > 2 ? args[2] : DEFAULT_EVENT;
+
+        Map<Boolean, Path> configDirs = Map.of(false, configWithPriming(false), true, configWithPriming(true));
+        Map<Boolean, List<long[]>> timings = Map.of(false, new ArrayList<>(), true, new ArrayList<>());
+        // Alternate the modes so drift on the machine affects both alike
+        for (int run = 0; run < runs; run++) {
+            for (boolean priming : new boolean[]{false, true}) {
+                timings.get(priming).add(runFreshJvm(configDirs.get(priming), handler, event));
+            }
+        }
+        System.out.printf("%-10s %14s %16s %20s%n", "priming", "init (ms)", "first call (ms)", "JVM start to response");
+        for (boolean priming : new boolean[]{false, true}) {
+            List<long[]> samples = timings.get(priming);
+            System.out.printf("%-10s %14d %16d %20d%n", priming ? "on" : "off",
+                    median(samples, 0), median(samples, 1), median(samples, 2));
+        }
+    }
+
+    // Child JVM: load the handler (which primes in its static initializer), then time one request
+    @SuppressWarnings("unchecked")
+    private static void runChild(String handlerClass, String event) throws Exception {
+        long initStart = System.nanoTime();
+        RequestHandler<Map<String, Object>, Map<String, Object>> handler =
+                (RequestHandler<Map<String, Object>, Map<String, Object>>) Class.forName(handlerClass)
+                        .getDeclaredConstructor().newInstance();
+        long callStart = System.nanoTime();
+        Map<String, Object> request = gson.fromJson(event, new TypeToken<Map<String, Object>>(){}.getType());
+        Object status;
+        try {
+            status = handler.handleRequest(request, null).get("statusCode");
+        } catch (RuntimeException e) {
+            status = e.getClass().getSimpleName();
+        }
+        long callEnd = System.nanoTime();
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("RESULT " + (callStart - initStart) / 1_000_000 + " " + (callEnd - callStart) / 1_000_000
+                + " " + sinceJvmStart + " " + status);
+    }
+
+    private static long[] runFreshJvm(Path configDir, String handler, String event) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = configDir + File.pathSeparator + System.getProperty("java.class.path");
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", classpath, ColdStartPrimingBenchmark.class.getName(),
+                "--child", handler, event);
+        builder.environment().put("AWS_XRAY_CONTEXT_MISSING", "IGNORE_ERROR");
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        long[] result = null;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    String[] fields = line.split(" ");
+                    result = new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])};
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Benchmark JVM exited with " + process.exitValue());
+        }
+        return result;
+    }
+
+    private static Path configWithPriming(boolean priming) throws Exception {
+        Map<String, Object> config;
+        try (InputStream inputStream = ColdStartPrimingBenchmark.class.getClassLoader().getResourceAsStream("config.json");
+             Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            config = gson.fromJson(reader, new TypeToken<Map<String, Object>>(){}.getType());
+        }
+        config.put("PRIMING_ENABLED", priming);
+        Path dir = Files.createTempDirectory("priming-" + priming);
+        dir.toFile().deleteOnExit();
+        Path file = dir.resolve("config.json");
+        Files.write(file, gson.toJson(config).getBytes(StandardCharsets.UTF_8));
+        file.toFile().deleteOnExit();
+        return dir;
+    }
+
+    private static long median(List<long[]> samples, int field) {
+        List<Long> values = new ArrayList<>();
+        for (long[] sample : samples) {
+            values.add(sample[field]);
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+}
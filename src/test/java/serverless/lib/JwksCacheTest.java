@@ -0,0 +1,129 @@
+package serverless.lib;
+
+import com.auth0.jwk.SigningKeyNotFoundException;
+import com.auth0.jwk.UrlJwkProvider;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwksCacheTest {
+
+    private static final String ISSUER = "https://issuer.example";
+
+    private Path jwksFile;
+    private KeyPair first;
+    private KeyPair second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        first = generator.generateKeyPair();
+        second = generator.generateKeyPair();
+        jwksFile = Files.createTempFile("jwks", ".json");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(jwksFile);
+    }
+
+    @Test
+    void verifiesTokensSignedWithAPublishedKey() throws Exception {
+        publish(jwk("k1", first));
+        JwksCache cache = newCache();
+
+        String token = sign("k1", first);
+
+        assertEquals("user-1", cache.getVerifier("k1").verify(token).getSubject());
+    }
+
+    @Test
+    void reusesTheVerifierOfAKey() throws Exception {
+        publish(jwk("k1", first));
+        JwksCache cache = newCache();
+
+        assertSame(cache.getVerifier("k1"), cache.getVerifier("k1"));
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnotherKey() throws Exception {
+        publish(jwk("k1", first));
+        JwksCache cache = newCache();
+
+        String forged = sign("k1", second);
+
+        assertThrows(SignatureVerificationException.class, () -> cache.getVerifier("k1").verify(forged));
+    }
+
+    @Test
+    void unknownKeyIdsDoNotRefetchWithinTheMinimumInterval() throws Exception {
+        publish(jwk("k1", first));
+        JwksCache cache = newCache();
+        cache.getKey("k1");
+
+        publish(jwk("k1", first), jwk("k2", second));
+
+        assertThrows(SigningKeyNotFoundException.class, () -> cache.getKey("k2"));
+    }
+
+    @Test
+    void forcedRefreshPicksUpRotatedKeys() throws Exception {
+        publish(jwk("k1", first));
+        JwksCache cache = newCache();
+        cache.warmUp();
+
+        publish(jwk("k2", second));
+        cache.refresh(true);
+
+        assertEquals("user-1", cache.getVerifier("k2").verify(sign("k2", second)).getSubject());
+        assertThrows(SigningKeyNotFoundException.class, () -> cache.getKey("k1"));
+    }
+
+    private JwksCache newCache() throws Exception {
+        return new JwksCache(ISSUER, new UrlJwkProvider(jwksFile.toUri().toURL()));
+    }
+
+    private void publish(String... jwks) throws Exception {
+        Files.write(jwksFile, ("{\"keys\":[" + String.join(",", jwks) + "]}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String jwk(String keyId, KeyPair keyPair) {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return "{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + keyId + "\""
+                + ",\"n\":\"" + base64Url(publicKey.getModulus().toByteArray()) + "\""
+                + ",\"e\":\"" + base64Url(publicKey.getPublicExponent().toByteArray()) + "\"}";
+    }
+
+    private static String sign(String keyId, KeyPair keyPair) {
+        return JWT.create()
+                .withKeyId(keyId)
+                .withIssuer(ISSUER)
+                .withSubject("user-1")
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyPair.getPrivate()));
+    }
+
+    private static String base64Url(byte[] bytes) {
+        // BigInteger.toByteArray() may carry a leading sign byte that JWKS encodings leave out
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        byte[] unsigned = new byte[bytes.length - offset];
+        System.arraycopy(bytes, offset, unsigned, 0, unsigned.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+}
@@ -0,0 +1,40 @@
+package serverless.lib;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Minimal timing loop for the main()-style benchmarks under src/test, which are run by hand rather than by the test
+// suite. Each operation is warmed up first so the JIT has compiled it, and its results are folded into a sink so the
+// work cannot be optimized away.
+public final class MicroBenchmark {
+
+    private static volatile int sink;
+
+    private MicroBenchmark() {
+    }
+
+    // Mean time of one call in microseconds, measured over measureMillis after warmupMillis of warm-up calls
+    public static double microsPerCall(Callable<?> operation, long warmupMillis, long measureMillis) throws Exception {
+        run(operation, TimeUnit.MILLISECONDS.toNanos(warmupMillis));
+        long start = System.nanoTime();
+        long calls = run(operation, TimeUnit.MILLISECONDS.toNanos(measureMillis));
+        return (System.nanoTime() - start) / 1000.0 / calls;
+    }
+
+    public static void report(String name, double microsPerCall) {
+        System.out.printf("%-40s %12.2f us/op %14.0f ops/s%n", name, microsPerCall, 1_000_000 / microsPerCall);
+    }
+
+    private static long run(Callable<?> operation, long durationNanos) throws Exception {
+        long deadline = System.nanoTime() + durationNanos;
+        long calls = 0;
+        int folded = 0;
+        do {
+            Object result = operation.call();
+            folded ^= result == null ? 0 : System.identityHashCode(result);
+            calls++;
+        } while (System.nanoTime() < deadline);
+        sink ^= folded;
+        return calls;
+    }
+}
@@ -0,0 +1,88 @@
+package serverless.lib;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Local contention benchmark for ShardedCounter, run by hand rather than as part of the test suite:
+//   java -cp <test classpath> serverless.lib.ShardedCounterBenchmark [threads] [seconds]
+// The mocked table takes writes to one partition key one at a time, at about a millisecond each, the way a hot
+// DynamoDB partition does, so throughput on a single counter should grow with the number of shards.
+public class ShardedCounterBenchmark {
+
+    private static final long WRITE_MICROS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+        DynamoDbClient dynamoDB = partitionLimitedTable();
+        System.out.printf("%-8s %12s%n", "shards", "writes/s");
+        for (int shards : new int[]{1, 2, 4, 8, 16}) {
+            ShardedCounter counter = new ShardedCounter(dynamoDB, "Counters-" + shards, shards, 0);
+            double perSecond = run(counter, threads, seconds);
+            System.out.printf("%-8d %12.0f%n", shards, perSecond);
+        }
+    }
+
+    private static double run(ShardedCounter counter, int threads, long seconds) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LongAdder writes = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    counter.add("product#hot", Map.of("RatingSum", 5L, "RatingCount", 1L));
+                    writes.increment();
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        return writes.sum() / (double) seconds;
+    }
+
+    // Every counter is seeded, and each transaction holds the lock of its partition key while it "writes"
+    private static DynamoDbClient partitionLimitedTable() {
+        DynamoDbClient dynamoDB = mock(DynamoDbClient.class);
+        Map<String, Object> partitions = new ConcurrentHashMap<>();
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder()
+                .item(Map.of("CounterId", AttributeValue.builder().s("base").build()))
+                .build());
+        when(dynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class))).thenAnswer(invocation -> {
+            TransactWriteItemsRequest request = invocation.getArgument(0);
+            for (TransactWriteItem item : request.transactItems()) {
+                if (item.update() == null) {
+                    continue;
+                }
+                String partition = item.update().tableName() + "/" + item.update().key().get("CounterId").s();
+                synchronized (partitions.computeIfAbsent(partition, key -> new Object())) {
+                    TimeUnit.MICROSECONDS.sleep(WRITE_MICROS);
+                }
+            }
+            return TransactWriteItemsResponse.builder().build();
+        });
+        return dynamoDB;
+    }
+}
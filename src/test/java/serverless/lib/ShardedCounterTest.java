@@ -0,0 +1,219 @@
+package serverless.lib;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShardedCounterTest {
+
+    private DynamoDbClient dynamoDB;
+    private String table;
+    private ShardedCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDB = mock(DynamoDbClient.class);
+        // Seeded counters and merged totals are remembered per table for the whole container
+        table = "Counters-" + UUID.randomUUID();
+        counter = new ShardedCounter(dynamoDB, table, 4, 60_000);
+    }
+
+    @Test
+    void incrementsSpreadOverShardsWithTheirOwnPartitionKeys() {
+        Set<String> shardIds = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            TransactWriteItem item = counter.increment("product#p1", Map.of("RatingSum", 4L));
+            assertEquals(Set.of("CounterId"), item.update().key().keySet());
+            shardIds.add(item.update().key().get("CounterId").s());
+        }
+
+        assertEquals(Set.of("product#p1#1", "product#p1#2", "product#p1#3", "product#p1#4"), shardIds);
+    }
+
+    @Test
+    void readMergesTheShardsOfOneBatchGet() {
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of(table, List.of(
+                        shard("product#p1#0", 10, 3),
+                        shard("product#p1#2", 4, 1),
+                        shard("product#p1#4", -2, -1))))
+                .build());
+
+        Map<String, Long> totals = counter.read("product#p1");
+
+        assertEquals(12L, totals.get("RatingSum"));
+        assertEquals(3L, totals.get("RatingCount"));
+        ArgumentCaptor<BatchGetItemRequest> captor = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(dynamoDB).batchGetItem(captor.capture());
+        assertEquals(5, captor.getValue().requestItems().get(table).keys().size());
+        // Served from the cache within the TTL
+        counter.read("product#p1");
+        verify(dynamoDB, times(1)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    void countersWithoutABaseShardWereNeverSeeded() {
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of(table, List.of(shard("product#p1#3", 5, 1))))
+                .build());
+
+        assertNull(counter.read("product#p1"));
+    }
+
+    @Test
+    void seedingIsCheckedOnlyUntilTheCounterIsSeeded() {
+        when(dynamoDB.getItem(any(GetItemRequest.class)))
+                .thenReturn(GetItemResponse.builder().build())
+                .thenReturn(GetItemResponse.builder().item(Map.of("CounterId", s("product#p1#0"))).build());
+
+        assertFalse(counter.isSeeded("product#p1"));
+        assertTrue(counter.isSeeded("product#p1"));
+        assertTrue(counter.isSeeded("product#p1"));
+
+        verify(dynamoDB, times(2)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    void addToASeededCounterWritesOneShardAndRetriesConflicts() {
+        when(dynamoDB.getItem(any(GetItemRequest.class)))
+                .thenReturn(GetItemResponse.builder().item(Map.of("CounterId", s("product#p1#0"))).build());
+        when(dynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(cancelled("TransactionConflict"))
+                .thenReturn(TransactWriteItemsResponse.builder().build());
+
+        assertTrue(counter.add("product#p1", Map.of("RatingCount", 1L)));
+
+        ArgumentCaptor<TransactWriteItemsRequest> captor = ArgumentCaptor.forClass(TransactWriteItemsRequest.class);
+        verify(dynamoDB, times(2)).transactWriteItems(captor.capture());
+        List<TransactWriteItem> items = captor.getValue().transactItems();
+        assertEquals(1, items.size());
+        assertNull(items.get(0).conditionCheck());
+    }
+
+    @Test
+    void addToAnUnseededCounterReportsIt() {
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(GetItemResponse.builder().build());
+        when(dynamoDB.transactWriteItems(any(TransactWriteItemsRequest.class)))
+                .thenThrow(cancelled("ConditionalCheckFailed", "None"));
+
+        assertFalse(counter.add("product#p1", Map.of("RatingCount", 1L)));
+    }
+
+    @Test
+    void incrementsStampTheirShardDirty() {
+        TransactWriteItem first = counter.increment("product#p1", Map.of("RatingSum", 4L));
+        TransactWriteItem second = counter.increment("product#p1", Map.of("RatingSum", 4L));
+
+        assertTrue(first.update().updateExpression().endsWith(" SET DirtyToken = :dirty"));
+        assertNotEquals(first.update().expressionAttributeValues().get(":dirty"), second.update().expressionAttributeValues().get(":dirty"));
+        assertTrue(counter.seedOnce("product#p2", Map.of("RatingSum", 0L)).put().item().containsKey("DirtyToken"));
+    }
+
+    @Test
+    void readDirtyReadsOnlyTheSeededCountersInTheDirtyIndex() {
+        when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(
+                        Map.of("CounterId", s("product#p1#3"), "DirtyToken", s("t3")),
+                        Map.of("CounterId", s("product#p1#6"), "DirtyToken", s("t6")),
+                        Map.of("CounterId", s("product#p2#1"), "DirtyToken", s("t1"))))
+                .build());
+        Map<String, AttributeValue> dirtyShard = shard("product#p1#3", 5, 1);
+        dirtyShard.put("DirtyToken", s("t3"));
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of(table, List.of(
+                        shard("product#p1#0", 8, 2),
+                        dirtyShard,
+                        shard("product#p1#6", 1, 1),
+                        shard("product#p2#1", 4, 1))))
+                .build());
+
+        List<ShardedCounter.DirtyCounter> dirty = counter.readDirty("product#", 1);
+
+        assertEquals(1, dirty.size());
+        assertEquals("product#p1", dirty.get(0).getCounterId());
+        assertEquals(14L, dirty.get(0).getTotals().get("RatingSum"));
+        assertEquals(4L, dirty.get(0).getTotals().get("RatingCount"));
+        ArgumentCaptor<ScanRequest> scan = ArgumentCaptor.forClass(ScanRequest.class);
+        verify(dynamoDB).scan(scan.capture());
+        assertEquals("DirtyToken-index", scan.getValue().indexName());
+        // Shards 0..4 of both counters, plus the leftover shards 5 and 6 of p1
+        ArgumentCaptor<BatchGetItemRequest> batch = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(dynamoDB).batchGetItem(batch.capture());
+        assertEquals(12, batch.getValue().requestItems().get(table).keys().size());
+    }
+
+    @Test
+    void markCleanKeepsShardsWrittenAgainSinceTheyWereRead() {
+        when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(ScanResponse.builder()
+                .items(List.of(Map.of("CounterId", s("product#p1#2"), "DirtyToken", s("t2"))))
+                .build());
+        Map<String, AttributeValue> dirtyShard = shard("product#p1#2", 5, 1);
+        dirtyShard.put("DirtyToken", s("t2"));
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(BatchGetItemResponse.builder()
+                .responses(Map.of(table, List.of(shard("product#p1#0", 8, 2), dirtyShard)))
+                .build());
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class)))
+                .thenThrow(ConditionalCheckFailedException.builder().message("written again").build());
+
+        counter.markClean(counter.readDirty("product#", 1).get(0));
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDB).updateItem(captor.capture());
+        assertEquals("product#p1#2", captor.getValue().key().get("CounterId").s());
+        assertEquals("REMOVE DirtyToken", captor.getValue().updateExpression());
+        assertEquals("t2", captor.getValue().expressionAttributeValues().get(":seen").s());
+    }
+
+    private static Map<String, AttributeValue> shard(String shardId, long ratingSum, long ratingCount) {
+        Map<String, AttributeValue> shard = new HashMap<>();
+        shard.put("CounterId", s(shardId));
+        shard.put("RatingSum", AttributeValue.builder().n(Long.toString(ratingSum)).build());
+        shard.put("RatingCount", AttributeValue.builder().n(Long.toString(ratingCount)).build());
+        return shard;
+    }
+
+    private static TransactionCanceledException cancelled(String... codes) {
+        CancellationReason[] reasons = new CancellationReason[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            reasons[i] = CancellationReason.builder().code(codes[i]).build();
+        }
+        return TransactionCanceledException.builder().message("cancelled").cancellationReasons(reasons).build();
+    }
+
+    private static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+}
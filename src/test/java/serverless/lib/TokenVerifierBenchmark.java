@@ -0,0 +1,80 @@
+package serverless.lib;
+
+import com.auth0.jwk.UrlJwkProvider;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+// Compares TokenVerifier's cached path with verifying the signature on every call, run by hand:
+//   java -cp <test classpath> serverless.lib.TokenVerifierBenchmark [seconds per case]
+// The issuer is a local directory holding .well-known/jwks.json with a generated RSA key, so nothing leaves the
+// machine. Leave JWKS_URL unset so the JWKS is read from the issuer.
+public class TokenVerifierBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long measureMillis = (args.length > 0 ? Long.parseLong(args[0]) : 3) * 1000;
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        Path issuerDir = Files.createTempDirectory("issuer");
+        Path jwksFile = Files.createDirectories(issuerDir.resolve(".well-known")).resolve("jwks.json");
+        Files.write(jwksFile, ("{\"keys\":[" + jwk("k1", keyPair) + "]}").getBytes(StandardCharsets.UTF_8));
+        String issuer = issuerDir.toUri().toString().replaceAll("/$", "");
+        URL jwksUrl = new URL(issuer + "/.well-known/jwks.json");
+        String token = JWT.create()
+                .withKeyId("k1")
+                .withIssuer(issuer)
+                .withSubject("user-1")
+                .withClaim("cognito:groups", List.of("Admins"))
+                .withExpiresAt(new Date(System.currentTimeMillis() + 3_600_000))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyPair.getPrivate()));
+        Algorithm algorithm = Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), null);
+
+        try {
+            // What every request did before JwksCache: fetch the JWKS, build a verifier, check the signature
+            MicroBenchmark.report("fetch JWKS + JWT.require().verify", MicroBenchmark.microsPerCall(() -> {
+                RSAPublicKey key = (RSAPublicKey) new UrlJwkProvider(jwksUrl).get("k1").getPublicKey();
+                return JWT.require(Algorithm.RSA256(key, null)).withIssuer(issuer).build().verify(token);
+            }, 1000, measureMillis));
+            // Signature check alone, with the key already at hand
+            MicroBenchmark.report("JWT.require().verify", MicroBenchmark.microsPerCall(() -> {
+                DecodedJWT decoded = JWT.require(algorithm).withIssuer(issuer).build().verify(token);
+                return decoded.getSubject();
+            }, 1000, measureMillis));
+            MicroBenchmark.report("TokenVerifier.verify (cached)", MicroBenchmark.microsPerCall(
+                    () -> TokenVerifier.verify(token, issuer), 1000, measureMillis));
+        } finally {
+            Files.deleteIfExists(jwksFile);
+            Files.deleteIfExists(jwksFile.getParent());
+            Files.deleteIfExists(issuerDir);
+        }
+    }
+
+    private static String jwk(String keyId, KeyPair keyPair) {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return "{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + keyId + "\""
+                + ",\"n\":\"" + base64Url(publicKey.getModulus().toByteArray()) + "\""
+                + ",\"e\":\"" + base64Url(publicKey.getPublicExponent().toByteArray()) + "\"}";
+    }
+
+    private static String base64Url(byte[] bytes) {
+        // BigInteger.toByteArray() may carry a leading sign byte that JWKS encodings leave out
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        byte[] unsigned = new byte[bytes.length - offset];
+        System.arraycopy(bytes, offset, unsigned, 0, unsigned.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+}